@@ -0,0 +1,136 @@
+package com.github.channingko_madden.twitch_emote_tracker;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+import com.github.channingko_madden.twitch_emote_tracker.loadtest.ChatGenerator;
+
+/**
+ * This class provides the chat lines the benchmarks run against, either generated or read from recorded chat.
+ *
+ * Generated chat comes from a ChatGenerator with a fixed seed, so every run of a benchmark sees the same lines.
+ *
+ * If the corpus system property names a file of raw IRC lines (optionally gzipped), the PRIVMSG lines of that file
+ * are used instead, and the tracked emotes are the most common (word character only) words of the recorded chat.
+ * The message length and match density only apply to generated chat.
+ *
+ * @author channing.ko-madden
+ *
+ */
+public class ChatCorpus {
+
+	/** System property naming a file of recorded raw IRC lines to use instead of generated chat */
+	public static final String CORPUS_PROPERTY = "corpus";
+	/** Number of lines generated */
+	public static final int GENERATED_LINES = 4096;
+
+	/** Channel the lines are posted in */
+	public static final String CHANNEL = "benchmark";
+
+	private final List<EmoteValue> mEmotes = new ArrayList<>();
+	private final List<String> mLines = new ArrayList<>();
+	private final List<String> mMessages = new ArrayList<>();
+
+	/**
+	 * Constructor. Reads the recorded chat named by the corpus system property if set, or generates chat otherwise.
+	 * @param emoteCount Number of tracked emotes
+	 * @param messageLength Number of words in each generated message
+	 * @param matchDensity Chance of each generated word being a tracked emote, from 0 to 1
+	 * @param tagged True to give generated lines IRCv3 tags, including the emotes tag
+	 */
+	public ChatCorpus(int emoteCount, int messageLength, double matchDensity, boolean tagged) {
+		final String recorded = System.getProperty(CORPUS_PROPERTY);
+		if (recorded != null && !recorded.isEmpty()) {
+			try {
+				read(recorded, emoteCount);
+			} catch (IOException exp) {
+				throw new IllegalStateException("Unable to read chat corpus " + recorded, exp);
+			}
+		} else {
+			generate(emoteCount, messageLength, matchDensity, tagged);
+		}
+	}
+
+	/**
+	 * @return The tracked emotes
+	 */
+	public List<EmoteValue> getEmotes() {
+		return mEmotes;
+	}
+
+	/**
+	 * @return Raw IRC PRIVMSG lines, without the trailing CRLF
+	 */
+	public List<String> getLines() {
+		return mLines;
+	}
+
+	/**
+	 * @return The chat message (trailing param) of each line, in the same order
+	 */
+	public List<String> getMessages() {
+		return mMessages;
+	}
+
+	/**
+	 * Generate chat lines from a fixed seed
+	 */
+	private void generate(int emoteCount, int messageLength, double matchDensity, boolean tagged) {
+		final ChatGenerator generator = new ChatGenerator(CHANNEL, ChatGenerator.emoteNames(emoteCount), messageLength,
+				matchDensity, tagged, GENERATED_LINES, 42);
+		for (String name : generator.getEmotes()) {
+			mEmotes.add(new EmoteValue(name));
+		}
+		for (int i = 0; i < generator.getLineCount(); i++) {
+			mLines.add(generator.getLine(i));
+			mMessages.add(generator.getMessage(i));
+		}
+	}
+
+	/**
+	 * Read the PRIVMSG lines of a recorded chat file, and track its most common words as emotes
+	 */
+	private void read(String file, int emoteCount) throws IOException {
+		final IrcMessage parsed = new IrcMessage();
+		final Map<String, Integer> wordCounts = new HashMap<>();
+		InputStream input = Files.newInputStream(Paths.get(file));
+		if (file.endsWith(".gz")) {
+			input = new GZIPInputStream(input);
+		}
+		try (BufferedReader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8))) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (parsed.parse(line) && parsed.isCommand("PRIVMSG") && parsed.hasTrailing()) {
+					final String message = parsed.getTrailing();
+					mLines.add(line);
+					mMessages.add(message);
+					for (String word : message.split("\\s+")) {
+						if (word.matches("\\w+")) { // emote text is used in a regex by EmoteValue
+							wordCounts.merge(word, 1, Integer::sum);
+						}
+					}
+				}
+			}
+		}
+		if (mLines.isEmpty()) {
+			throw new IOException("No PRIVMSG lines in " + file);
+		}
+
+		final List<Map.Entry<String, Integer>> words = new ArrayList<>(wordCounts.entrySet());
+		words.sort(Map.Entry.<String, Integer>comparingByValue().reversed());
+		for (int i = 0; i < emoteCount && i < words.size(); i++) {
+			mEmotes.add(new EmoteValue(words.get(i).getKey()));
+		}
+	}
+
+}
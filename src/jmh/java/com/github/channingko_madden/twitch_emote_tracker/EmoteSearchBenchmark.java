@@ -0,0 +1,86 @@
+package com.github.channingko_madden.twitch_emote_tracker;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark of searching one chat message for every tracked emote: one regex per emote (EmoteValue.search)
+ * against the single pass matcher (EmoteMatcher.search).
+ *
+ * @author channing.ko-madden
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class EmoteSearchBenchmark {
+
+	/** Number of tracked emotes */
+	@Param({"10", "100", "1000"})
+	public int emotes;
+
+	/** Number of words in each message */
+	@Param({"4", "16", "64"})
+	public int messageLength;
+
+	/** Chance of each word being a tracked emote */
+	@Param({"0.0", "0.1", "0.5"})
+	public double matchDensity;
+
+	private List<EmoteValue> mEmotes;
+	private EmoteMatcher mMatcher;
+	private String[] mMessages;
+	private int mNext = 0;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		final ChatCorpus corpus = new ChatCorpus(emotes, messageLength, matchDensity, false);
+		mEmotes = corpus.getEmotes();
+		mMatcher = new EmoteMatcher(mEmotes);
+		mMessages = corpus.getMessages().toArray(new String[0]);
+	}
+
+	/**
+	 * @return The next message of the corpus, wrapping around at the end
+	 */
+	private String nextMessage() {
+		final String message = mMessages[mNext];
+		mNext = (mNext + 1) % mMessages.length;
+		return message;
+	}
+
+	@Benchmark
+	public int regexSearch() {
+		final String message = nextMessage();
+		int found = 0;
+		for (int i = 0; i < mEmotes.size(); i++) {
+			if (mEmotes.get(i).search(message)) {
+				found++;
+			}
+		}
+		return found;
+	}
+
+	@Benchmark
+	public int matcherSearch() {
+		final String message = nextMessage();
+		return mMatcher.search(message, 0, message.length());
+	}
+
+}
@@ -0,0 +1,107 @@
+package com.github.channingko_madden.twitch_emote_tracker;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark of handing chat lines from the selector loop to a worker, as in ChatPipeline: the loop takes a
+ * ChatLine from the worker's pool, copies the line into it and offers it to the worker's queue, and the worker
+ * drains the queue in batches and returns the lines to the pool.
+ *
+ * The producer and consumer run on their own threads. The BLOCK policy is left out, since a producer parked on a
+ * full queue when the consumer stops at the end of an iteration would never wake up.
+ *
+ * @author channing.ko-madden
+ *
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Group)
+public class HandoffBenchmark {
+
+	/** Overflow policy of the worker's queue */
+	@Param({"DROP_OLDEST", "DROP_NEWEST"})
+	public MessageRingBuffer.OverflowPolicy policy;
+
+	/** Capacity of the worker's queue */
+	@Param({"1024", "8192"})
+	public int queueCapacity;
+
+	private MessageRingBuffer<ChatLine> mMessageQueue;
+	private MessageRingBuffer<ChatLine> mFreeLines;
+	private ChannelTracker mChannel;
+	private String[] mLines;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		final ChatCorpus corpus = new ChatCorpus(10, 16, 0.1, true);
+		mChannel = new ChannelTracker(ChatCorpus.CHANNEL, corpus.getEmotes());
+		mLines = corpus.getLines().toArray(new String[0]);
+		mMessageQueue = new MessageRingBuffer<>(queueCapacity, policy);
+		mFreeLines = new MessageRingBuffer<>(queueCapacity + TwitchSocket.DEFAULT_BATCH_SIZE,
+				MessageRingBuffer.OverflowPolicy.DROP_NEWEST);
+	}
+
+	/**
+	 * State of the producer (selector loop) thread
+	 */
+	@State(Scope.Thread)
+	public static class Producer {
+		private final IrcMessage mRouteMessage = new IrcMessage();
+		private int mNext = 0;
+	}
+
+	/**
+	 * State of the consumer (worker) thread
+	 */
+	@State(Scope.Thread)
+	public static class Consumer {
+		private final ChatLine[] mBatch = new ChatLine[TwitchSocket.DEFAULT_BATCH_SIZE];
+	}
+
+	@Benchmark
+	@Group("handoff")
+	@GroupThreads(1)
+	public boolean offer(Producer producer) throws InterruptedException {
+		final String line = mLines[producer.mNext];
+		producer.mNext = (producer.mNext + 1) % mLines.length;
+		producer.mRouteMessage.parse(line);
+
+		ChatLine chatLine = mFreeLines.poll();
+		if (chatLine == null) {
+			chatLine = new ChatLine();
+		}
+		chatLine.set(line, producer.mRouteMessage, mChannel);
+		return mMessageQueue.offer(chatLine);
+	}
+
+	@Benchmark
+	@Group("handoff")
+	@GroupThreads(1)
+	public int drain(Consumer consumer) throws InterruptedException {
+		final int count = mMessageQueue.drainTo(consumer.mBatch, consumer.mBatch.length);
+		for (int i = 0; i < count; i++) {
+			mFreeLines.offer(consumer.mBatch[i]);
+			consumer.mBatch[i] = null;
+		}
+		return count;
+	}
+
+}
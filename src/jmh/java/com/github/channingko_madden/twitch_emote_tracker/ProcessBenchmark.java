@@ -0,0 +1,107 @@
+package com.github.channingko_madden.twitch_emote_tracker;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark of the work done for each chat line, as in TwitchSocket and ChatPipeline: the selector loop parses the raw line and
+ * copies it into a pooled ChatLine, and the worker finds the emotes tag, collects the emote occurrences, and
+ * flushes the counts once per batch.
+ *
+ * Scores are per line.
+ *
+ * @author channing.ko-madden
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class ProcessBenchmark {
+
+	/** Number of lines processed between flushes, as a worker's batch */
+	private static final int BATCH = TwitchSocket.DEFAULT_BATCH_SIZE;
+
+	/** Number of tracked emotes */
+	@Param({"10", "100", "1000"})
+	public int emotes;
+
+	/** Number of words in each message */
+	@Param({"4", "16", "64"})
+	public int messageLength;
+
+	/** Chance of each word being a tracked emote */
+	@Param({"0.0", "0.1", "0.5"})
+	public double matchDensity;
+
+	/** True if the lines have IRCv3 tags, including the emotes tag */
+	@Param({"false", "true"})
+	public boolean tagged;
+
+	private ChannelTracker mChannel;
+	private String[] mLines;
+	private final IrcMessage mRouteMessage = new IrcMessage();
+	private final ChatLine mLine = new ChatLine();
+	private int mNext = 0;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		final ChatCorpus corpus = new ChatCorpus(emotes, messageLength, matchDensity, tagged);
+		mChannel = new ChannelTracker(ChatCorpus.CHANNEL, corpus.getEmotes());
+		mLines = corpus.getLines().toArray(new String[0]);
+	}
+
+	/**
+	 * Parse the raw lines only, as done by the selector loop to route each line
+	 */
+	@Benchmark
+	@OperationsPerInvocation(BATCH)
+	public int parse() {
+		int params = 0;
+		for (int i = 0; i < BATCH; i++) {
+			mRouteMessage.parse(mLines[mNext]);
+			mNext = (mNext + 1) % mLines.length;
+			params += mRouteMessage.getParamCount();
+		}
+		return params;
+	}
+
+	/**
+	 * Parse, copy and count the emotes of a batch of lines, then publish the counts
+	 */
+	@Benchmark
+	@OperationsPerInvocation(BATCH)
+	public int processBatch() {
+		final EmoteMatcher matcher = mChannel.getMatcher();
+		for (int i = 0; i < BATCH; i++) {
+			mRouteMessage.parse(mLines[mNext]);
+			mNext = (mNext + 1) % mLines.length;
+			mLine.set(mRouteMessage.getLine(), mRouteMessage, mChannel);
+
+			final IrcMessage message = mLine.mMessage;
+			if (message.findTag("emotes")) {
+				matcher.collectTagged(mLine, message.getTrailingStart(), message.getTrailingEnd(),
+						message.getTagValueStart(), message.getTagValueEnd());
+			} else {
+				matcher.collect(mLine, message.getTrailingStart(), message.getTrailingEnd());
+			}
+		}
+		return matcher.flush();
+	}
+
+}
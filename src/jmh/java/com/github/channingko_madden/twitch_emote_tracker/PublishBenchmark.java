@@ -0,0 +1,91 @@
+package com.github.channingko_madden.twitch_emote_tracker;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.channingko_madden.twitch_emote_tracker.gui.DirtyRowTracker;
+import com.github.channingko_madden.twitch_emote_tracker.gui.EmoteTableModel;
+
+/**
+ * Benchmark of publishing emote counts: adding to an emote's running count and rate history, and notifying its
+ * subscribers, which mark the emote's table cells as changed like the running GUI does.
+ * The table is never refreshed, so only the cost paid by the worker thread is measured.
+ *
+ * @author channing.ko-madden
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class PublishBenchmark {
+
+	/** Number of tracked emotes */
+	@Param({"10", "100", "1000"})
+	public int emotes;
+
+	/** Number of subscribers of each emote */
+	@Param({"0", "1", "4"})
+	public int subscribers;
+
+	private List<EmoteValue> mEmotes;
+	private int mNext = 0;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		mEmotes = new ChatCorpus(emotes, 1, 0.0, false).getEmotes();
+		final DirtyRowTracker rowTracker = new DirtyRowTracker(new EmoteTableModel(mEmotes), mEmotes.size(),
+				DirtyRowTracker.DEFAULT_REFRESH_RATE);
+		for (int row = 0; row < mEmotes.size(); row++) {
+			for (int i = 0; i < subscribers; i++) {
+				mEmotes.get(row).addEmoteListener(new RowSubscriber(rowTracker, row));
+			}
+		}
+	}
+
+	@Benchmark
+	public long add() {
+		final EmoteValue emote = mEmotes.get(mNext);
+		mNext = (mNext + 1) % mEmotes.size();
+		emote.add(1);
+		return emote.getCount();
+	}
+
+	/**
+	 * This class marks the cells of one row as changed, like the running GUI's emote listener
+	 */
+	private static class RowSubscriber implements EmoteSubscriber {
+
+		private final DirtyRowTracker mRowTracker;
+		private final int mRow;
+
+		RowSubscriber(DirtyRowTracker rowTracker, int row) {
+			mRowTracker = rowTracker;
+			mRow = row;
+		}
+
+		@Override
+		public void actionPerformed(EmoteEvent event) {
+			mRowTracker.markDirty(mRow, EmoteTableModel.TableColumns.get(event.getType()));
+			for (int column : EmoteTableModel.RateColumns) {
+				mRowTracker.markDirty(mRow, column);
+			}
+		}
+	}
+
+}
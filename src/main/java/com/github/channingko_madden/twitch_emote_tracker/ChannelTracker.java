@@ -0,0 +1,172 @@
+package com.github.channingko_madden.twitch_emote_tracker;
+
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * This class holds the emotes tracked for one Twitch channel, so that many channels can be tracked over
+ * one connection with their own counts.
+ *
+ * A channel is processed by a single worker thread, so its EmoteMatcher is only ever used by that thread.
+ *
+ * @author channing.ko-madden
+ *
+ */
+public class ChannelTracker {
+
+	/** Name of the channel, lower case and without the leading '#' (ex. t90official) */
+	private final String mChannelName;
+	/** Name of the channel as used by Twitch IRC (ex. #t90official) */
+	private final String mIrcChannel;
+	/** The emotes tracked in this channel */
+	private final List<EmoteValue> mEmoteValues;
+	/** Finds every tracked emote within a chat message in one pass */
+	private final EmoteMatcher mEmoteMatcher;
+	/** Most posted words of the chat, tracked emotes or not. Null if not kept */
+	private final TrendingTokens mTrending;
+	/** Number of messages posting each pair of tracked emotes together */
+	private final EmoteCooccurrence mCooccurrence;
+	/** Suppresses chatters repeating the same message before it is counted, null to count every message */
+	private volatile SpamFilter mSpamFilter = null;
+	/** Emote counts of each chatter. Null if not kept */
+	private final ChatterStats mChatters;
+	/** Collapses the replies to repeated "!emotecount" queries, by emote index of the matcher */
+	private final ReplyCache mReplyCache;
+	/** Flag to flip when a unique chat message is created, so the next one created is also unique. Used by the thread running chat commands */
+	private boolean mNeedUniqueMsg = false;
+
+	/**
+	 * Constructor. Keeps the trending words and the emote counts of each chatter
+	 * @param channel_name Twitch channel to track (ex. t90official)
+	 * @param emotes The emotes the user wants to track in this channel
+	 */
+	public ChannelTracker(String channel_name, List<EmoteValue> emotes) {
+		this(channel_name, emotes, true);
+	}
+
+	/**
+	 * Constructor
+	 * @param channel_name Twitch channel to track (ex. t90official)
+	 * @param emotes The emotes the user wants to track in this channel
+	 * @param chatStats True to keep the trending words and the emote counts of each chatter, which are only displayed
+	 *                  and queried live and take several MB per channel
+	 */
+	public ChannelTracker(String channel_name, List<EmoteValue> emotes, boolean chatStats) {
+		// Twitch IRC only uses lower case channel names
+		mChannelName = channel_name.toLowerCase(Locale.ROOT);
+		mIrcChannel = "#" + mChannelName;
+		mEmoteValues = emotes;
+		mEmoteMatcher = new EmoteMatcher(emotes);
+		mReplyCache = new ReplyCache(mEmoteMatcher.size());
+		mCooccurrence = new EmoteCooccurrence(emotes);
+		mTrending = chatStats ? new TrendingTokens() : null;
+		mChatters = chatStats ? new ChatterStats() : null;
+	}
+
+	/**
+	 * @return Name of the channel, without the leading '#'
+	 */
+	public String getChannelName() {
+		return mChannelName;
+	}
+
+	/**
+	 * @return Name of the channel as used by Twitch IRC, with the leading '#'
+	 */
+	public String getIrcChannel() {
+		return mIrcChannel;
+	}
+
+	/**
+	 * @return The emotes tracked in this channel
+	 */
+	public List<EmoteValue> getEmotes() {
+		return mEmoteValues;
+	}
+
+	/**
+	 * @return The most posted words of this channel's chat, tracked emotes or not, or null if they are not kept
+	 */
+	public TrendingTokens getTrending() {
+		return mTrending;
+	}
+
+	/**
+	 * @return The number of messages of this channel posting each pair of tracked emotes together
+	 */
+	public EmoteCooccurrence getCooccurrence() {
+		return mCooccurrence;
+	}
+
+	/**
+	 * @return The filter suppressing repeated messages before they are counted, or null if every message is counted
+	 */
+	public SpamFilter getSpamFilter() {
+		return mSpamFilter;
+	}
+
+	/**
+	 * Set the filter suppressing repeated messages before they are counted. Must be called before chat is processed
+	 * @param spamFilter Filter for this channel only, or null to count every message
+	 */
+	public void setSpamFilter(SpamFilter spamFilter) {
+		mSpamFilter = spamFilter;
+	}
+
+	/**
+	 * @return The emote counts of each chatter of this channel, or null if they are not kept
+	 */
+	public ChatterStats getChatters() {
+		return mChatters;
+	}
+
+	/**
+	 * Find a tracked emote by its text. Safe to call from any thread, since the emote index never changes
+	 * @param text Text of the emote
+	 * @return Index of the emote within getEmotes, or -1 if the text is not a tracked emote
+	 */
+	public int indexOfEmote(CharSequence text) {
+		return mEmoteMatcher.indexOf(text, 0, text.length());
+	}
+
+	/**
+	 * @return The matcher for this channel's emotes. Must only be used by the thread processing this channel
+	 */
+	EmoteMatcher getMatcher() {
+		return mEmoteMatcher;
+	}
+
+	/**
+	 * @return The reply cache for this channel's emotes. Must only be used by the thread running chat commands
+	 */
+	ReplyCache getReplyCache() {
+		return mReplyCache;
+	}
+
+	/**
+	 * Set how often "!emotecount" answers the same emote. Must be called before commands are run
+	 * @param millis Time after answering an emote during which queries for it are not answered again, 0 to answer every query
+	 */
+	public void setReplyInterval(long millis) {
+		mReplyCache.setReplyInterval(millis);
+	}
+
+	/**
+	 * Combine the message and emote to create a unique message, so that Twitch does not ignore repeated identical messages.
+	 *
+	 * @param message Primary message to send
+	 * @param emote Emote that is optionally added to message if needed to make it a unique message
+	 * @return Unique message
+	 */
+	String createUniqueMessage(final String message, final String emote)
+	{
+		if (mNeedUniqueMsg) {
+			mNeedUniqueMsg = false;
+			return message + " " + emote;
+		} else {
+			mNeedUniqueMsg = true;
+			return message;
+		}
+	}
+
+}
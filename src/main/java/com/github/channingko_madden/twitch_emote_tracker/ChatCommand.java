@@ -0,0 +1,43 @@
+package com.github.channingko_madden.twitch_emote_tracker;
+
+/**
+ * This interface defines a chat command (ex. "!emotecount Kappa") that chat users can post, registered with a
+ * CommandDispatcher.
+ *
+ * Commands are executed one at a time on the dispatcher's thread, never on the threads counting emotes, so a slow
+ * command does not hold up counting. The emote counts of the messages before the command are published first.
+ *
+ * @author channing.ko-madden
+ *
+ */
+public interface ChatCommand {
+
+	/**
+	 * This interface defines how a command replies to the chat
+	 */
+	interface Reply {
+
+		/**
+		 * Post a chat message in a channel
+		 * @param channel Channel to post in
+		 * @param message Chat message
+		 * @param subject What the message answers (ex. the queried emote). A later reply about the same subject in
+		 *                the same channel may replace this one if it has not been sent yet
+		 */
+		void send(ChannelTracker channel, String message, String subject);
+	}
+
+	/**
+	 * @return Name that chat users type, including the leading '!' (ex. "!emotecount")
+	 */
+	String getName();
+
+	/**
+	 * Run the command. Called on the dispatcher's thread
+	 * @param channel Channel the command was posted in
+	 * @param argument Text after the name, trimmed. Empty if there is none
+	 * @param reply Where replies go
+	 */
+	void execute(ChannelTracker channel, String argument, Reply reply);
+
+}
@@ -0,0 +1,64 @@
+package com.github.channingko_madden.twitch_emote_tracker;
+
+/**
+ * This class is a reusable copy of one chat line, handed from the selector loop to a worker.
+ *
+ * Lines are pooled per worker and returned to the pool once processed, so in steady state handing a line to a
+ * worker copies characters into an existing buffer instead of creating a String.
+ *
+ * @author channing.ko-madden
+ *
+ */
+class ChatLine implements CharSequence {
+
+	/** Initial size of the character buffer, enough for a chat line without tags */
+	private static final int INITIAL_SIZE = 512;
+
+	/** Characters of the line. Grows to fit the longest line copied */
+	private char[] mChars = new char[INITIAL_SIZE];
+	private int mLength = 0;
+	/** Parsed view of the line */
+	final IrcMessage mMessage = new IrcMessage();
+	/** Channel the line was posted in */
+	ChannelTracker mChannel;
+
+	/**
+	 * Copy a line and the result of parsing it
+	 * @param line Line to copy
+	 * @param parsed View that parsed the line
+	 * @param channel Channel the line was posted in
+	 */
+	void set(CharSequence line, IrcMessage parsed, ChannelTracker channel) {
+		final int length = line.length();
+		if (length > mChars.length) {
+			mChars = new char[Math.max(length, mChars.length * 2)];
+		}
+		for (int i = 0; i < length; i++) {
+			mChars[i] = line.charAt(i);
+		}
+		mLength = length;
+		mMessage.copyFrom(parsed, this);
+		mChannel = channel;
+	}
+
+	@Override
+	public int length() {
+		return mLength;
+	}
+
+	@Override
+	public char charAt(int index) {
+		return mChars[index];
+	}
+
+	@Override
+	public CharSequence subSequence(int start, int end) {
+		return new String(mChars, start, end - start);
+	}
+
+	@Override
+	public String toString() {
+		return new String(mChars, 0, mLength);
+	}
+
+}
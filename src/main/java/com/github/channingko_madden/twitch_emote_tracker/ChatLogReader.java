@@ -0,0 +1,205 @@
+package com.github.channingko_madden.twitch_emote_tracker;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * This class reads recorded chat (raw IRC lines, one per line, optionally gzipped) and feeds it to a ChatPipeline.
+ *
+ * Lines are framed within one reusable read buffer and decoded into one reusable char buffer, the same way
+ * IrcConnection reads a socket, so reading a file allocates nothing per line.
+ *
+ * A plain file can be read in byte ranges (splits) by several readers at once. A split owns every line that starts
+ * within it: a reader skips the partial line at the start of its split, and reads past the end of its split to
+ * finish its last line. A gzipped file can only be read from the start, so it is always one split.
+ *
+ * A gzipped file that ends early (ex. the segment ChatRecorder was writing when the tracker was killed) is read up to
+ * where it ends, and its last incomplete line is dropped.
+ *
+ * @author channing.ko-madden
+ *
+ */
+public class ChatLogReader {
+
+	/** Size of the read buffer */
+	public static final int READ_BUFFER_SIZE = 256 * 1024;
+
+	private final ByteBuffer mReadBuffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+	private final CharBuffer mLine = CharBuffer.allocate(READ_BUFFER_SIZE);
+	private final CharsetDecoder mDecoder = StandardCharsets.UTF_8.newDecoder()
+			.onMalformedInput(CodingErrorAction.REPLACE)
+			.onUnmappableCharacter(CodingErrorAction.REPLACE);
+	private final IrcMessage mMessage = new IrcMessage();
+	private long mLines = 0;
+	/** True if the gzipped file being read ended before its gzip trailer */
+	private boolean mTruncated = false;
+
+	/**
+	 * @param path File to check
+	 * @return True if the file is gzipped, going by its name
+	 */
+	public static boolean isGzip(Path path) {
+		return path.getFileName().toString().endsWith(".gz");
+	}
+
+	/**
+	 * Read every line of a file, and route it to the pipeline
+	 * @param path Recorded chat, gzipped if the name ends with .gz. A truncated gzipped file is read up to where it ends
+	 * @param pipeline Pipeline to feed
+	 * @throws IOException If the file could not be read
+	 * @throws InterruptedException If interrupted while waiting for room in a worker's queue
+	 */
+	public void read(Path path, ChatPipeline pipeline) throws IOException, InterruptedException {
+		if (isGzip(path)) {
+			mTruncated = false;
+			try (InputStream input = new TruncatedGzipInputStream(Files.newInputStream(path));
+					ReadableByteChannel channel = Channels.newChannel(input)) {
+				read(channel, false, Long.MAX_VALUE, pipeline);
+			} catch (EOFException exp) {
+				mTruncated = true; // ended within the gzip header, before any chat
+			}
+			if (mTruncated) {
+				System.out.println("Ignoring the truncated end of " + path);
+			}
+			mTruncated = false;
+		} else {
+			try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+				read(channel, 0, channel.size(), pipeline);
+			}
+		}
+	}
+
+	/**
+	 * Read the lines that start within a byte range of a plain (not gzipped) file, and route them to the pipeline
+	 * @param channel Open file
+	 * @param start Start of the split (inclusive)
+	 * @param end End of the split (exclusive)
+	 * @param pipeline Pipeline to feed
+	 * @throws IOException If the file could not be read
+	 * @throws InterruptedException If interrupted while waiting for room in a worker's queue
+	 */
+	public void read(FileChannel channel, long start, long end, ChatPipeline pipeline) throws IOException, InterruptedException {
+		boolean skipFirst = false;
+		long position = start;
+		if (start > 0) {
+			// the line running into this split belongs to the previous split, unless it ended right before the split
+			final ByteBuffer previous = ByteBuffer.allocate(1);
+			channel.read(previous, start - 1);
+			skipFirst = previous.get(0) != '\n';
+		}
+		channel.position(position);
+		read(channel, skipFirst, end - start, pipeline);
+	}
+
+	/**
+	 * @return Number of lines read so far
+	 */
+	public long getLineCount() {
+		return mLines;
+	}
+
+	/**
+	 * Read lines until the end of the input, or until the first line starting at or after limit bytes
+	 * @param skipFirst True to drop everything up to the first line break
+	 */
+	private void read(ReadableByteChannel channel, boolean skipFirst, long limit, ChatPipeline pipeline)
+			throws IOException, InterruptedException {
+		mReadBuffer.clear();
+		boolean skipping = skipFirst;
+		long bufferOffset = 0; // input offset of the start of the buffer
+		while (true) {
+			final int read = channel.read(mReadBuffer);
+			mReadBuffer.flip();
+			int lineStart = 0;
+			final int bufferEnd = mReadBuffer.limit();
+			for (int i = 0; i < bufferEnd; i++) {
+				if (mReadBuffer.get(i) == '\n') {
+					if (skipping) {
+						skipping = false;
+					} else {
+						if (bufferOffset + lineStart >= limit) {
+							return; // this line belongs to the next split
+						}
+						final int lineEnd = (i > lineStart && mReadBuffer.get(i - 1) == '\r') ? i - 1 : i;
+						routeLine(lineStart, lineEnd, pipeline);
+					}
+					lineStart = i + 1;
+				}
+			}
+			if (read == -1) {
+				// last line without a line break, unless it was cut off by a truncated file
+				if (!skipping && !mTruncated && lineStart < bufferEnd && bufferOffset + lineStart < limit) {
+					routeLine(lineStart, bufferEnd, pipeline);
+				}
+				return;
+			}
+			mReadBuffer.limit(bufferEnd);
+			if (lineStart == 0 && bufferEnd == mReadBuffer.capacity()) {
+				// a line longer than the buffer, which is not an IRC line. Drop it
+				skipping = true;
+				bufferOffset += bufferEnd;
+				mReadBuffer.clear();
+			} else {
+				mReadBuffer.position(lineStart);
+				mReadBuffer.compact(); // keep the start of an incomplete line for the next read
+				bufferOffset += lineStart;
+			}
+		}
+	}
+
+	/**
+	 * Decode one line within the read buffer, parse it, and route it to the pipeline
+	 */
+	private void routeLine(int start, int end, ChatPipeline pipeline) throws InterruptedException {
+		final int limit = mReadBuffer.limit();
+		mReadBuffer.limit(end);
+		mReadBuffer.position(start);
+		mLine.clear();
+		mDecoder.reset();
+		mDecoder.decode(mReadBuffer, mLine, true);
+		mDecoder.flush(mLine);
+		mLine.flip();
+		mReadBuffer.limit(limit);
+		mLines++;
+		if (mLine.length() > 0 && mMessage.parse(mLine)) {
+			pipeline.route(mLine, mMessage);
+		}
+	}
+
+	/**
+	 * Gzip stream that ends the data, instead of failing, when the file ends before the gzip trailer
+	 */
+	private class TruncatedGzipInputStream extends GZIPInputStream {
+
+		TruncatedGzipInputStream(InputStream input) throws IOException {
+			super(input, 64 * 1024);
+		}
+
+		@Override
+		public int read(byte[] buffer, int offset, int length) throws IOException {
+			if (mTruncated) {
+				return -1;
+			}
+			try {
+				return super.read(buffer, offset, length);
+			} catch (EOFException exp) {
+				mTruncated = true;
+				return -1;
+			}
+		}
+	}
+
+}
@@ -0,0 +1,378 @@
+package com.github.channingko_madden.twitch_emote_tracker;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class is the chat processing stage shared by the live socket (TwitchSocket) and offline replay (ChatReplay):
+ * it routes parsed chat lines to the worker of their channel, counts the emotes, and answers chat commands.
+ *
+ * Chat messages are processed by a pool of worker threads. Each channel is always processed by the same worker,
+ * so the messages of a channel are processed in order while many channels are processed in parallel.
+ * Lines are copied into pooled ChatLines for the workers, so in steady state nothing is allocated per chat
+ * message on the way to the emote counts.
+ *
+ * Lines must be routed by one thread at a time (ex. the selector loop, or a file reader).
+ * Replies to chat commands go to a ReplySink, which can send them to chat or drop them.
+ *
+ * Chat users can post commands (ex. "!emotecount"), which are run by a CommandDispatcher on its own thread,
+ * and replied to through the ReplySink.
+ *
+ * @author channing.ko-madden
+ *
+ */
+public class ChatPipeline {
+
+	/**
+	 * This interface defines where replies to chat commands go
+	 */
+	public interface ReplySink {
+
+		/**
+		 * Called on a worker thread to send an IRC line (ex. a PRIVMSG answering a command)
+		 * @param line IRC line, without the trailing CRLF
+		 */
+		void sendLine(String line);
+
+		/**
+		 * Called on a worker thread to send an IRC line that may be replaced by a later line with the same key,
+		 * if the earlier one has not been sent yet
+		 * @param line IRC line, without the trailing CRLF
+		 * @param coalesceKey Key of the line (ex. channel and emote of a reply)
+		 */
+		default void sendLine(String line, String coalesceKey) {
+			sendLine(line);
+		}
+	}
+
+	/** Channels being processed */
+	final private ChannelTracker[] mChannels;
+	/** Index of the channel names without the leading '#', in the same order as mChannels */
+	final private TextIndex mChannelIndex;
+	/** Maximum number of chat messages taken from a worker's queue and processed together */
+	final private int mBatchSize;
+	/** Workers that process chat messages. A channel is assigned to one worker */
+	final private ProcessWorker[] mWorkers;
+	/** Worker assigned to each channel, in the same order as mChannels */
+	final private ProcessWorker[] mChannelWorkers;
+	/** Where replies to chat commands go */
+	final private ReplySink mReplySink;
+	/** Finds and runs chat commands */
+	final private CommandDispatcher mCommands;
+
+	/**
+	 * Constructor. Starts the workers.
+	 *
+	 * @param channels Channels to process, and the emotes to track in each
+	 * @param queueCapacity Number of chat messages that can wait to be processed, per worker
+	 * @param overflowPolicy What to do with a chat message when queueCapacity messages are already waiting.
+	 *                       With BLOCK a full queue stalls the thread routing lines
+	 * @param batchSize Maximum number of waiting chat messages processed together. Emote events are published once per batch
+	 * @param workerCount Number of threads processing chat messages. Channels are spread evenly across the workers
+	 * @param replySink Where replies to chat commands go
+	 */
+	public ChatPipeline(List<ChannelTracker> channels, int queueCapacity, MessageRingBuffer.OverflowPolicy overflowPolicy,
+			int batchSize, int workerCount, ReplySink replySink) {
+		if (channels.isEmpty()) {
+			throw new IllegalArgumentException("No channels to process");
+		}
+		if (batchSize < 1) {
+			throw new IllegalArgumentException("Invalid batch size: " + batchSize);
+		}
+		if (workerCount < 1) {
+			throw new IllegalArgumentException("Invalid worker count: " + workerCount);
+		}
+		mBatchSize = batchSize;
+		mReplySink = replySink;
+		mCommands = CommandDispatcher.withDefaultCommands(new ChatReply());
+		mWorkers = new ProcessWorker[Math.min(workerCount, channels.size())];
+		for (int i = 0; i < mWorkers.length; i++) {
+			mWorkers[i] = new ProcessWorker(queueCapacity, overflowPolicy);
+		}
+		mChannels = channels.toArray(new ChannelTracker[channels.size()]);
+		mChannelWorkers = new ProcessWorker[mChannels.length];
+		final String[] channelNames = new String[mChannels.length];
+		for (int i = 0; i < mChannels.length; i++) {
+			channelNames[i] = mChannels[i].getChannelName();
+			mChannelWorkers[i] = mWorkers[i % mWorkers.length];
+			mChannelWorkers[i].mChannels.add(mChannels[i]);
+		}
+		mChannelIndex = new TextIndex(channelNames);
+		for (int i = 0; i < mWorkers.length; i++) {
+			mWorkers[i].mThread = new Thread(mWorkers[i], "ProcessWorker-" + i);
+			mWorkers[i].mThread.start();
+		}
+	}
+
+	/**
+	 * @return The chat commands, to register more commands with
+	 */
+	public CommandDispatcher getCommands() {
+		return mCommands;
+	}
+
+	/**
+	 * @return The channels being processed
+	 */
+	public List<ChannelTracker> getChannels() {
+		return List.of(mChannels);
+	}
+
+	/**
+	 * Hand a parsed line to the worker of its channel, if it is a chat message (PRIVMSG) of a channel being processed
+	 *
+	 * @param line Line that was parsed. May be reused once this returns, since workers get their own copy
+	 * @param parsed View that parsed the line
+	 * @return True if the line was a chat message of a channel being processed
+	 * @throws InterruptedException If interrupted while waiting for room in a worker's queue
+	 */
+	public boolean route(final CharSequence line, final IrcMessage parsed) throws InterruptedException {
+		// Want to parse PRIVMSG only for emotes. Format looks like:
+		// @emotes=;mod=0 :twitch_lurker!twitch_lurker@twitch_lurker.tmi.twitch.tv PRIVMSG #channel_name :EZ Clap!
+		if (parsed.isCommand("PRIVMSG") && parsed.getParamCount() > 0) {
+			final int channel_pos = parsed.getParamStart(0);
+			if (line.charAt(channel_pos) == '#') {
+				final int index = mChannelIndex.indexOf(line, channel_pos + 1, parsed.getParamEnd(0));
+				if (index != -1) {
+					mChannelWorkers[index].handOff(line, parsed, mChannels[index]);
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Wait until every line routed so far has been processed and its emote counts published, and its chat commands run.
+	 * Must be called by the thread routing lines. Lines dropped by a full queue are not waited for.
+	 *
+	 * @throws InterruptedException If interrupted while waiting
+	 */
+	public void awaitProcessed() throws InterruptedException {
+		for (ProcessWorker worker : mWorkers) {
+			while (worker.mProcessed < worker.mHandedOff - worker.mMessageQueue.getDroppedCount()) {
+				if (!worker.mThread.isAlive()) {
+					return;
+				}
+				Thread.sleep(1);
+			}
+		}
+		mCommands.awaitIdle();
+	}
+
+	/**
+	 * Stop the workers and the chat commands. Lines still waiting are not processed.
+	 */
+	public void close() {
+		mCommands.close();
+		for (ProcessWorker worker : mWorkers) {
+			try {
+				worker.mThread.interrupt(); // waiting on the message queue will unblock if thread is interrupted
+			} catch (SecurityException exp) {
+				exp.printStackTrace();
+			}
+		}
+	}
+
+	/**
+	 * @return The number of chat messages waiting to be processed, over all workers
+	 */
+	public int getQueueDepth() {
+		int depth = 0;
+		for (ProcessWorker worker : mWorkers) {
+			depth += worker.mMessageQueue.size();
+		}
+		return depth;
+	}
+
+	/**
+	 * @return The number of chat messages dropped because too many were waiting to be processed, over all workers
+	 */
+	public long getDroppedMessages() {
+		long dropped = 0;
+		for (ProcessWorker worker : mWorkers) {
+			dropped += worker.mMessageQueue.getDroppedCount();
+		}
+		return dropped;
+	}
+
+	/**
+	 * Processes the chat messages of the channels assigned to it.
+	 * Extracts all waiting messages (up to mBatchSize) from its queue at once and processes them together.
+	 * Waits until messages are within the queue.
+	 */
+	private class ProcessWorker implements Runnable {
+
+		/** Messages of this worker's channels waiting to be processed. The routing thread is the only producer */
+		private final MessageRingBuffer<ChatLine> mMessageQueue;
+		/** Processed lines returned for reuse. The worker is the only producer and the routing thread the only consumer */
+		private final MessageRingBuffer<ChatLine> mFreeLines;
+		/** Channels processed by this worker */
+		private final List<ChannelTracker> mChannels = new ArrayList<>();
+		private Thread mThread;
+		/** Lines handed to this worker. Written by the routing thread only */
+		private long mHandedOff = 0;
+		/** Lines processed, with their counts published. Written by the worker only */
+		private volatile long mProcessed = 0;
+
+		/**
+		 * Constructor
+		 * @param queueCapacity Number of chat messages that can wait to be processed
+		 * @param overflowPolicy What to do with a chat message when queueCapacity messages are already waiting
+		 */
+		public ProcessWorker(int queueCapacity, MessageRingBuffer.OverflowPolicy overflowPolicy) {
+			mMessageQueue = new MessageRingBuffer<>(queueCapacity, overflowPolicy);
+			// enough lines to fill the queue while a batch is being processed
+			mFreeLines = new MessageRingBuffer<>(queueCapacity + mBatchSize, MessageRingBuffer.OverflowPolicy.DROP_NEWEST);
+		}
+
+		/**
+		 * Copy a line into a pooled ChatLine and queue it for this worker. Called on the routing thread.
+		 *
+		 * @param line Line to copy
+		 * @param parsed View that parsed the line
+		 * @param channel Channel the line was posted in
+		 * @throws InterruptedException If interrupted while waiting for room in the queue
+		 */
+		private void handOff(CharSequence line, IrcMessage parsed, ChannelTracker channel) throws InterruptedException {
+			ChatLine chatLine = mFreeLines.poll();
+			if (chatLine == null) {
+				chatLine = new ChatLine(); // pool is still filling up, or lines were dropped
+			}
+			chatLine.set(line, parsed, channel);
+			mHandedOff++;
+			mMessageQueue.offer(chatLine);
+		}
+
+		@Override
+		public void run() {
+			final ChatLine[] batch = new ChatLine[mBatchSize];
+			try {
+				while (true) {
+					final int count = mMessageQueue.takeBatch(batch, mBatchSize);
+					for (int i = 0; i < count; i++) {
+						try {
+							processMsg(batch[i]);
+						} catch (RuntimeException exp) {
+							exp.printStackTrace(); // one bad message must not stop the worker, and with it the reading
+						}
+						mFreeLines.offer(batch[i]);
+						batch[i] = null;
+					}
+					// publish the emote counts of the whole batch
+					for (int i = 0; i < mChannels.size(); i++) {
+						try {
+							mChannels.get(i).getMatcher().flush();
+						} catch (RuntimeException exp) {
+							exp.printStackTrace();
+						}
+					}
+					mProcessed += count;
+				}
+			} catch (InterruptedException exp) {
+				// closing
+			} finally {
+				System.out.println("Process worker over");
+			}
+		}
+
+	}
+
+	/**
+	 * Search the PRIVMSG body for any tracked emote strings of its channel and extract statistic data to display to the user
+	 *
+	 * Emote occurrences are collected, and added to the running counts when the worker flushes the batch. They are
+	 * also added to the counts of the chatter who posted them, taken from the message prefix, and the chatter to the
+	 * distinct chatters of each emote. Messages with several emotes are added to the counts of emote pairs.
+	 *
+	 * Messages starting with a registered command (ex. "!emotecount") are handed to the CommandDispatcher instead.
+	 * When the channel has a SpamFilter, repeated messages over its limit are dropped before anything is counted.
+	 * Everything is counted at the time Twitch says the message was sent (the tmi-sent-ts tag), so recorded chat is
+	 * counted at the time it was posted, not when it is replayed.
+	 *
+	 * @param line Chat message from Twitch, already parsed
+	 */
+	private void processMsg(final ChatLine line) {
+		final IrcMessage message = line.mMessage;
+		final ChannelTracker channel = line.mChannel;
+		if (message.hasTrailing())
+		{
+			final EmoteMatcher matcher = channel.getMatcher();
+			final ChatCommand command = mCommands.find(line, message.getTrailingStart(), message.getTrailingEnd());
+			if (command != null) {
+				matcher.flush(); // the command sees counts that include the earlier messages of this batch
+				mCommands.execute(command, channel, argument(line, message.getTrailingStart() + command.getName().length(),
+						message.getTrailingEnd()));
+				return;
+			}
+			final long now = sentMillis(line, message);
+			final SpamFilter spamFilter = channel.getSpamFilter();
+			if (spamFilter != null && message.hasPrefix() && !spamFilter.allow(line, message.getNickStart(),
+					message.getNickEnd(), message.getTrailingStart(), message.getTrailingEnd(), now)) {
+				return; // a chatter repeating the same message
+			}
+			final TrendingTokens trending = channel.getTrending();
+			if (trending != null) {
+				trending.add(line, message.getTrailingStart(), message.getTrailingEnd(), now);
+			}
+			final int matched;
+			if (message.findTag("emotes")) {
+				matched = matcher.collectTagged(line, message.getTrailingStart(), message.getTrailingEnd(),
+						message.getTagValueStart(), message.getTagValueEnd(), now);
+			} else {
+				matched = matcher.collect(line, message.getTrailingStart(), message.getTrailingEnd(), now);
+			}
+			channel.getCooccurrence().add(matcher, matched);
+			if (matched > 0 && message.hasPrefix()) {
+				final ChatterStats chatters = channel.getChatters();
+				if (chatters != null) {
+					chatters.add(line, message.getNickStart(), message.getNickEnd(), matcher, matched);
+				}
+				matcher.addChatter(HyperLogLog.hash(line, message.getNickStart(), message.getNickEnd()), matched, now);
+			}
+		}
+	}
+
+	/**
+	 * @return Time the message was sent, from its tmi-sent-ts tag, or the current time if it has none
+	 */
+	private static long sentMillis(final CharSequence line, final IrcMessage message) {
+		if (!message.findTag("tmi-sent-ts") || message.getTagValueStart() == message.getTagValueEnd()) {
+			return System.currentTimeMillis();
+		}
+		long millis = 0;
+		for (int i = message.getTagValueStart(); i < message.getTagValueEnd(); i++) {
+			final char c = line.charAt(i);
+			if (c < '0' || c > '9' || millis > Long.MAX_VALUE / 10 - 9) {
+				return System.currentTimeMillis();
+			}
+			millis = millis * 10 + (c - '0');
+		}
+		return millis;
+	}
+
+	/**
+	 * @return Text of a command's argument, without surrounding whitespace
+	 */
+	private static String argument(final CharSequence line, int start, int end) {
+		while (start < end && EmoteMatcher.isWhitespace(line.charAt(start))) {
+			start++;
+		}
+		while (end > start && EmoteMatcher.isWhitespace(line.charAt(end - 1))) {
+			end--;
+		}
+		return line.subSequence(start, end).toString();
+	}
+
+	/**
+	 * Sends the replies of chat commands as PRIVMSG (aka chat message) to the joined channel
+	 */
+	private class ChatReply implements ChatCommand.Reply {
+
+		@Override
+		public void send(final ChannelTracker channel, final String message, final String subject) {
+			mReplySink.sendLine("PRIVMSG " + channel.getIrcChannel() + " :" + message, channel.getIrcChannel() + " " + subject);
+		}
+	}
+
+}
@@ -0,0 +1,372 @@
+package com.github.channingko_madden.twitch_emote_tracker;
+
+import java.io.BufferedReader;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * This class records every raw line read from the Twitch IRC to disk, so that chat can be replayed later
+ * (ChatReplay). Recording is done off the thread reading the IRC, and never slows it down.
+ *
+ * Lines are encoded into pooled fixed size blocks on the reading thread, and full blocks (or blocks older than
+ * FLUSH_INTERVAL_MILLIS) are handed to a background writer through a MessageRingBuffer. The writer gzips the
+ * blocks into segment files, and returns them to the pool. The pool is the bound on buffering: when the writer
+ * falls behind and every block is waiting to be written, new lines are dropped and counted instead of blocking.
+ *
+ * Each batch of blocks written is sync flushed, so a segment the tracker was killed before finishing can still be
+ * read (ChatLogReader) up to the last batch written.
+ *
+ * Segments are rotated once they hold SEGMENT_BYTES of chat or are SEGMENT_MILLIS old. Files in the directory:
+ * <pre>
+ * chat-[start millis].log.gz   raw IRC lines, one per line
+ * segments.idx                 one line per segment: start time in milliseconds, file name
+ * </pre>
+ *
+ * @author channing.ko-madden
+ *
+ */
+public class ChatRecorder {
+
+	/** Uncompressed size of chat that rotates to a new segment */
+	public static final long SEGMENT_BYTES = 128 * 1024 * 1024;
+	/** Age that rotates to a new segment */
+	public static final long SEGMENT_MILLIS = 60 * 60 * 1000;
+	/** Size of a block of lines handed to the writer */
+	public static final int BLOCK_SIZE = 64 * 1024;
+	/** Default size of all blocks, the most chat waiting to be written */
+	public static final int DEFAULT_BUFFER_SIZE = 8 * 1024 * 1024;
+	/** Longest a line waits in a block that is not full, while lines are being recorded */
+	public static final long FLUSH_INTERVAL_MILLIS = 1000;
+
+	private static final String SEGMENT_PREFIX = "chat-";
+	private static final String SEGMENT_SUFFIX = ".log.gz";
+	private static final String INDEX_FILE = "segments.idx";
+
+	private final Path mDirectory;
+	/** Blocks waiting to be written. The recording thread is the only producer, the writer the only consumer */
+	private final MessageRingBuffer<Block> mFullBlocks;
+	/** Written blocks returned for reuse. The writer is the only producer, the recording thread the only consumer */
+	private final MessageRingBuffer<Block> mFreeBlocks;
+	private final Thread mThread;
+	/** Block being filled by the recording thread, null if none was free. Guarded by this */
+	private Block mBlock;
+	private boolean mClosed = false;
+
+	private long mRecordedLines = 0;
+	/** Lines dropped because the writer was behind, or failed to write them */
+	private final AtomicLong mDroppedLines = new AtomicLong();
+	private volatile int mSegmentCount = 0;
+
+	/**
+	 * Constructor. Starts the writer.
+	 * @param directory Directory of the segments, created if missing
+	 * @throws IOException If the directory could not be created
+	 */
+	public ChatRecorder(Path directory) throws IOException {
+		this(directory, DEFAULT_BUFFER_SIZE);
+	}
+
+	/**
+	 * Constructor. Starts the writer.
+	 * @param directory Directory of the segments, created if missing
+	 * @param bufferSize Most chat waiting to be written, in bytes. Lines are dropped beyond it
+	 * @throws IOException If the directory could not be created
+	 */
+	public ChatRecorder(Path directory, int bufferSize) throws IOException {
+		Files.createDirectories(directory);
+		mDirectory = directory;
+		final int blockCount = Math.max(2, bufferSize / BLOCK_SIZE);
+		// the queue holds every block, so it is never full and the pool alone bounds the buffering
+		mFullBlocks = new MessageRingBuffer<>(blockCount, MessageRingBuffer.OverflowPolicy.DROP_NEWEST);
+		mFreeBlocks = new MessageRingBuffer<>(blockCount, MessageRingBuffer.OverflowPolicy.DROP_NEWEST);
+		try {
+			for (int i = 0; i < blockCount; i++) {
+				mFreeBlocks.offer(new Block());
+			}
+		} catch (InterruptedException exp) {
+			Thread.currentThread().interrupt(); // never waits, the pool has room for every block
+		}
+		mThread = new Thread(new SegmentWriter(), "ChatRecorder");
+		mThread.start();
+	}
+
+	/**
+	 * Record a line. Never waits for the writer. Normally called by one thread (ex. the selector loop), so the
+	 * lock is uncontended; it only orders the last lines recorded with close.
+	 * @param line Raw IRC line without the trailing CRLF. Not kept once this returns
+	 */
+	public synchronized void record(CharSequence line) {
+		if (mClosed) {
+			return;
+		}
+		final long now = System.currentTimeMillis();
+		if (mBlock != null && (mBlock.mLength + maxEncodedLength(line) > BLOCK_SIZE
+				|| now - mBlock.mStartMillis >= FLUSH_INTERVAL_MILLIS)) {
+			handOff();
+		}
+		if (mBlock == null) {
+			mBlock = mFreeBlocks.poll();
+			if (mBlock == null) {
+				mDroppedLines.incrementAndGet(); // writer is behind and every block is waiting
+				return;
+			}
+			mBlock.mStartMillis = now;
+			mBlock.mLength = 0;
+		}
+		final int end = encode(line, mBlock.mBytes, mBlock.mLength);
+		if (end == -1) {
+			mDroppedLines.incrementAndGet(); // longer than a block, which is not an IRC line
+			return;
+		}
+		mBlock.mLength = end;
+		mRecordedLines++;
+	}
+
+	/**
+	 * Write the lines recorded so far, and stop the writer. Lines recorded afterwards are ignored.
+	 */
+	public void close() {
+		synchronized (this) {
+			if (mClosed) {
+				return;
+			}
+			mClosed = true;
+			if (mBlock != null) {
+				handOff();
+			}
+		}
+		mThread.interrupt();
+		try {
+			mThread.join();
+		} catch (InterruptedException exp) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * @return Number of lines recorded
+	 */
+	public synchronized long getRecordedLines() {
+		return mRecordedLines;
+	}
+
+	/**
+	 * @return Number of lines dropped because the writer was behind, or failed to write them
+	 */
+	public long getDroppedLines() {
+		return mDroppedLines.get();
+	}
+
+	/**
+	 * @return Number of segments written so far
+	 */
+	public int getSegmentCount() {
+		return mSegmentCount;
+	}
+
+	/**
+	 * Find the segments of a recording that may hold lines read within a time range, from its index
+	 * @param directory Directory of the segments
+	 * @param fromMillis Start of the range (inclusive)
+	 * @param toMillis End of the range (exclusive)
+	 * @return Segment files in the order they were recorded, to replay with ChatReplay
+	 * @throws IOException If the index could not be read
+	 */
+	public static List<Path> segments(Path directory, long fromMillis, long toMillis) throws IOException {
+		final List<Long> starts = new ArrayList<>();
+		final List<Path> files = new ArrayList<>();
+		try (BufferedReader reader = Files.newBufferedReader(directory.resolve(INDEX_FILE), StandardCharsets.UTF_8)) {
+			String entry;
+			while ((entry = reader.readLine()) != null) {
+				final int space = entry.indexOf(' ');
+				if (space > 0) {
+					starts.add(Long.parseLong(entry.substring(0, space)));
+					files.add(directory.resolve(entry.substring(space + 1)));
+				}
+			}
+		}
+		final List<Path> segments = new ArrayList<>();
+		for (int i = 0; i < files.size(); i++) {
+			// a segment holds the lines up to the start of the next one
+			final long end = (i + 1 < starts.size()) ? starts.get(i + 1) : Long.MAX_VALUE;
+			if (starts.get(i) < toMillis && end > fromMillis && Files.exists(files.get(i))) {
+				segments.add(files.get(i));
+			}
+		}
+		return segments;
+	}
+
+	/**
+	 * Hand the current block to the writer. Called on the recording thread
+	 */
+	private void handOff() {
+		try {
+			mFullBlocks.offer(mBlock);
+		} catch (InterruptedException exp) {
+			Thread.currentThread().interrupt(); // never waits, the queue has room for every block
+		}
+		mBlock = null;
+	}
+
+	/**
+	 * @return Most bytes a line and its line break take in UTF-8
+	 */
+	private static int maxEncodedLength(CharSequence line) {
+		return line.length() * 3 + 1;
+	}
+
+	/**
+	 * Encode a line and a line break as UTF-8, without allocating
+	 * @return Offset after the line break, or -1 if the line does not fit
+	 */
+	private static int encode(CharSequence line, byte[] bytes, int offset) {
+		if (offset + maxEncodedLength(line) > bytes.length) {
+			return -1;
+		}
+		int pos = offset;
+		final int length = line.length();
+		for (int i = 0; i < length; i++) {
+			final char c = line.charAt(i);
+			if (c < 0x80) {
+				bytes[pos++] = (byte) c;
+			} else if (c < 0x800) {
+				bytes[pos++] = (byte) (0xc0 | (c >> 6));
+				bytes[pos++] = (byte) (0x80 | (c & 0x3f));
+			} else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(line.charAt(i + 1))) {
+				final int code = Character.toCodePoint(c, line.charAt(++i));
+				bytes[pos++] = (byte) (0xf0 | (code >> 18));
+				bytes[pos++] = (byte) (0x80 | ((code >> 12) & 0x3f));
+				bytes[pos++] = (byte) (0x80 | ((code >> 6) & 0x3f));
+				bytes[pos++] = (byte) (0x80 | (code & 0x3f));
+			} else if (Character.isSurrogate(c)) {
+				bytes[pos++] = '?'; // unpaired surrogate
+			} else {
+				bytes[pos++] = (byte) (0xe0 | (c >> 12));
+				bytes[pos++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+				bytes[pos++] = (byte) (0x80 | (c & 0x3f));
+			}
+		}
+		bytes[pos++] = '\n';
+		return pos;
+	}
+
+	/**
+	 * Encoded lines, and the time the first was recorded
+	 */
+	private static class Block {
+		final byte[] mBytes = new byte[BLOCK_SIZE];
+		int mLength = 0;
+		long mStartMillis = 0;
+	}
+
+	/**
+	 * Gzips the blocks into segments, rotating segments by size and age
+	 */
+	private class SegmentWriter implements Runnable {
+
+		private OutputStream mSegment;
+		private long mSegmentStart = 0;
+		private long mSegmentBytes = 0;
+
+		@Override
+		public void run() {
+			final Block[] batch = new Block[mFullBlocks.capacity()];
+			try {
+				while (true) {
+					write(batch, mFullBlocks.takeBatch(batch, batch.length));
+				}
+			} catch (InterruptedException exp) {
+				// closing, write what is left
+				write(batch, mFullBlocks.drainTo(batch, batch.length));
+			} finally {
+				closeSegment();
+				System.out.println("Chat recorder over");
+			}
+		}
+
+		/**
+		 * Write a batch of blocks, and return them to the pool
+		 */
+		private void write(Block[] batch, int count) {
+			try {
+				for (int i = 0; i < count; i++) {
+					final Block block = batch[i];
+					if (mSegment == null || mSegmentBytes >= SEGMENT_BYTES
+							|| block.mStartMillis - mSegmentStart >= SEGMENT_MILLIS) {
+						openSegment(block.mStartMillis);
+					}
+					mSegment.write(block.mBytes, 0, block.mLength);
+					mSegmentBytes += block.mLength;
+				}
+				if (mSegment != null && count > 0) {
+					mSegment.flush(); // the blocks written are on disk as whole lines, without waiting for the gzip trailer
+				}
+			} catch (IOException exp) {
+				exp.printStackTrace();
+				for (int i = 0; i < count; i++) {
+					mDroppedLines.addAndGet(countLines(batch[i]));
+				}
+			}
+			for (int i = 0; i < count; i++) {
+				try {
+					mFreeBlocks.offer(batch[i]);
+				} catch (InterruptedException exp) {
+					Thread.currentThread().interrupt(); // never waits, the pool has room for every block
+				}
+				batch[i] = null;
+			}
+		}
+
+		/**
+		 * Finish the current segment, start a new one and add it to the index
+		 */
+		private void openSegment(long startMillis) throws IOException {
+			closeSegment();
+			final String name = SEGMENT_PREFIX + startMillis + SEGMENT_SUFFIX;
+			// file streams, unlike channels, are not closed by the interrupt that stops the writer
+			mSegment = new GZIPOutputStream(new FileOutputStream(mDirectory.resolve(name).toFile()), BLOCK_SIZE, true);
+			mSegmentStart = startMillis;
+			mSegmentBytes = 0;
+			mSegmentCount++;
+			try (Writer index = new OutputStreamWriter(new FileOutputStream(mDirectory.resolve(INDEX_FILE).toFile(), true),
+					StandardCharsets.UTF_8)) {
+				index.write(startMillis + " " + name + "\n");
+			}
+		}
+
+		/**
+		 * Finish the current segment, so that it is a complete gzip file
+		 */
+		private void closeSegment() {
+			if (mSegment != null) {
+				try {
+					mSegment.close();
+				} catch (IOException exp) {
+					exp.printStackTrace();
+				}
+				mSegment = null;
+			}
+		}
+
+		private int countLines(Block block) {
+			int lines = 0;
+			for (int i = 0; i < block.mLength; i++) {
+				if (block.mBytes[i] == '\n') {
+					lines++;
+				}
+			}
+			return lines;
+		}
+	}
+
+}
@@ -0,0 +1,334 @@
+package com.github.channingko_madden.twitch_emote_tracker;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class feeds recorded chat through the same processing pipeline as the live socket, as fast as it can be
+ * read, to backfill the emote counts of channels.
+ *
+ * The files are cut into splits (byte ranges of plain files, whole gzipped files) that are read in parallel. Each
+ * reading thread has its own ChatPipeline and its own copy of the channels, so nothing is shared while reading,
+ * and the counts of every copy are added to the given channels once all splits are done.
+ *
+ * Lines are counted at the time they were posted (their tmi-sent-ts tag), and the copies keep their counts by minute,
+ * so with an EmoteStore the history of the emotes (EmoteTimeSeries) is filled at the recorded times.
+ *
+ * Replies to chat commands in the recording are dropped. Queries from recorded "!emotecount" commands are counted.
+ *
+ * @author channing.ko-madden
+ *
+ */
+public class ChatReplay {
+
+	/** Smallest split of a plain file, so small files are not cut into many tiny splits */
+	public static final long MIN_SPLIT_SIZE = 1024 * 1024;
+
+	/** Channels receiving the backfilled counts */
+	private final List<ChannelTracker> mChannels;
+	/** Number of reading threads */
+	private final int mThreads;
+	/** Store whose history receives the counts by minute, or null */
+	private final EmoteStore mStore;
+	private final AtomicLong mLines = new AtomicLong();
+
+	/**
+	 * Constructor
+	 * @param channels Channels receiving the backfilled counts. Lines of other channels are ignored
+	 * @param threads Number of files or splits read at once
+	 */
+	public ChatReplay(List<ChannelTracker> channels, int threads) {
+		this(channels, threads, null);
+	}
+
+	/**
+	 * Constructor
+	 * @param channels Channels receiving the backfilled counts. Lines of other channels are ignored
+	 * @param threads Number of files or splits read at once
+	 * @param store Store saving the channels, whose history receives the counts at the times they were posted. May be null
+	 */
+	public ChatReplay(List<ChannelTracker> channels, int threads, EmoteStore store) {
+		if (threads < 1) {
+			throw new IllegalArgumentException("Invalid thread count: " + threads);
+		}
+		mChannels = channels;
+		mThreads = threads;
+		mStore = store;
+	}
+
+	/**
+	 * @return Number of lines read by the last replay
+	 */
+	public long getLineCount() {
+		return mLines.get();
+	}
+
+	/**
+	 * Read every file, and add the emote counts and queries found to the channels. Blocks until done. Nothing is added
+	 * unless every file was read, so a failed replay can be run again without counting any file twice.
+	 * @param files Recorded chat, gzipped if the name ends with .gz
+	 * @throws IOException If a file could not be read, or the counts could not be added to the store's history
+	 * @throws InterruptedException If interrupted while reading
+	 */
+	public void replay(List<Path> files) throws IOException, InterruptedException {
+		mLines.set(0);
+		final Queue<Split> splits = new ConcurrentLinkedQueue<>(split(files));
+		final List<Reader> readers = new ArrayList<>();
+		for (int i = 0; i < Math.min(mThreads, splits.size()); i++) {
+			final Reader reader = new Reader(splits);
+			reader.mThread = new Thread(reader, "ChatReplay-" + i);
+			reader.mThread.start();
+			readers.add(reader);
+		}
+		IOException failure = null;
+		boolean finished = true;
+		try {
+			for (Reader reader : readers) {
+				reader.mThread.join();
+				if (reader.mFailure != null) {
+					failure = reader.mFailure;
+				}
+				finished &= reader.mFinished;
+			}
+		} catch (InterruptedException exp) {
+			for (Reader reader : readers) {
+				reader.mThread.interrupt();
+			}
+			throw exp;
+		}
+		if (failure != null) {
+			throw failure;
+		}
+		if (!finished) {
+			throw new IOException("Replay stopped before every file was read, nothing was added");
+		}
+		for (Reader reader : readers) {
+			merge(reader.mCopies);
+		}
+	}
+
+	/**
+	 * Cut the files into splits. Plain files are cut evenly across the threads, gzipped files are one split each.
+	 */
+	private List<Split> split(List<Path> files) throws IOException {
+		long plainSize = 0;
+		for (Path file : files) {
+			if (!ChatLogReader.isGzip(file)) {
+				plainSize += Files.size(file);
+			}
+		}
+		final long splitSize = Math.max(MIN_SPLIT_SIZE, (plainSize + mThreads - 1) / mThreads);
+		final List<Split> splits = new ArrayList<>();
+		for (Path file : files) {
+			if (ChatLogReader.isGzip(file)) {
+				splits.add(new Split(file, 0, -1));
+			} else {
+				final long size = Files.size(file);
+				for (long start = 0; start < size; start += splitSize) {
+					splits.add(new Split(file, start, Math.min(size, start + splitSize)));
+				}
+			}
+		}
+		return splits;
+	}
+
+	/**
+	 * Add the counts, distinct chatters and emote pairs of a reader's copy of the channels to the channels, and the
+	 * counts by minute to the history of the store
+	 */
+	private void merge(List<ChannelTracker> copies) throws IOException {
+		for (int c = 0; c < mChannels.size(); c++) {
+			final List<EmoteValue> emotes = mChannels.get(c).getEmotes();
+			final List<EmoteValue> counted = copies.get(c).getEmotes();
+			for (int i = 0; i < emotes.size(); i++) {
+				final TimedEmote emote = (TimedEmote) counted.get(i);
+				if (mStore != null) {
+					for (Map.Entry<Long, long[]> minute : emote.mMinutes.entrySet()) {
+						mStore.addHistory(mChannels.get(c), i, minute.getKey(), minute.getValue()[0]);
+					}
+				}
+				if (emote.getCount() != 0 || emote.getQueries() != 0) {
+					emotes.get(i).restore(emote.getCount(), emote.getQueries());
+				}
+				emotes.get(i).getChatters().merge(emote.getChatters());
+			}
+			mChannels.get(c).getCooccurrence().merge(copies.get(c).getCooccurrence());
+		}
+	}
+
+	/**
+	 * A range of a file. End is -1 for a whole gzipped file
+	 */
+	private static class Split {
+		final Path mFile;
+		final long mStart;
+		final long mEnd;
+
+		Split(Path file, long start, long end) {
+			mFile = file;
+			mStart = start;
+			mEnd = end;
+		}
+	}
+
+	/**
+	 * Reads splits until there are none left, into its own pipeline and copy of the channels
+	 */
+	private class Reader implements Runnable {
+
+		private final Queue<Split> mSplits;
+		/** Copy of the channels holding the counts read, merged once every reader has finished */
+		private final List<ChannelTracker> mCopies = new ArrayList<>();
+		private Thread mThread;
+		private IOException mFailure;
+		/** True once every split taken was read and processed */
+		private boolean mFinished = false;
+
+		Reader(Queue<Split> splits) {
+			mSplits = splits;
+		}
+
+		@Override
+		public void run() {
+			for (ChannelTracker channel : mChannels) {
+				final List<EmoteValue> emotes = new ArrayList<>();
+				for (EmoteValue emote : channel.getEmotes()) {
+					emotes.add(new TimedEmote(emote.string()));
+				}
+				mCopies.add(new ChannelTracker(channel.getChannelName(), emotes, false)); // only counts are merged
+			}
+			final ChatPipeline pipeline = new ChatPipeline(mCopies, TwitchSocket.DEFAULT_QUEUE_CAPACITY,
+					MessageRingBuffer.OverflowPolicy.BLOCK, TwitchSocket.DEFAULT_BATCH_SIZE, 1, new DroppedReplySink());
+			final ChatLogReader reader = new ChatLogReader();
+			try {
+				Split split;
+				while ((split = mSplits.poll()) != null) {
+					if (split.mEnd == -1) {
+						reader.read(split.mFile, pipeline);
+					} else {
+						try (FileChannel file = FileChannel.open(split.mFile, StandardOpenOption.READ)) {
+							reader.read(file, split.mStart, split.mEnd, pipeline);
+						}
+					}
+				}
+				pipeline.awaitProcessed();
+				mFinished = true;
+			} catch (IOException exp) {
+				mFailure = exp;
+			} catch (InterruptedException exp) {
+				Thread.currentThread().interrupt();
+			} finally {
+				pipeline.close();
+				mLines.addAndGet(reader.getLineCount());
+			}
+		}
+	}
+
+	/**
+	 * Copy of an emote read by one reader, which also keeps its occurrences by minute, for the history
+	 */
+	private static class TimedEmote extends EmoteValue {
+		/** Occurrences by start time of their minute */
+		private final Map<Long, long[]> mMinutes = new HashMap<>();
+
+		TimedEmote(String twitchEmote) {
+			super(twitchEmote);
+		}
+
+		@Override
+		public void add(long occurrences, long timeMillis) {
+			super.add(occurrences, timeMillis);
+			final long minute = timeMillis - Math.floorMod(timeMillis, RateHistory.MINUTE_MILLIS);
+			mMinutes.computeIfAbsent(minute, k -> new long[1])[0] += occurrences;
+		}
+	}
+
+	/**
+	 * Drops replies to recorded chat commands
+	 */
+	private static class DroppedReplySink implements ChatPipeline.ReplySink {
+
+		@Override
+		public void sendLine(String line) {
+			// replaying, there is no chat to reply to
+		}
+	}
+
+	/**
+	 * Backfill the saved emote counts (EmoteStore) of channels from recorded chat.
+	 *
+	 * Arguments are key=value options followed by the files to read, or directories recorded by ChatRecorder, ex.
+	 * channels=ninja,liihs emotes=Kappa,LUL,PogChamp threads=8 chat-1.log.gz chat-2.log.gz
+	 * <ul>
+	 * <li>channels: channels to backfill, comma separated</li>
+	 * <li>emotes: emotes to count, comma separated</li>
+	 * <li>threads: number of files or splits read at once (default the number of processors)</li>
+	 * <li>store: directory of the saved counts (default the EmoteStore default directory)</li>
+	 * </ul>
+	 * The counts found are added to the saved counts, so replaying the same recording twice counts it twice. Nothing
+	 * is added if any file cannot be read.
+	 */
+	public static void main(String[] args) throws IOException, InterruptedException {
+		String[] channelNames = new String[0];
+		String[] emoteTexts = new String[0];
+		int threads = Runtime.getRuntime().availableProcessors();
+		Path store = EmoteStore.defaultDirectory();
+		final List<Path> files = new ArrayList<>();
+		for (String arg : args) {
+			if (arg.startsWith("channels=")) {
+				channelNames = arg.substring("channels=".length()).split(",");
+			} else if (arg.startsWith("emotes=")) {
+				emoteTexts = arg.substring("emotes=".length()).split(",");
+			} else if (arg.startsWith("threads=")) {
+				threads = Integer.parseInt(arg.substring("threads=".length()));
+			} else if (arg.startsWith("store=")) {
+				store = Paths.get(arg.substring("store=".length()));
+			} else if (Files.isDirectory(Paths.get(arg))) {
+				files.addAll(ChatRecorder.segments(Paths.get(arg), Long.MIN_VALUE, Long.MAX_VALUE)); // a recording
+			} else {
+				files.add(Paths.get(arg));
+			}
+		}
+		if (channelNames.length == 0 || emoteTexts.length == 0 || files.isEmpty()) {
+			System.out.println("Usage: ChatReplay channels=a,b emotes=Kappa,LUL [threads=N] [store=dir] file...");
+			return;
+		}
+
+		final List<ChannelTracker> channels = new ArrayList<>();
+		for (String channelName : channelNames) {
+			final List<EmoteValue> emotes = new ArrayList<>();
+			for (String emote : emoteTexts) {
+				emotes.add(new EmoteValue(emote));
+			}
+			channels.add(new ChannelTracker(channelName, emotes, false)); // trending words and chatter counts are not replayed
+		}
+		final EmoteStore emoteStore = new EmoteStore(store, channels);
+		try {
+			final ChatReplay replay = new ChatReplay(channels, threads, emoteStore);
+			final long start = System.nanoTime();
+			replay.replay(files);
+			final double seconds = (System.nanoTime() - start) / 1e9;
+			System.out.printf("Replayed %d lines in %.2f s (%.0f lines/s)%n", replay.getLineCount(), seconds,
+					replay.getLineCount() / seconds);
+			for (ChannelTracker channel : channels) {
+				for (EmoteValue emote : channel.getEmotes()) {
+					System.out.println(channel.getChannelName() + " " + emote.string() + " " + emote.getCount());
+				}
+			}
+		} finally {
+			emoteStore.close();
+		}
+	}
+
+}
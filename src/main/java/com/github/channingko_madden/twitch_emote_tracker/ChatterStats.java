@@ -0,0 +1,415 @@
+package com.github.channingko_madden.twitch_emote_tracker;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * This class counts the emotes posted by each chatter of a channel (ex. who posts KEKW the most), in bounded memory.
+ *
+ * Nicks are interned into dense user ids: the characters of every nick live in one char array, found through a
+ * chained hash table of int arrays, so counting an emote never creates a String or boxes a number. The count of each
+ * user and emote pair is an entry of a second chained hash table keyed by (user id, emote index), and the entries of
+ * a user are also linked together so they can be dropped with the user.
+ *
+ * Users are kept in least recently posted order. When every user id or every entry is in use, the user that posted
+ * an emote the longest time ago is evicted along with its counts, so memory stays fixed however many chatters a
+ * channel has, while active chatters keep their counts.
+ *
+ * Emotes are added by the thread processing the channel and read from any thread, one lock per message.
+ *
+ * @author channing.ko-madden
+ *
+ */
+public class ChatterStats {
+
+	/** Default number of users kept */
+	public static final int DEFAULT_MAX_USERS = 65536;
+	/** Default number of user and emote pairs kept, per user */
+	public static final int DEFAULT_ENTRIES_PER_USER = 4;
+	/** Longest nick, as allowed by Twitch */
+	public static final int MAX_NICK_LENGTH = 25;
+
+	private static final int NONE = -1;
+
+	/**
+	 * This class is a chatter and the number of times they posted an emote
+	 */
+	public static class Chatter {
+		private final String mNick;
+		private final long mCount;
+
+		Chatter(String nick, long count) {
+			mNick = nick;
+			mCount = count;
+		}
+
+		/**
+		 * @return Nick of the chatter
+		 */
+		public String getNick() {
+			return mNick;
+		}
+
+		/**
+		 * @return Number of times the chatter posted the emote, since the chatter was last evicted
+		 */
+		public long getCount() {
+			return mCount;
+		}
+	}
+
+	// users, by user id
+	/** Characters of the nick of each user, MAX_NICK_LENGTH per user */
+	private final char[] mNicks;
+	private final int[] mNickLengths;
+	private final int[] mNickHashes;
+	/** Next user in the same bucket of mUserBuckets */
+	private final int[] mNextUserInBucket;
+	/** First user of each bucket of the nick hash table */
+	private final int[] mUserBuckets;
+	/** Least recently posted order. mNewer of the newest user and mOlder of the oldest user are NONE */
+	private final int[] mNewer;
+	private final int[] mOlder;
+	/** First entry of each user */
+	private final int[] mFirstEntry;
+	private int mNewest = NONE;
+	private int mOldest = NONE;
+	private int mUserCount = 0;
+	/** Next user id never used */
+	private int mNextUser = 0;
+	/** Evicted user ids, linked through mNextUserInBucket */
+	private int mFreeUser = NONE;
+
+	// entries, by entry id
+	private final int[] mEntryUsers;
+	private final int[] mEntryEmotes;
+	private final long[] mEntryCounts;
+	/** Next entry in the same bucket of mEntryBuckets, or the next free entry */
+	private final int[] mNextEntryInBucket;
+	/** Next entry of the same user */
+	private final int[] mNextEntryOfUser;
+	/** First entry of each bucket of the (user, emote) hash table */
+	private final int[] mEntryBuckets;
+	private int mNextEntry = 0;
+	private int mFreeEntry = NONE;
+
+	private long mEvicted = 0;
+
+	/**
+	 * Constructor, with the default limits
+	 */
+	public ChatterStats() {
+		this(DEFAULT_MAX_USERS, DEFAULT_MAX_USERS * DEFAULT_ENTRIES_PER_USER);
+	}
+
+	/**
+	 * Constructor
+	 * @param maxUsers Number of users kept
+	 * @param maxEntries Number of user and emote pairs kept
+	 */
+	public ChatterStats(int maxUsers, int maxEntries) {
+		if (maxUsers < 1 || maxEntries < 1) {
+			throw new IllegalArgumentException("Invalid limits: " + maxUsers + " users, " + maxEntries + " entries");
+		}
+		mNicks = new char[maxUsers * MAX_NICK_LENGTH];
+		mNickLengths = new int[maxUsers];
+		mNickHashes = new int[maxUsers];
+		mNextUserInBucket = new int[maxUsers];
+		mUserBuckets = new int[Integer.highestOneBit(maxUsers * 2 - 1)];
+		Arrays.fill(mUserBuckets, NONE);
+		mNewer = new int[maxUsers];
+		mOlder = new int[maxUsers];
+		mFirstEntry = new int[maxUsers];
+
+		mEntryUsers = new int[maxEntries];
+		mEntryEmotes = new int[maxEntries];
+		mEntryCounts = new long[maxEntries];
+		mNextEntryInBucket = new int[maxEntries];
+		mNextEntryOfUser = new int[maxEntries];
+		mEntryBuckets = new int[Integer.highestOneBit(maxEntries * 2 - 1)];
+		Arrays.fill(mEntryBuckets, NONE);
+	}
+
+	/**
+	 * Add the emotes found in a message by the last match of a matcher to the counts of the chatter who posted it
+	 * @param line Line holding the nick
+	 * @param nickStart Start of the nick (inclusive)
+	 * @param nickEnd End of the nick (exclusive)
+	 * @param matcher Matcher that matched the message
+	 * @param matched Number of distinct emotes found by the last match
+	 */
+	public synchronized void add(CharSequence line, int nickStart, int nickEnd, EmoteMatcher matcher, int matched) {
+		if (matched == 0 || nickEnd <= nickStart || nickEnd - nickStart > MAX_NICK_LENGTH) {
+			return;
+		}
+		final int user = intern(line, nickStart, nickEnd);
+		for (int i = 0; i < matched; i++) {
+			addCount(user, matcher.getMatchedIndex(i), matcher.getMatchedCount(i));
+		}
+	}
+
+	/**
+	 * Return the chatters who posted an emote the most
+	 * @param emote Emote index, as in the channel's emote list
+	 * @param n Number of chatters
+	 * @return Up to n chatters, most posts first
+	 */
+	public synchronized List<Chatter> getTop(int emote, int n) {
+		final List<Chatter> chatters = new ArrayList<>();
+		for (int entry = 0; entry < mNextEntry; entry++) {
+			if (mEntryEmotes[entry] == emote && mEntryUsers[entry] != NONE) {
+				final int user = mEntryUsers[entry];
+				chatters.add(new Chatter(new String(mNicks, user * MAX_NICK_LENGTH, mNickLengths[user]), mEntryCounts[entry]));
+			}
+		}
+		chatters.sort(new ByCount());
+		return chatters.subList(0, Math.min(n, chatters.size()));
+	}
+
+	/**
+	 * @param nick Nick of a chatter
+	 * @param emote Emote index, as in the channel's emote list
+	 * @return Number of times the chatter posted the emote, 0 if unknown or evicted
+	 */
+	public synchronized long getCount(String nick, int emote) {
+		final int user = findUser(nick, 0, nick.length(), hash(nick, 0, nick.length()));
+		if (user == NONE) {
+			return 0;
+		}
+		final int entry = findEntry(user, emote);
+		return entry == NONE ? 0 : mEntryCounts[entry];
+	}
+
+	/**
+	 * @return Number of chatters kept
+	 */
+	public synchronized int getUserCount() {
+		return mUserCount;
+	}
+
+	/**
+	 * @return Number of chatters evicted to make room for others
+	 */
+	public synchronized long getEvictedCount() {
+		return mEvicted;
+	}
+
+	/**
+	 * Find the user id of a nick, adding the user if new, and mark the user as the most recently posted
+	 */
+	private int intern(CharSequence line, int start, int end) {
+		final int hash = hash(line, start, end);
+		int user = findUser(line, start, end, hash);
+		if (user == NONE) {
+			user = allocateUser();
+			final int offset = user * MAX_NICK_LENGTH;
+			for (int i = start; i < end; i++) {
+				mNicks[offset + i - start] = line.charAt(i);
+			}
+			mNickLengths[user] = end - start;
+			mNickHashes[user] = hash;
+			mFirstEntry[user] = NONE;
+			final int bucket = hash & (mUserBuckets.length - 1);
+			mNextUserInBucket[user] = mUserBuckets[bucket];
+			mUserBuckets[bucket] = user;
+			mUserCount++;
+		} else {
+			unlinkRecent(user);
+		}
+		// newest user
+		mOlder[user] = mNewest;
+		mNewer[user] = NONE;
+		if (mNewest != NONE) {
+			mNewer[mNewest] = user;
+		}
+		mNewest = user;
+		if (mOldest == NONE) {
+			mOldest = user;
+		}
+		return user;
+	}
+
+	private int findUser(CharSequence nick, int start, int end, int hash) {
+		int user = mUserBuckets[hash & (mUserBuckets.length - 1)];
+		while (user != NONE) {
+			if (mNickHashes[user] == hash && nickEquals(user, nick, start, end)) {
+				return user;
+			}
+			user = mNextUserInBucket[user];
+		}
+		return NONE;
+	}
+
+	private boolean nickEquals(int user, CharSequence nick, int start, int end) {
+		if (mNickLengths[user] != end - start) {
+			return false;
+		}
+		final int offset = user * MAX_NICK_LENGTH;
+		for (int i = start; i < end; i++) {
+			if (mNicks[offset + i - start] != nick.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return A free user id, evicting the least recently posted user if there is none
+	 */
+	private int allocateUser() {
+		if (mFreeUser != NONE) {
+			final int user = mFreeUser;
+			mFreeUser = mNextUserInBucket[user];
+			return user;
+		}
+		if (mNextUser < mNickLengths.length) {
+			return mNextUser++;
+		}
+		evictOldest();
+		return allocateUser();
+	}
+
+	/**
+	 * Add occurrences to the count of a user and emote pair, adding the pair if new
+	 */
+	private void addCount(int user, int emote, long occurrences) {
+		int entry = findEntry(user, emote);
+		if (entry == NONE) {
+			entry = allocateEntry(user);
+			if (entry == NONE) {
+				return; // the user was evicted to make room, which only happens when it is the only user
+			}
+			mEntryUsers[entry] = user;
+			mEntryEmotes[entry] = emote;
+			mEntryCounts[entry] = 0;
+			final int bucket = entryHash(user, emote) & (mEntryBuckets.length - 1);
+			mNextEntryInBucket[entry] = mEntryBuckets[bucket];
+			mEntryBuckets[bucket] = entry;
+			mNextEntryOfUser[entry] = mFirstEntry[user];
+			mFirstEntry[user] = entry;
+		}
+		mEntryCounts[entry] += occurrences;
+	}
+
+	private int findEntry(int user, int emote) {
+		int entry = mEntryBuckets[entryHash(user, emote) & (mEntryBuckets.length - 1)];
+		while (entry != NONE) {
+			if (mEntryUsers[entry] == user && mEntryEmotes[entry] == emote) {
+				return entry;
+			}
+			entry = mNextEntryInBucket[entry];
+		}
+		return NONE;
+	}
+
+	/**
+	 * @param user User the entry is for, which is not evicted to make room
+	 * @return A free entry, evicting the least recently posted users if there is none, or NONE if user is the only user
+	 */
+	private int allocateEntry(int user) {
+		while (true) {
+			if (mFreeEntry != NONE) {
+				final int entry = mFreeEntry;
+				mFreeEntry = mNextEntryInBucket[entry];
+				return entry;
+			}
+			if (mNextEntry < mEntryUsers.length) {
+				return mNextEntry++;
+			}
+			if (mOldest == user) {
+				return NONE;
+			}
+			evictOldest();
+		}
+	}
+
+	/**
+	 * Drop the least recently posted user and its counts
+	 */
+	private void evictOldest() {
+		final int user = mOldest;
+		unlinkRecent(user);
+		// remove the nick from its bucket
+		final int userBucket = mNickHashes[user] & (mUserBuckets.length - 1);
+		if (mUserBuckets[userBucket] == user) {
+			mUserBuckets[userBucket] = mNextUserInBucket[user];
+		} else {
+			int previous = mUserBuckets[userBucket];
+			while (mNextUserInBucket[previous] != user) {
+				previous = mNextUserInBucket[previous];
+			}
+			mNextUserInBucket[previous] = mNextUserInBucket[user];
+		}
+		// free the entries of the user
+		int entry = mFirstEntry[user];
+		while (entry != NONE) {
+			final int next = mNextEntryOfUser[entry];
+			removeEntry(entry);
+			entry = next;
+		}
+		mFirstEntry[user] = NONE;
+		mNextUserInBucket[user] = mFreeUser;
+		mFreeUser = user;
+		mUserCount--;
+		mEvicted++;
+	}
+
+	private void removeEntry(int entry) {
+		final int bucket = entryHash(mEntryUsers[entry], mEntryEmotes[entry]) & (mEntryBuckets.length - 1);
+		if (mEntryBuckets[bucket] == entry) {
+			mEntryBuckets[bucket] = mNextEntryInBucket[entry];
+		} else {
+			int previous = mEntryBuckets[bucket];
+			while (mNextEntryInBucket[previous] != entry) {
+				previous = mNextEntryInBucket[previous];
+			}
+			mNextEntryInBucket[previous] = mNextEntryInBucket[entry];
+		}
+		mEntryUsers[entry] = NONE;
+		mNextEntryInBucket[entry] = mFreeEntry;
+		mFreeEntry = entry;
+	}
+
+	/**
+	 * Take a user out of the least recently posted order
+	 */
+	private void unlinkRecent(int user) {
+		if (mNewer[user] != NONE) {
+			mOlder[mNewer[user]] = mOlder[user];
+		} else {
+			mNewest = mOlder[user];
+		}
+		if (mOlder[user] != NONE) {
+			mNewer[mOlder[user]] = mNewer[user];
+		} else {
+			mOldest = mNewer[user];
+		}
+	}
+
+	private static int hash(CharSequence text, int start, int end) {
+		int hash = 0;
+		for (int i = start; i < end; i++) {
+			hash = 31 * hash + text.charAt(i);
+		}
+		return hash ^ (hash >>> 16);
+	}
+
+	private static int entryHash(int user, int emote) {
+		final int hash = user * 0x9e3779b9 + emote;
+		return hash ^ (hash >>> 16);
+	}
+
+	/**
+	 * Orders chatters from the most to the fewest posts
+	 */
+	private static class ByCount implements Comparator<Chatter> {
+
+		@Override
+		public int compare(Chatter a, Chatter b) {
+			return Long.compare(b.mCount, a.mCount);
+		}
+	}
+
+}
@@ -0,0 +1,249 @@
+package com.github.channingko_madden.twitch_emote_tracker;
+
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class finds the chat command at the start of a chat message, and runs it on its own thread.
+ *
+ * Commands are kept in a trie keyed by name, so finding the command of a message takes one step per character of
+ * the first word, however many commands are registered, and messages that are not commands are rejected at their
+ * first character. The trie is copy on write: registering a command copies the nodes along its name and publishes a
+ * new root, so the workers look commands up without locking, and never wait for each other. Found commands are queued to a single thread executor, in order, so commands never block the
+ * workers counting emotes. When too many commands are waiting, new ones are dropped and counted.
+ *
+ * @author channing.ko-madden
+ *
+ */
+public class CommandDispatcher {
+
+	/** Default number of commands that can wait to be run. More are dropped */
+	public static final int DEFAULT_QUEUE_CAPACITY = 256;
+
+	/** Root of the trie of command names. Nodes are never changed once published, only replaced */
+	private volatile Node mRoot = new Node(new char[0], new Node[0], null);
+	private final ThreadPoolExecutor mExecutor;
+	private final ChatCommand.Reply mReply;
+	private final AtomicLong mSubmitted = new AtomicLong();
+	private final AtomicLong mFinished = new AtomicLong();
+	private final AtomicLong mDropped = new AtomicLong();
+
+	/**
+	 * Constructor. Starts the command thread
+	 * @param reply Where the commands reply
+	 */
+	public CommandDispatcher(ChatCommand.Reply reply) {
+		this(reply, DEFAULT_QUEUE_CAPACITY);
+	}
+
+	/**
+	 * Constructor. Starts the command thread
+	 * @param reply Where the commands reply
+	 * @param queueCapacity Number of commands that can wait to be run. More are dropped
+	 */
+	public CommandDispatcher(ChatCommand.Reply reply, int queueCapacity) {
+		mReply = reply;
+		mExecutor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(queueCapacity),
+				new CommandThreadFactory(), new DropPolicy());
+	}
+
+	/**
+	 * Create a dispatcher with the built in commands: !emotecount, !top, !rate, !since and !who
+	 * @param reply Where the commands reply
+	 * @return Dispatcher, to register more commands with
+	 */
+	public static CommandDispatcher withDefaultCommands(ChatCommand.Reply reply) {
+		final CommandDispatcher dispatcher = new CommandDispatcher(reply);
+		dispatcher.register(new EmoteCountCommand());
+		dispatcher.register(new TopCommand());
+		dispatcher.register(new RateCommand());
+		dispatcher.register(new SinceCommand());
+		dispatcher.register(new WhoCommand());
+		return dispatcher;
+	}
+
+	/**
+	 * Add a command, replacing a registered command with the same name. May be called while commands are dispatched
+	 * @param command Command to add
+	 */
+	public synchronized void register(ChatCommand command) {
+		final String name = command.getName();
+		if (name.isEmpty()) {
+			throw new IllegalArgumentException("Command has no name");
+		}
+		mRoot = with(mRoot, name, 0, command);
+	}
+
+	/**
+	 * Find the command whose name is the first word of a message. Never blocks
+	 * @param text Text holding the message
+	 * @param start Start of the message (inclusive)
+	 * @param end End of the message (exclusive)
+	 * @return The command, or null if the message is not a registered command
+	 */
+	public ChatCommand find(CharSequence text, int start, int end) {
+		Node node = mRoot;
+		int i = start;
+		while (i < end && !EmoteMatcher.isWhitespace(text.charAt(i))) {
+			node = node.child(text.charAt(i));
+			if (node == null) {
+				return null;
+			}
+			i++;
+		}
+		return node.mCommand;
+	}
+
+	/**
+	 * Copy a node and the nodes below it along a name, with the command at the end of the name
+	 * @param node Node to copy, or null if there is none yet
+	 * @param name Name of the command
+	 * @param depth Position of node along the name
+	 * @param command Command to put at the end of the name
+	 * @return The copy
+	 */
+	private static Node with(Node node, String name, int depth, ChatCommand command) {
+		if (node == null) {
+			node = new Node(new char[0], new Node[0], null);
+		}
+		if (depth == name.length()) {
+			return new Node(node.mKeys, node.mChildren, command);
+		}
+		final char c = name.charAt(depth);
+		int index = Arrays.binarySearch(node.mKeys, c);
+		final char[] keys;
+		final Node[] children;
+		if (index >= 0) {
+			keys = node.mKeys;
+			children = node.mChildren.clone();
+		} else {
+			index = -index - 1;
+			keys = new char[node.mKeys.length + 1];
+			children = new Node[node.mChildren.length + 1];
+			System.arraycopy(node.mKeys, 0, keys, 0, index);
+			System.arraycopy(node.mChildren, 0, children, 0, index);
+			keys[index] = c;
+			System.arraycopy(node.mKeys, index, keys, index + 1, node.mKeys.length - index);
+			System.arraycopy(node.mChildren, index, children, index + 1, node.mChildren.length - index);
+		}
+		children[index] = with(children[index], name, depth + 1, command);
+		return new Node(keys, children, node.mCommand);
+	}
+
+	/**
+	 * Queue a command to be run on the command thread. Never blocks
+	 * @param command Command found in the message
+	 * @param channel Channel the command was posted in
+	 * @param argument Text after the command name, trimmed
+	 */
+	public void execute(ChatCommand command, ChannelTracker channel, String argument) {
+		System.out.println(command.getName() + " command received");
+		mSubmitted.incrementAndGet();
+		mExecutor.execute(new CommandTask(command, channel, argument));
+	}
+
+	/**
+	 * Wait until every command queued so far has been run or dropped
+	 * @throws InterruptedException If interrupted while waiting
+	 */
+	public void awaitIdle() throws InterruptedException {
+		while (mFinished.get() + mDropped.get() < mSubmitted.get() && !mExecutor.isShutdown()) {
+			Thread.sleep(1);
+		}
+	}
+
+	/**
+	 * Stop the command thread. Waiting commands are not run
+	 */
+	public void close() {
+		mExecutor.shutdownNow();
+	}
+
+	/**
+	 * @return Number of commands dropped because too many were waiting to be run
+	 */
+	public long getDroppedCount() {
+		return mDropped.get();
+	}
+
+	/**
+	 * Node of the trie of command names. Children are kept in parallel arrays sorted by character, since a node
+	 * has only a few. Never changed once built
+	 */
+	private static class Node {
+		private final char[] mKeys;
+		private final Node[] mChildren;
+		private final ChatCommand mCommand;
+
+		Node(char[] keys, Node[] children, ChatCommand command) {
+			mKeys = keys;
+			mChildren = children;
+			mCommand = command;
+		}
+
+		/**
+		 * @param c Next character of the name
+		 * @return Child for the character, or null if missing
+		 */
+		Node child(char c) {
+			final int index = Arrays.binarySearch(mKeys, c);
+			return index >= 0 ? mChildren[index] : null;
+		}
+	}
+
+	/**
+	 * Runs one command posted in chat
+	 */
+	private class CommandTask implements Runnable {
+		private final ChatCommand mCommand;
+		private final ChannelTracker mChannel;
+		private final String mArgument;
+
+		CommandTask(ChatCommand command, ChannelTracker channel, String argument) {
+			mCommand = command;
+			mChannel = channel;
+			mArgument = argument;
+		}
+
+		@Override
+		public void run() {
+			try {
+				mCommand.execute(mChannel, mArgument, mReply);
+			} catch (RuntimeException exp) {
+				exp.printStackTrace(); // a broken command must not stop the others
+			} finally {
+				mFinished.incrementAndGet();
+			}
+		}
+	}
+
+	/**
+	 * Names the command thread
+	 */
+	private static class CommandThreadFactory implements ThreadFactory {
+
+		@Override
+		public Thread newThread(Runnable runnable) {
+			final Thread thread = new Thread(runnable, "CommandDispatcher");
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+
+	/**
+	 * Counts the commands dropped because the queue is full, instead of blocking the worker that found them
+	 */
+	private class DropPolicy implements RejectedExecutionHandler {
+
+		@Override
+		public void rejectedExecution(Runnable runnable, ThreadPoolExecutor executor) {
+			mDropped.incrementAndGet();
+		}
+	}
+
+}
@@ -0,0 +1,181 @@
+package com.github.channingko_madden.twitch_emote_tracker;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * This class counts how many messages posted each pair of a channel's tracked emotes together (ex. KEKW and OMEGALUL).
+ *
+ * The counts are a triangular matrix over the emote indices without the diagonal, kept row after row in one long
+ * array: the pair (a, b) with a < b is at rowStart(a) + b - a - 1. Adding a message walks the pairs of the emotes the
+ * matcher found in it and allocates nothing.
+ *
+ * Messages are added by the thread processing the channel and read from any thread, one lock per message that has at
+ * least two distinct emotes.
+ *
+ * @author channing.ko-madden
+ *
+ */
+public class EmoteCooccurrence {
+
+	/**
+	 * This class is a pair of emotes and the number of messages that posted both
+	 */
+	public static class Pair {
+		private final EmoteValue mFirst;
+		private final EmoteValue mSecond;
+		private final long mCount;
+
+		Pair(EmoteValue first, EmoteValue second, long count) {
+			mFirst = first;
+			mSecond = second;
+			mCount = count;
+		}
+
+		/**
+		 * @return Emote of the pair with the lower index
+		 */
+		public EmoteValue getFirst() {
+			return mFirst;
+		}
+
+		/**
+		 * @return Emote of the pair with the higher index
+		 */
+		public EmoteValue getSecond() {
+			return mSecond;
+		}
+
+		/**
+		 * @return Number of messages that posted both emotes
+		 */
+		public long getCount() {
+			return mCount;
+		}
+	}
+
+	private final List<EmoteValue> mEmotes;
+	private final int mSize;
+	/** Count of each pair, row after row */
+	private final long[] mCounts;
+
+	/**
+	 * Constructor
+	 * @param emotes Tracked emotes, in the order of their index
+	 */
+	public EmoteCooccurrence(List<EmoteValue> emotes) {
+		mEmotes = emotes;
+		mSize = emotes.size();
+		mCounts = new long[(int) ((long) mSize * (mSize - 1) / 2)];
+	}
+
+	/**
+	 * Count the pairs of emotes found in a message by the last match of a matcher
+	 * @param matcher Matcher that matched the message, over the same emotes
+	 * @param matched Number of distinct emotes found by the last match
+	 */
+	public void add(EmoteMatcher matcher, int matched) {
+		if (matched < 2) {
+			return;
+		}
+		synchronized (this) {
+			for (int i = 0; i < matched; i++) {
+				final int a = matcher.getMatchedIndex(i);
+				for (int j = i + 1; j < matched; j++) {
+					mCounts[pair(a, matcher.getMatchedIndex(j))]++;
+				}
+			}
+		}
+	}
+
+	/**
+	 * @param a Index of an emote
+	 * @param b Index of another emote
+	 * @return Number of messages that posted both emotes, 0 if a and b are the same emote
+	 */
+	public synchronized long getCount(int a, int b) {
+		return a == b ? 0 : mCounts[pair(a, b)];
+	}
+
+	/**
+	 * Return the pairs of emotes posted together the most
+	 * @param n Number of pairs
+	 * @return Up to n pairs that were posted together at least once, most messages first
+	 */
+	public synchronized List<Pair> getTop(int n) {
+		// insertion sort into the n best, since n is small
+		final int size = Math.max(0, Math.min(n, mCounts.length));
+		final int[] bestFirst = new int[size];
+		final int[] bestSecond = new int[size];
+		final long[] bestCounts = new long[size];
+		int found = 0;
+		int p = 0;
+		for (int a = 0; a < mSize; a++) {
+			for (int b = a + 1; b < mSize; b++, p++) {
+				final long count = mCounts[p];
+				if (count == 0 || (found == size && count <= bestCounts[found - 1])) {
+					continue;
+				}
+				int i = found < size ? found++ : found - 1;
+				while (i > 0 && bestCounts[i - 1] < count) {
+					bestFirst[i] = bestFirst[i - 1];
+					bestSecond[i] = bestSecond[i - 1];
+					bestCounts[i] = bestCounts[i - 1];
+					i--;
+				}
+				bestFirst[i] = a;
+				bestSecond[i] = b;
+				bestCounts[i] = count;
+			}
+		}
+		final List<Pair> pairs = new ArrayList<>(found);
+		for (int i = 0; i < found; i++) {
+			pairs.add(new Pair(mEmotes.get(bestFirst[i]), mEmotes.get(bestSecond[i]), bestCounts[i]));
+		}
+		return pairs;
+	}
+
+	/**
+	 * Add the counts of another matrix over the same emotes to this one (ex. one counted from recorded chat)
+	 * @param other Matrix to add, not changed
+	 */
+	public void merge(EmoteCooccurrence other) {
+		final long[] counts;
+		synchronized (other) { // never hold both locks
+			counts = other.mCounts.clone();
+		}
+		synchronized (this) {
+			for (int p = 0; p < mCounts.length; p++) {
+				mCounts[p] += counts[p];
+			}
+		}
+	}
+
+	/**
+	 * Forget every count
+	 */
+	public synchronized void clear() {
+		Arrays.fill(mCounts, 0);
+	}
+
+	/**
+	 * @return Position of the pair of two different emotes in mCounts
+	 */
+	private int pair(int a, int b) {
+		if (a > b) {
+			final int swap = a;
+			a = b;
+			b = swap;
+		}
+		return rowStart(a) + b - a - 1;
+	}
+
+	/**
+	 * @return Position of the first pair of row a, (a, a + 1), in mCounts
+	 */
+	private int rowStart(int a) {
+		return (int) ((long) a * (2 * mSize - a - 1) / 2);
+	}
+
+}
@@ -0,0 +1,33 @@
+package com.github.channingko_madden.twitch_emote_tracker;
+
+/**
+ * This class is the "!emotecount [emote]" command, which replies with the running count of a tracked emote.
+ *
+ * Every query is counted, but an emote is answered at most once per reply interval (ReplyCache).
+ *
+ * @author channing.ko-madden
+ *
+ */
+public class EmoteCountCommand implements ChatCommand {
+
+	@Override
+	public String getName() {
+		return "!emotecount";
+	}
+
+	@Override
+	public void execute(ChannelTracker channel, String argument, Reply reply) {
+		final int index = channel.indexOfEmote(argument);
+		if (index == -1) {
+			reply.send(channel, channel.createUniqueMessage(":( " + argument + " is not being tracked", ":("), argument);
+			return;
+		}
+		final EmoteValue emote = channel.getEmotes().get(index);
+		emote.incrementQueries(); // every query counts, even when the reply is collapsed
+		final String count = channel.getReplyCache().reply(index, emote, System.currentTimeMillis());
+		if (count != null) {
+			reply.send(channel, channel.createUniqueMessage(count, "... ;p"), emote.string());
+		}
+	}
+
+}
@@ -9,12 +9,14 @@ public interface EmoteEvent {
 	 * This enum denotes the type of event that has occurred
 	 * Count - Emote count has changed
 	 * Query - The number of emote queries has changed
+	 * Spike - The emote is suddenly posted far more often than usual (see SpikeDetector)
 	 * @author channing.ko-madden
 	 *
 	 */
 	public enum Type {
 		Count,
-		Query
+		Query,
+		Spike
 	}
 	
 	/**
@@ -35,6 +37,36 @@ public interface EmoteEvent {
 	 */
 	long getEmoteCount();
 	
+	/**
+	 * Return the emote count within the last minute
+	 * @return Emote count within the last minute
+	 */
+	long getEmoteCountLastMinute();
+	
+	/**
+	 * Return the emote count within the last hour
+	 * @return Emote count within the last hour
+	 */
+	long getEmoteCountLastHour();
+	
+	/**
+	 * Return the estimated number of distinct chatters who posted the emote
+	 * @return Distinct chatters
+	 */
+	long getEmoteUniqueChatters();
+	
+	/**
+	 * Return the estimated number of distinct chatters who posted the emote within the last hour
+	 * @return Distinct chatters within the last hour
+	 */
+	long getEmoteUniqueChattersLastHour();
+	
+	/**
+	 * Return how far the latest spike was over the usual per second count
+	 * @return Number of standard deviations over the average per second count
+	 */
+	double getEmoteSpikeScore();
+	
 	/**
 	 * Return the number of emote queries
 	 * @return Emote queries
@@ -0,0 +1,379 @@
+package com.github.channingko_madden.twitch_emote_tracker;
+
+import java.util.List;
+
+/**
+ * This class counts the occurrences of every tracked emote within a message in a single pass.
+ *
+ * The message is split into whitespace delimited tokens once, and each token is looked up in a TextIndex
+ * of the tracked emotes. An emote is counted when a token is exactly the emote text, which is the
+ * same whole-word rule used by EmoteValue.search, but the cost no longer grows with the number of emotes.
+ *
+ * When Twitch provides the emotes tag (IRCv3 tags), the native Twitch emotes are counted straight from the
+ * character ranges in the tag. Emotes seen in a tag are remembered as native, and the token scan then only
+ * looks for the remaining (third-party, ex. BetterTTV) emotes, and is skipped once every tracked emote is native.
+ *
+ * The matcher keeps the result of the last match as scratch state, so an instance must only be used
+ * by one thread at a time.
+ *
+ * @author channing.ko-madden
+ *
+ */
+public class EmoteMatcher {
+
+	/** The tracked emotes, in the order they were given */
+	private final EmoteValue[] mEmotes;
+	/** Index of each emote's text */
+	private final TextIndex mEmoteIndex;
+	/** Occurrences of each emote found by the last match, by emote index */
+	private final int[] mHits;
+	/** Indices of the emotes found by the last match, in order of first occurrence */
+	private final int[] mMatched;
+	/** Number of valid entries in mMatched */
+	private int mMatchedCount = 0;
+	/** Occurrences collected but not yet added to each emote's running count, by emote index */
+	private final long[] mPending;
+	/** Indices of the emotes with collected occurrences */
+	private final int[] mPendingIndices;
+	/** Number of valid entries in mPendingIndices */
+	private int mPendingCount = 0;
+	/** Time of the latest message with collected occurrences */
+	private long mPendingMillis = 0;
+	/** Set for each emote that has been seen in a Twitch emotes tag, by emote index */
+	private final boolean[] mNative;
+	/** Number of emotes set in mNative */
+	private int mNativeCount = 0;
+
+	/**
+	 * Constructor
+	 * @param emotes The emotes to match against
+	 */
+	public EmoteMatcher(List<EmoteValue> emotes) {
+		mEmotes = emotes.toArray(new EmoteValue[emotes.size()]);
+		mHits = new int[mEmotes.length];
+		mMatched = new int[mEmotes.length];
+		mPending = new long[mEmotes.length];
+		mPendingIndices = new int[mEmotes.length];
+		mNative = new boolean[mEmotes.length];
+
+		final String[] texts = new String[mEmotes.length];
+		for (int i = 0; i < mEmotes.length; i++) {
+			texts[i] = mEmotes[i].string();
+		}
+		mEmoteIndex = new TextIndex(texts); // first emote wins if the same text is added twice
+	}
+
+	/**
+	 * @return The number of emotes this matcher tracks
+	 */
+	public int size() {
+		return mEmotes.length;
+	}
+
+	/**
+	 * @param index Emote index
+	 * @return The emote at the index, in the order given to the constructor
+	 */
+	public EmoteValue getEmote(int index) {
+		return mEmotes[index];
+	}
+
+	/**
+	 * Return the index of the emote whose text is exactly the given range of characters
+	 * @param text Text containing the emote
+	 * @param start Start of the range (inclusive)
+	 * @param end End of the range (exclusive)
+	 * @return Index of the emote, or -1 if the text is not a tracked emote
+	 */
+	public int indexOf(CharSequence text, int start, int end) {
+		return mEmoteIndex.indexOf(text, start, end);
+	}
+
+	/**
+	 * Find all tracked emotes within the message.
+	 *
+	 * The result is read with getMatchedIndex and getMatchedCount, and is valid until the next match.
+	 *
+	 * @param message Message to search
+	 * @param start Start of the range of the message to search (inclusive)
+	 * @param end End of the range of the message to search (exclusive)
+	 * @return The number of distinct emotes found
+	 */
+	public int match(CharSequence message, int start, int end) {
+		reset();
+		scanTokens(message, start, end, false);
+		return mMatchedCount;
+	}
+
+	/**
+	 * Find all tracked emotes within a message that has a Twitch emotes tag.
+	 *
+	 * Occurrences of native Twitch emotes are taken from the tag's character ranges, and only the remaining
+	 * emotes are searched for in the message text. The result is read like the result of match.
+	 *
+	 * @param line Line containing the message and the emotes tag
+	 * @param start Start of the message (inclusive)
+	 * @param end End of the message (exclusive)
+	 * @param tagStart Start of the emotes tag value (ex. 25:0-4,12-16/1902:6-10) (inclusive)
+	 * @param tagEnd End of the emotes tag value (exclusive)
+	 * @return The number of distinct emotes found
+	 */
+	public int matchTagged(CharSequence line, int start, int end, int tagStart, int tagEnd) {
+		reset();
+		// Twitch ranges count code points, which are only different from chars if the message has surrogate pairs
+		boolean surrogates = false;
+		for (int i = start; i < end && !surrogates; i++) {
+			surrogates = Character.isSurrogate(line.charAt(i));
+		}
+
+		// tag format is emote_id:first-last,first-last/emote_id:first-last, with inclusive ranges
+		int pos = tagStart;
+		while (pos < tagEnd) {
+			while (pos < tagEnd && line.charAt(pos) != ':') {
+				pos++; // skip the emote id, the emote is found by its text
+			}
+			while (pos < tagEnd && line.charAt(pos) != '/') {
+				pos++; // skip ':' or ','
+				int first = 0;
+				while (pos < tagEnd && Character.isDigit(line.charAt(pos))) {
+					first = first * 10 + (line.charAt(pos++) - '0');
+				}
+				pos++; // skip '-'
+				int last = 0;
+				while (pos < tagEnd && Character.isDigit(line.charAt(pos))) {
+					last = last * 10 + (line.charAt(pos++) - '0');
+				}
+				final int emoteStart = charOffset(line, start, end, first, surrogates);
+				final int emoteEnd = charOffset(line, start, end, last + 1, surrogates);
+				if (emoteStart < emoteEnd && emoteEnd <= end) {
+					final int index = indexOf(line, emoteStart, emoteEnd);
+					if (index != -1) {
+						if (!mNative[index]) {
+							mNative[index] = true;
+							mNativeCount++;
+						}
+						if (mHits[index]++ == 0) {
+							mMatched[mMatchedCount++] = index;
+						}
+					}
+				}
+				while (pos < tagEnd && line.charAt(pos) != ',' && line.charAt(pos) != '/') {
+					pos++; // skip anything unexpected up to the next range
+				}
+			}
+			pos++; // skip '/'
+		}
+
+		if (mNativeCount < mEmotes.length) {
+			scanTokens(line, start, end, true);
+		}
+		return mMatchedCount;
+	}
+
+	/**
+	 * Split the message into whitespace delimited tokens, and count each token that is a tracked emote
+	 * @param skipNative True to ignore emotes known to be native Twitch emotes, which are counted from the emotes tag
+	 */
+	private void scanTokens(CharSequence message, int start, int end, boolean skipNative) {
+		int pos = start;
+		while (pos < end) {
+			// skip whitespace up to the start of the next token
+			while (pos < end && isWhitespace(message.charAt(pos))) {
+				pos++;
+			}
+			final int tokenStart = pos;
+			while (pos < end && !isWhitespace(message.charAt(pos))) {
+				pos++;
+			}
+			if (pos > tokenStart) {
+				final int index = indexOf(message, tokenStart, pos);
+				if (index != -1 && !(skipNative && mNative[index])) {
+					if (mHits[index]++ == 0) {
+						mMatched[mMatchedCount++] = index;
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Convert a code point offset within the message to a char position within the line
+	 * @return Char position, or a position past end if the offset is outside the message
+	 */
+	private static int charOffset(CharSequence line, int start, int end, int codePoints, boolean surrogates) {
+		if (!surrogates) {
+			return start + codePoints;
+		}
+		int pos = start;
+		for (int i = 0; i < codePoints && pos < end; i++) {
+			pos += (Character.isHighSurrogate(line.charAt(pos)) && pos + 1 < end) ? 2 : 1;
+		}
+		return pos;
+	}
+
+	/**
+	 * Find all tracked emotes within the message, and add the occurrences to each emote's running count.
+	 *
+	 * @param message Message to search
+	 * @param start Start of the range of the message to search (inclusive)
+	 * @param end End of the range of the message to search (exclusive)
+	 * @return The number of distinct emotes found
+	 */
+	public int search(CharSequence message, int start, int end) {
+		final int matched = match(message, start, end);
+		for (int i = 0; i < matched; i++) {
+			mEmotes[mMatched[i]].add(mHits[mMatched[i]]);
+		}
+		return matched;
+	}
+
+	/**
+	 * Find all tracked emotes within the message, and collect the occurrences without adding them to the running counts yet.
+	 * Occurrences collected from many messages are added to the running counts with one call to flush, so each emote
+	 * publishes a single event per batch of messages instead of one per message.
+	 *
+	 * @param message Message to search
+	 * @param start Start of the range of the message to search (inclusive)
+	 * @param end End of the range of the message to search (exclusive)
+	 * @return The number of distinct emotes found in this message
+	 */
+	public int collect(CharSequence message, int start, int end) {
+		return collect(message, start, end, System.currentTimeMillis());
+	}
+
+	/**
+	 * Find all tracked emotes within a message posted at a given time (ex. recorded chat), and collect the occurrences
+	 * without adding them to the running counts yet (see collect).
+	 *
+	 * @param message Message to search
+	 * @param start Start of the range of the message to search (inclusive)
+	 * @param end End of the range of the message to search (exclusive)
+	 * @param timeMillis Time the message was posted, in milliseconds since the epoch
+	 * @return The number of distinct emotes found in this message
+	 */
+	public int collect(CharSequence message, int start, int end, long timeMillis) {
+		return collectMatched(match(message, start, end), timeMillis);
+	}
+
+	/**
+	 * Find all tracked emotes within a message that has a Twitch emotes tag (see matchTagged), and collect the
+	 * occurrences without adding them to the running counts yet (see collect).
+	 *
+	 * @param line Line containing the message and the emotes tag
+	 * @param start Start of the message (inclusive)
+	 * @param end End of the message (exclusive)
+	 * @param tagStart Start of the emotes tag value (inclusive)
+	 * @param tagEnd End of the emotes tag value (exclusive)
+	 * @return The number of distinct emotes found in this message
+	 */
+	public int collectTagged(CharSequence line, int start, int end, int tagStart, int tagEnd) {
+		return collectTagged(line, start, end, tagStart, tagEnd, System.currentTimeMillis());
+	}
+
+	/**
+	 * Find all tracked emotes within a message that has a Twitch emotes tag, posted at a given time, and collect the
+	 * occurrences without adding them to the running counts yet (see collect).
+	 *
+	 * @param line Line containing the message and the emotes tag
+	 * @param start Start of the message (inclusive)
+	 * @param end End of the message (exclusive)
+	 * @param tagStart Start of the emotes tag value (inclusive)
+	 * @param tagEnd End of the emotes tag value (exclusive)
+	 * @param timeMillis Time the message was posted, in milliseconds since the epoch
+	 * @return The number of distinct emotes found in this message
+	 */
+	public int collectTagged(CharSequence line, int start, int end, int tagStart, int tagEnd, long timeMillis) {
+		return collectMatched(matchTagged(line, start, end, tagStart, tagEnd), timeMillis);
+	}
+
+	/**
+	 * Add the occurrences found by the last match to the collected occurrences. Occurrences collected in an earlier
+	 * second are flushed first, so each flush adds occurrences of a single second at their own time
+	 * @param matched Number of distinct emotes found by the last match
+	 * @param timeMillis Time of the message
+	 * @return matched
+	 */
+	private int collectMatched(int matched, long timeMillis) {
+		if (matched == 0) {
+			return 0;
+		}
+		if (mPendingCount > 0 && Math.floorDiv(timeMillis, RateHistory.SECOND_MILLIS)
+				!= Math.floorDiv(mPendingMillis, RateHistory.SECOND_MILLIS)) {
+			flush();
+		}
+		mPendingMillis = timeMillis;
+		for (int i = 0; i < matched; i++) {
+			final int index = mMatched[i];
+			if (mPending[index] == 0) {
+				mPendingIndices[mPendingCount++] = index;
+			}
+			mPending[index] += mHits[index];
+		}
+		return matched;
+	}
+
+	/**
+	 * Add all occurrences collected since the last flush to each emote's running count, at the time of the latest
+	 * message they were collected from
+	 * @return The number of emotes whose running count changed
+	 */
+	public int flush() {
+		final int flushed = mPendingCount;
+		for (int i = 0; i < flushed; i++) {
+			final int index = mPendingIndices[i];
+			final long occurrences = mPending[index];
+			mPending[index] = 0;
+			mEmotes[index].add(occurrences, mPendingMillis);
+		}
+		mPendingCount = 0;
+		return flushed;
+	}
+
+	/**
+	 * Add the chatter who posted the message of the last match to the distinct chatters of each emote found
+	 * @param chatterHash Hash of the chatter's nick (see HyperLogLog.hash)
+	 * @param matched Number of distinct emotes found by the last match
+	 * @param timeMillis Time of the message
+	 */
+	public void addChatter(long chatterHash, int matched, long timeMillis) {
+		for (int i = 0; i < matched; i++) {
+			mEmotes[mMatched[i]].addChatter(chatterHash, timeMillis);
+		}
+	}
+
+	/**
+	 * @param i Match number, from 0 to the value returned by the last match (exclusive)
+	 * @return The emote index of the match
+	 */
+	public int getMatchedIndex(int i) {
+		return mMatched[i];
+	}
+
+	/**
+	 * @param i Match number, from 0 to the value returned by the last match (exclusive)
+	 * @return The number of occurrences of the matched emote
+	 */
+	public int getMatchedCount(int i) {
+		return mHits[mMatched[i]];
+	}
+
+	/**
+	 * Clear the result of the last match
+	 */
+	private void reset() {
+		for (int i = 0; i < mMatchedCount; i++) {
+			mHits[mMatched[i]] = 0;
+		}
+		mMatchedCount = 0;
+	}
+
+	/**
+	 * Return if the character is whitespace, using the same set of characters as the regex \s class
+	 * @param c Character to check
+	 * @return True if whitespace, false otherwise
+	 */
+	public static boolean isWhitespace(char c) {
+		return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+	}
+
+}
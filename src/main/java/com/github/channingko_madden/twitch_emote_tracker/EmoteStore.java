@@ -0,0 +1,442 @@
+package com.github.channingko_madden.twitch_emote_tracker;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * This class saves the emote counts and queries of each channel to disk, and restores them when the same channel is
+ * tracked again.
+ *
+ * Each channel has its own directory, holding an append-only log of count changes and a snapshot of the totals.
+ * A background thread appends the changes of every emote since the last write as one checksummed frame and
+ * fsyncs once per frame, so the processing threads never touch the disk and a crash loses at most one write
+ * interval. Every so often (or when the log grows large) the totals are written to a new snapshot and the older
+ * logs are deleted, so starting up reads one snapshot plus a short log instead of the whole history.
+ *
+ * Files in a channel directory:
+ * <pre>
+ * snapshot.dat       magic, version, first log generation not in the snapshot, totals by emote text, CRC32
+ * counts-[gen].log   frames of: length, CRC32, time, then emote text, count change, queries change per changed emote
+ * history.ts         count changes by minute and emote index (EmoteTimeSeries), for long-term history
+ * </pre>
+ * Totals of emotes that are no longer tracked are kept, and restored if the emote is tracked again. The history only
+ * gets occurrences counted since the store was opened, at the time they were written: restored totals (including
+ * counts backfilled by ChatReplay) have no times of their own, and backfilled history is added with addHistory.
+ *
+ * @author channing.ko-madden
+ *
+ */
+public class EmoteStore {
+
+	/** Time between writes of the count changes to the log */
+	public static final long WRITE_INTERVAL_MILLIS = 1000;
+	/** Time between snapshots */
+	public static final long SNAPSHOT_INTERVAL_MILLIS = 5 * 60 * 1000;
+	/** Size of the log that triggers a snapshot before the snapshot interval */
+	public static final long SNAPSHOT_LOG_SIZE = 4 * 1024 * 1024;
+
+	private static final int SNAPSHOT_MAGIC = 0x45534e50; // "ESNP"
+	private static final int SNAPSHOT_VERSION = 1;
+	private static final String SNAPSHOT_FILE = "snapshot.dat";
+	private static final String LOG_PREFIX = "counts-";
+	private static final String LOG_SUFFIX = ".log";
+	private static final String TIME_SERIES_FILE = "history.ts";
+
+	/** Saved data of each channel */
+	private final List<ChannelStore> mStores = new ArrayList<>();
+	private final Thread mThread;
+	private volatile boolean mRunning = true;
+
+	/**
+	 * @return Default directory of the store, under the user's home directory
+	 */
+	public static Path defaultDirectory() {
+		return Paths.get(System.getProperty("user.home"), ".twitch_emote_tracker");
+	}
+
+	/**
+	 * @param directory Directory of the store
+	 * @param channelName Name of the channel, without the leading '#'
+	 * @return File of the channel's emote time series, to open with EmoteTimeSeries.openForReading
+	 */
+	public static Path timeSeriesPath(Path directory, String channelName) {
+		return directory.resolve(channelName).resolve(TIME_SERIES_FILE);
+	}
+
+	/**
+	 * Constructor. Restores the saved totals of each channel's emotes, then starts writing changes in the background.
+	 *
+	 * @param directory Directory of the store, created if missing
+	 * @param channels Channels to save. The emote counts should not have changed since they were created
+	 * @throws IOException If a channel's directory or log could not be opened
+	 */
+	public EmoteStore(Path directory, List<ChannelTracker> channels) throws IOException {
+		for (ChannelTracker channel : channels) {
+			final ChannelStore store = new ChannelStore(directory.resolve(channel.getChannelName()), channel);
+			store.recover();
+			mStores.add(store);
+		}
+		mThread = new Thread(new Writer(), "EmoteStore");
+		mThread.start();
+	}
+
+	/**
+	 * Add occurrences counted at a past time (ex. from recorded chat) to the history of a channel's emote. The
+	 * occurrences must also be added to the emote's count with EmoteValue.restore, which saves them in the totals
+	 * but not in the history. Must be called before close
+	 * @param channel Channel given to the constructor
+	 * @param emote Emote index within the channel
+	 * @param timeMillis Time of the occurrences, in milliseconds since the epoch
+	 * @param occurrences Number of occurrences
+	 * @throws IOException If the history could not be written
+	 */
+	public void addHistory(ChannelTracker channel, int emote, long timeMillis, long occurrences) throws IOException {
+		for (ChannelStore store : mStores) {
+			if (store.mEmotes == channel.getEmotes()) {
+				store.addHistory(emote, timeMillis, occurrences);
+				return;
+			}
+		}
+		throw new IllegalArgumentException("Channel is not saved by this store: " + channel.getChannelName());
+	}
+
+	/**
+	 * Stop the background thread, then write the last changes and a final snapshot
+	 */
+	public void close() {
+		mRunning = false;
+		mThread.interrupt();
+		try {
+			mThread.join();
+		} catch (InterruptedException exp) {
+			Thread.currentThread().interrupt();
+		}
+		for (ChannelStore store : mStores) {
+			try {
+				store.append();
+				store.snapshot();
+			} catch (IOException exp) {
+				exp.printStackTrace();
+			}
+			store.closeLog();
+			store.mTimeSeries.close();
+		}
+	}
+
+	/**
+	 * Writes the count changes of every channel each write interval, and snapshots when due
+	 */
+	private class Writer implements Runnable {
+
+		@Override
+		public void run() {
+			long lastSnapshot = System.currentTimeMillis();
+			while (mRunning) {
+				try {
+					Thread.sleep(WRITE_INTERVAL_MILLIS);
+				} catch (InterruptedException exp) {
+					break; // closing, the last changes are written by close
+				}
+				final boolean snapshotDue = System.currentTimeMillis() - lastSnapshot >= SNAPSHOT_INTERVAL_MILLIS;
+				for (ChannelStore store : mStores) {
+					try {
+						store.append();
+						if (snapshotDue || store.mLogSize >= SNAPSHOT_LOG_SIZE) {
+							store.snapshot();
+						}
+					} catch (IOException exp) {
+						exp.printStackTrace();
+					}
+				}
+				if (snapshotDue) {
+					lastSnapshot = System.currentTimeMillis();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Saved data of one channel. Used by the constructor, the writer, then close, and by addHistory at any time,
+	 * which the lock keeps apart.
+	 */
+	private static class ChannelStore {
+
+		private final Path mDirectory;
+		private final List<EmoteValue> mEmotes;
+		/** Saved count and queries by emote text, including emotes that are no longer tracked */
+		private final Map<String, long[]> mTotals = new LinkedHashMap<>();
+		/** Saved totals of each tracked emote, in the same order as mEmotes */
+		private final long[][] mSaved;
+		/** Count of each tracked emote without its restored count (see EmoteValue.getRestoredCount), as of the last append */
+		private final long[] mTimed;
+		/** Generation of the log being appended to */
+		private long mLogGeneration = 0;
+		private FileChannel mLog;
+		private long mLogSize = 0;
+		private final ByteArrayOutputStream mFrame = new ByteArrayOutputStream();
+		/** Count changes over time, by emote index */
+		private EmoteTimeSeries mTimeSeries;
+
+		ChannelStore(Path directory, ChannelTracker channel) throws IOException {
+			mDirectory = directory;
+			mEmotes = channel.getEmotes();
+			mSaved = new long[mEmotes.size()][];
+			mTimed = new long[mEmotes.size()];
+			Files.createDirectories(mDirectory);
+		}
+
+		/**
+		 * Read the snapshot and the logs written after it, restore the totals of the tracked emotes, and start a new log
+		 */
+		void recover() throws IOException {
+			long firstGeneration = readSnapshot();
+			final List<Long> generations = logGenerations();
+			for (long generation : generations) {
+				if (generation >= firstGeneration) {
+					readLog(logPath(generation));
+				}
+				mLogGeneration = Math.max(mLogGeneration, generation + 1);
+			}
+			mLogGeneration = Math.max(mLogGeneration, firstGeneration);
+
+			int restored = 0;
+			for (int i = 0; i < mEmotes.size(); i++) {
+				final EmoteValue emote = mEmotes.get(i);
+				mSaved[i] = mTotals.computeIfAbsent(emote.string(), k -> new long[2]);
+				for (int j = 0; j < i; j++) {
+					if (mSaved[j] == mSaved[i]) {
+						mSaved[i] = new long[2]; // the same emote added twice, only the first is saved
+						break;
+					}
+				}
+				if (mSaved[i][0] != 0 || mSaved[i][1] != 0) {
+					emote.restore(mSaved[i][0], mSaved[i][1]);
+					restored++;
+				}
+				mTimed[i] = emote.getCount() - emote.getRestoredCount();
+			}
+			openLog();
+			mTimeSeries = EmoteTimeSeries.openForWriting(mDirectory.resolve(TIME_SERIES_FILE), mEmotes,
+					EmoteTimeSeries.DEFAULT_BUCKET_MILLIS);
+			System.out.println("Restored the saved totals of " + restored + " emotes from " + mDirectory);
+		}
+
+		/**
+		 * Read the snapshot into mTotals
+		 * @return First log generation that is not included in the snapshot
+		 */
+		private long readSnapshot() throws IOException {
+			final Path path = mDirectory.resolve(SNAPSHOT_FILE);
+			if (!Files.exists(path)) {
+				return 0;
+			}
+			final byte[] bytes = Files.readAllBytes(path);
+			final CRC32 crc = new CRC32();
+			crc.update(bytes, 0, Math.max(0, bytes.length - Long.BYTES));
+			try (DataInputStream input = new DataInputStream(new ByteArrayInputStream(bytes))) {
+				if (input.readInt() != SNAPSHOT_MAGIC || input.readInt() != SNAPSHOT_VERSION) {
+					throw new IOException("Unknown snapshot format: " + path);
+				}
+				final long firstGeneration = input.readLong();
+				final int count = input.readInt();
+				final Map<String, long[]> totals = new HashMap<>();
+				for (int i = 0; i < count; i++) {
+					totals.put(input.readUTF(), new long[] {input.readLong(), input.readLong()});
+				}
+				if (input.readLong() != crc.getValue()) {
+					throw new IOException("Snapshot checksum does not match: " + path);
+				}
+				mTotals.putAll(totals);
+				return firstGeneration;
+			} catch (EOFException exp) {
+				throw new IOException("Snapshot is truncated: " + path, exp);
+			}
+		}
+
+		/**
+		 * Add the changes within a log to mTotals. Stops at the first incomplete or damaged frame, which is
+		 * what a crash during a write leaves behind.
+		 */
+		private void readLog(Path path) throws IOException {
+			final byte[] bytes = Files.readAllBytes(path);
+			final ByteBuffer buffer = ByteBuffer.wrap(bytes);
+			final CRC32 crc = new CRC32();
+			while (buffer.remaining() >= 2 * Integer.BYTES) {
+				final int length = buffer.getInt();
+				final int checksum = buffer.getInt();
+				if (length < 0 || length > buffer.remaining()) {
+					System.out.println("Ignoring incomplete frame at the end of " + path);
+					return;
+				}
+				crc.reset();
+				crc.update(bytes, buffer.position(), length);
+				if ((int) crc.getValue() != checksum) {
+					System.out.println("Ignoring damaged frame at the end of " + path);
+					return;
+				}
+				try (DataInputStream input = new DataInputStream(new ByteArrayInputStream(bytes, buffer.position(), length))) {
+					input.readLong(); // time of the frame
+					while (input.available() > 0) {
+						final long[] totals = mTotals.computeIfAbsent(input.readUTF(), k -> new long[2]);
+						totals[0] += input.readLong();
+						totals[1] += input.readLong();
+					}
+				}
+				buffer.position(buffer.position() + length);
+			}
+		}
+
+		/**
+		 * Append the changes of every tracked emote since the last append as one frame, and fsync the log. The
+		 * occurrences counted since the last append, without restored counts, are added to the history now
+		 */
+		synchronized void append() throws IOException {
+			final long now = System.currentTimeMillis();
+			mFrame.reset();
+			final DataOutputStream output = new DataOutputStream(mFrame);
+			output.writeLong(now);
+			boolean changed = false;
+			for (int i = 0; i < mEmotes.size(); i++) {
+				final EmoteValue emote = mEmotes.get(i);
+				final long count = emote.getCount();
+				final long queries = emote.getQueries();
+				if (count != mSaved[i][0] || queries != mSaved[i][1]) {
+					output.writeUTF(emote.string());
+					output.writeLong(count - mSaved[i][0]);
+					output.writeLong(queries - mSaved[i][1]);
+					final long timed = count - emote.getRestoredCount();
+					if (timed != mTimed[i]) {
+						mTimeSeries.add(i, now, timed - mTimed[i]);
+						mTimed[i] = timed;
+					}
+					mSaved[i][0] = count;
+					mSaved[i][1] = queries;
+					changed = true;
+				}
+			}
+			if (!changed) {
+				return;
+			}
+			final byte[] payload = mFrame.toByteArray();
+			final CRC32 crc = new CRC32();
+			crc.update(payload);
+			final ByteBuffer frame = ByteBuffer.allocate(2 * Integer.BYTES + payload.length);
+			frame.putInt(payload.length).putInt((int) crc.getValue()).put(payload).flip();
+			while (frame.hasRemaining()) {
+				mLogSize += mLog.write(frame);
+			}
+			mLog.force(false);
+		}
+
+		/**
+		 * Start a new log, write the totals to a new snapshot that covers every older log, then delete the older logs.
+		 * The snapshot replaces the old one with an atomic rename, so a crash leaves either the old or the new snapshot.
+		 */
+		synchronized void snapshot() throws IOException {
+			mTimeSeries.force();
+			closeLog();
+			mLogGeneration++;
+			openLog();
+
+			final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			final DataOutputStream output = new DataOutputStream(bytes);
+			output.writeInt(SNAPSHOT_MAGIC);
+			output.writeInt(SNAPSHOT_VERSION);
+			output.writeLong(mLogGeneration);
+			output.writeInt(mTotals.size());
+			for (Map.Entry<String, long[]> totals : mTotals.entrySet()) {
+				output.writeUTF(totals.getKey());
+				output.writeLong(totals.getValue()[0]);
+				output.writeLong(totals.getValue()[1]);
+			}
+			final CRC32 crc = new CRC32();
+			crc.update(bytes.toByteArray());
+			output.writeLong(crc.getValue());
+
+			final Path temp = mDirectory.resolve(SNAPSHOT_FILE + ".tmp");
+			try (FileChannel file = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+					StandardOpenOption.TRUNCATE_EXISTING)) {
+				final ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+				while (buffer.hasRemaining()) {
+					file.write(buffer);
+				}
+				file.force(true);
+			}
+			Files.move(temp, mDirectory.resolve(SNAPSHOT_FILE), StandardCopyOption.ATOMIC_MOVE,
+					StandardCopyOption.REPLACE_EXISTING);
+
+			for (long generation : logGenerations()) {
+				if (generation < mLogGeneration) {
+					Files.deleteIfExists(logPath(generation));
+				}
+			}
+		}
+
+		/**
+		 * Add occurrences counted at a past time to the history
+		 */
+		synchronized void addHistory(int emote, long timeMillis, long occurrences) throws IOException {
+			mTimeSeries.add(emote, timeMillis, occurrences);
+		}
+
+		private void openLog() throws IOException {
+			mLog = FileChannel.open(logPath(mLogGeneration), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+					StandardOpenOption.APPEND);
+			mLogSize = mLog.size();
+		}
+
+		void closeLog() {
+			if (mLog != null) {
+				try {
+					mLog.close();
+				} catch (IOException exp) {
+					exp.printStackTrace();
+				}
+				mLog = null;
+			}
+		}
+
+		private Path logPath(long generation) {
+			return mDirectory.resolve(LOG_PREFIX + generation + LOG_SUFFIX);
+		}
+
+		/**
+		 * @return Generations of the logs in the directory, oldest first
+		 */
+		private List<Long> logGenerations() throws IOException {
+			final List<Long> generations = new ArrayList<>();
+			try (DirectoryStream<Path> files = Files.newDirectoryStream(mDirectory, LOG_PREFIX + "*" + LOG_SUFFIX)) {
+				for (Path file : files) {
+					final String name = file.getFileName().toString();
+					try {
+						generations.add(Long.parseLong(name.substring(LOG_PREFIX.length(), name.length() - LOG_SUFFIX.length())));
+					} catch (NumberFormatException exp) {
+						// not one of our logs
+					}
+				}
+			}
+			Collections.sort(generations);
+			return generations;
+		}
+	}
+
+}
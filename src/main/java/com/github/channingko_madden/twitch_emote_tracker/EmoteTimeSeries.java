@@ -0,0 +1,432 @@
+package com.github.channingko_madden.twitch_emote_tracker;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * This class is a memory-mapped file of emote counts over time: for each time bucket and emote index, the number
+ * of occurrences of the emote within the bucket. Emote indices are the order of the channel's emotes, which is
+ * also the row of each emote in the data table.
+ *
+ * The file is a header followed by fixed size chunks, each covering CHUNK_BUCKETS consecutive buckets. Within a
+ * chunk the counts are stored by column: all the buckets of emote 0, then all the buckets of emote 1, and so on,
+ * as 8 byte longs. A range query for one emote reads one contiguous run per chunk, and only the chunks a query
+ * touches are mapped, so weeks of history can be queried without loading the whole file.
+ * <pre>
+ * header   magic, version, header size, bucket length, first bucket, last bucket written, chunk buckets,
+ *          emote count, emote texts, padded to HEADER_ALIGNMENT
+ * chunk n  count[emote][bucket] for buckets first + n * chunk buckets up to (not including) the next chunk
+ * </pre>
+ * Occurrences older than the first bucket (ex. backfilled from recorded chat) grow the file backwards by whole chunks,
+ * which rewrites the file once and leaves the existing chunks as they are. Readers opened before that keep reading
+ * the old file.
+ *
+ * One instance may write the file while others only read it. An instance must only be used by one thread at a time.
+ *
+ * @author channing.ko-madden
+ *
+ */
+public class EmoteTimeSeries {
+
+	/** Default length of a time bucket */
+	public static final long DEFAULT_BUCKET_MILLIS = RateHistory.MINUTE_MILLIS;
+	/** Number of buckets in a chunk, one day of one minute buckets */
+	public static final int CHUNK_BUCKETS = 1440;
+
+	private static final int MAGIC = 0x45545346; // "ETSF"
+	private static final int VERSION = 1;
+	private static final int HEADER_ALIGNMENT = 4096;
+	/** Position of the first bucket within the header */
+	private static final int FIRST_BUCKET_POSITION = 4 + 4 + 4 + 8;
+	/** Position of the last bucket written within the header */
+	private static final int LAST_BUCKET_POSITION = 4 + 4 + 4 + 8 + 8;
+
+	private final Path mPath;
+	private FileChannel mFile;
+	private final boolean mWritable;
+	private final int mHeaderSize;
+	private final long mBucketMillis;
+	private long mFirstBucket;
+	private long mLastBucket;
+	private final String[] mEmotes;
+	private final TextIndex mEmoteIndex;
+	private final long mChunkBytes;
+	/** Mapped header, used to update the last bucket written */
+	private MappedByteBuffer mHeader;
+	/** Mapped chunks, by chunk number. Null until first used */
+	private final List<MappedByteBuffer> mChunks = new ArrayList<>();
+
+	/**
+	 * Open a time series for writing, creating it if it does not exist. If the file holds a different set of
+	 * emotes, it is moved aside (renamed with the time it was replaced) and a new file is started.
+	 *
+	 * @param path File of the time series
+	 * @param emotes Emotes of the time series, in index order
+	 * @param bucketMillis Length of a time bucket, for a new file
+	 * @return The time series
+	 * @throws IOException If the file could not be opened or created
+	 */
+	public static EmoteTimeSeries openForWriting(Path path, List<EmoteValue> emotes, long bucketMillis) throws IOException {
+		final String[] names = new String[emotes.size()];
+		for (int i = 0; i < names.length; i++) {
+			names[i] = emotes.get(i).string();
+		}
+		if (Files.exists(path)) {
+			final EmoteTimeSeries existing = new EmoteTimeSeries(path, true);
+			if (Arrays.equals(existing.mEmotes, names)) {
+				return existing;
+			}
+			existing.close();
+			final String fileName = path.getFileName().toString();
+			Files.move(path, path.resolveSibling(fileName + "." + System.currentTimeMillis()));
+			System.out.println("Emotes changed, moved the old time series aside: " + path);
+		}
+		create(path, names, bucketMillis, Math.floorDiv(System.currentTimeMillis(), bucketMillis));
+		return new EmoteTimeSeries(path, true);
+	}
+
+	/**
+	 * Open a time series for queries only
+	 * @param path File of the time series
+	 * @return The time series
+	 * @throws IOException If the file could not be opened, or is not a time series
+	 */
+	public static EmoteTimeSeries openForReading(Path path) throws IOException {
+		return new EmoteTimeSeries(path, false);
+	}
+
+	/**
+	 * Write the header of a new time series file
+	 */
+	private static void create(Path path, String[] emotes, long bucketMillis, long firstBucket) throws IOException {
+		final ByteArrayOutputStream names = new ByteArrayOutputStream();
+		final DataOutputStream output = new DataOutputStream(names);
+		for (String emote : emotes) {
+			output.writeUTF(emote);
+		}
+		final int fixed = LAST_BUCKET_POSITION + 8 + 4 + 4;
+		final int headerSize = ((fixed + names.size()) / HEADER_ALIGNMENT + 1) * HEADER_ALIGNMENT;
+		final ByteBuffer header = ByteBuffer.allocate(headerSize);
+		header.putInt(MAGIC).putInt(VERSION).putInt(headerSize).putLong(bucketMillis).putLong(firstBucket)
+				.putLong(firstBucket - 1).putInt(CHUNK_BUCKETS).putInt(emotes.length).put(names.toByteArray());
+		header.clear();
+		try (FileChannel file = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+			while (header.hasRemaining()) {
+				file.write(header);
+			}
+			file.force(true);
+		}
+	}
+
+	/**
+	 * Constructor. Reads the header of an existing file
+	 */
+	private EmoteTimeSeries(Path path, boolean writable) throws IOException {
+		mPath = path;
+		mWritable = writable;
+		mFile = writable ? FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)
+				: FileChannel.open(path, StandardOpenOption.READ);
+		final ByteBuffer fixed = ByteBuffer.allocate(LAST_BUCKET_POSITION + 8 + 4 + 4);
+		while (fixed.hasRemaining() && mFile.read(fixed) >= 0) {
+			// read the fixed part of the header
+		}
+		fixed.flip();
+		if (fixed.remaining() < fixed.capacity() || fixed.getInt() != MAGIC || fixed.getInt() != VERSION) {
+			mFile.close();
+			throw new IOException("Not an emote time series: " + path);
+		}
+		mHeaderSize = fixed.getInt();
+		mBucketMillis = fixed.getLong();
+		mFirstBucket = fixed.getLong();
+		fixed.getLong(); // last bucket, read from the mapped header
+		final int chunkBuckets = fixed.getInt();
+		final int emoteCount = fixed.getInt();
+		if (chunkBuckets != CHUNK_BUCKETS) {
+			mFile.close();
+			throw new IOException("Unsupported chunk size " + chunkBuckets + ": " + path);
+		}
+
+		mHeader = mFile.map(writable ? FileChannel.MapMode.READ_WRITE : FileChannel.MapMode.READ_ONLY, 0, mHeaderSize);
+		final byte[] names = new byte[mHeaderSize - fixed.capacity()];
+		mHeader.position(fixed.capacity());
+		mHeader.get(names);
+		final DataInputStream input = new DataInputStream(new ByteArrayInputStream(names));
+		mEmotes = new String[emoteCount];
+		for (int i = 0; i < emoteCount; i++) {
+			mEmotes[i] = input.readUTF();
+		}
+		mEmoteIndex = new TextIndex(mEmotes);
+		mLastBucket = mHeader.getLong(LAST_BUCKET_POSITION);
+		mChunkBytes = (long) Math.max(1, emoteCount) * CHUNK_BUCKETS * Long.BYTES;
+	}
+
+	/**
+	 * @return Number of emotes in the time series
+	 */
+	public int getEmoteCount() {
+		return mEmotes.length;
+	}
+
+	/**
+	 * @param index Emote index
+	 * @return Text of the emote
+	 */
+	public String getEmote(int index) {
+		return mEmotes[index];
+	}
+
+	/**
+	 * @param emote Text of the emote
+	 * @return Index of the emote, or -1 if it is not in the time series
+	 */
+	public int indexOf(String emote) {
+		return mEmoteIndex.indexOf(emote);
+	}
+
+	/**
+	 * @return Length of a time bucket
+	 */
+	public long getBucketMillis() {
+		return mBucketMillis;
+	}
+
+	/**
+	 * @return Start time of the first bucket
+	 */
+	public long getStartMillis() {
+		return mFirstBucket * mBucketMillis;
+	}
+
+	/**
+	 * @return End time (exclusive) of the last bucket written. Equal to the start time if nothing was written
+	 */
+	public long getEndMillis() {
+		if (!mWritable) {
+			mLastBucket = mHeader.getLong(LAST_BUCKET_POSITION); // may have been written since this was opened
+		}
+		return (mLastBucket + 1) * mBucketMillis;
+	}
+
+	/**
+	 * Add occurrences of an emote at a point in time. Occurrences before the start of the time series grow it backwards.
+	 * @param emote Emote index
+	 * @param timeMillis Time of the occurrences
+	 * @param occurrences Number of occurrences
+	 * @throws IOException If the file could not be grown
+	 */
+	public void add(int emote, long timeMillis, long occurrences) throws IOException {
+		if (!mWritable) {
+			throw new IllegalStateException("Time series is open for reading only");
+		}
+		final long bucket = Math.floorDiv(timeMillis, mBucketMillis);
+		if (occurrences == 0) {
+			return;
+		}
+		if (bucket < mFirstBucket) {
+			growBack(bucket);
+		}
+		final MappedByteBuffer chunk = chunk((int) ((bucket - mFirstBucket) / CHUNK_BUCKETS));
+		final int position = cellPosition(emote, bucket);
+		chunk.putLong(position, chunk.getLong(position) + occurrences);
+		if (bucket > mLastBucket) {
+			mLastBucket = bucket;
+			mHeader.putLong(LAST_BUCKET_POSITION, bucket);
+		}
+	}
+
+	/**
+	 * @param emote Emote index
+	 * @param timeMillis Any time within the bucket
+	 * @return Occurrences of the emote within the bucket
+	 */
+	public long get(int emote, long timeMillis) {
+		final long bucket = Math.floorDiv(timeMillis, mBucketMillis);
+		if (bucket < mFirstBucket || bucket > lastBucket()) {
+			return 0;
+		}
+		final MappedByteBuffer chunk = chunkIfPresent((int) ((bucket - mFirstBucket) / CHUNK_BUCKETS));
+		return chunk == null ? 0 : chunk.getLong(cellPosition(emote, bucket));
+	}
+
+	/**
+	 * @param emote Emote index
+	 * @param fromMillis Start of the range (inclusive)
+	 * @param toMillis End of the range (exclusive)
+	 * @return Occurrences of the emote within the buckets that start in the range
+	 */
+	public long sum(int emote, long fromMillis, long toMillis) {
+		final long[] total = range(emote, fromMillis, toMillis, Math.max(mBucketMillis, toMillis - fromMillis));
+		return total.length == 0 ? 0 : total[0];
+	}
+
+	/**
+	 * Read the counts of an emote over a range of time, downsampled into steps (ex. one minute buckets summed into
+	 * hours). Each step covers the buckets that start within it.
+	 *
+	 * @param emote Emote index
+	 * @param fromMillis Start of the range (inclusive), rounded down to a bucket
+	 * @param toMillis End of the range (exclusive)
+	 * @param stepMillis Length of each step, rounded up to a whole number of buckets
+	 * @return Occurrences of the emote within each step, starting at fromMillis
+	 */
+	public long[] range(int emote, long fromMillis, long toMillis, long stepMillis) {
+		final long fromBucket = Math.floorDiv(fromMillis, mBucketMillis);
+		final long toBucket = Math.floorDiv(toMillis - 1, mBucketMillis) + 1; // exclusive
+		final long stepBuckets = Math.max(1, (stepMillis + mBucketMillis - 1) / mBucketMillis);
+		if (toBucket <= fromBucket) {
+			return new long[0];
+		}
+		final long[] steps = new long[(int) ((toBucket - fromBucket + stepBuckets - 1) / stepBuckets)];
+
+		// walk the chunks that overlap the range, reading each emote column as one contiguous run
+		long bucket = Math.max(fromBucket, mFirstBucket);
+		final long end = Math.min(toBucket, lastBucket() + 1);
+		while (bucket < end) {
+			final int chunkNumber = (int) ((bucket - mFirstBucket) / CHUNK_BUCKETS);
+			final long chunkEnd = Math.min(end, mFirstBucket + (long) (chunkNumber + 1) * CHUNK_BUCKETS);
+			final MappedByteBuffer chunk = chunkIfPresent(chunkNumber);
+			if (chunk != null) {
+				int position = cellPosition(emote, bucket);
+				for (long b = bucket; b < chunkEnd; b++, position += Long.BYTES) {
+					steps[(int) ((b - fromBucket) / stepBuckets)] += chunk.getLong(position);
+				}
+			}
+			bucket = chunkEnd;
+		}
+		return steps;
+	}
+
+	/**
+	 * Write the mapped changes to disk
+	 */
+	public void force() {
+		if (!mWritable) {
+			return;
+		}
+		for (MappedByteBuffer chunk : mChunks) {
+			if (chunk != null) {
+				chunk.force();
+			}
+		}
+		mHeader.force();
+	}
+
+	/**
+	 * Write the mapped changes to disk, and close the file. Mapped chunks are released when garbage collected.
+	 */
+	public void close() {
+		force();
+		try {
+			mFile.close();
+		} catch (IOException exp) {
+			exp.printStackTrace();
+		}
+	}
+
+	/**
+	 * Move the start of the time series back to the chunk holding the given bucket, by writing a copy of the file with
+	 * empty chunks before the existing ones, and renaming it over the file
+	 */
+	private void growBack(long bucket) throws IOException {
+		final long chunks = (mFirstBucket - bucket + CHUNK_BUCKETS - 1) / CHUNK_BUCKETS;
+		final long firstBucket = mFirstBucket - chunks * CHUNK_BUCKETS;
+		force();
+		final Path temp = mPath.resolveSibling(mPath.getFileName() + ".tmp");
+		try (FileChannel file = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING)) {
+			final ByteBuffer header = ByteBuffer.allocate(mHeaderSize);
+			mFile.read(header, 0);
+			header.putLong(FIRST_BUCKET_POSITION, firstBucket);
+			header.clear();
+			while (header.hasRemaining()) {
+				file.write(header);
+			}
+			// the new chunks are left as a hole, which reads as zeros
+			final long dataStart = mHeaderSize + chunks * mChunkBytes;
+			final long dataLength = mFile.size() - mHeaderSize;
+			long copied = 0;
+			while (copied < dataLength) {
+				copied += mFile.transferTo(mHeaderSize + copied, dataLength - copied, file.position(dataStart + copied));
+			}
+			file.force(true);
+		}
+		mFile.close();
+		Files.move(temp, mPath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		mFile = FileChannel.open(mPath, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		mHeader = mFile.map(FileChannel.MapMode.READ_WRITE, 0, mHeaderSize);
+		mChunks.clear();
+		mFirstBucket = firstBucket;
+		System.out.println("Extended the time series back to " + (firstBucket * mBucketMillis) + ": " + mPath);
+	}
+
+	private long lastBucket() {
+		if (!mWritable) {
+			mLastBucket = mHeader.getLong(LAST_BUCKET_POSITION);
+		}
+		return mLastBucket;
+	}
+
+	/**
+	 * @return Position of an emote's count within the bucket's chunk
+	 */
+	private int cellPosition(int emote, long bucket) {
+		final int row = (int) ((bucket - mFirstBucket) % CHUNK_BUCKETS);
+		return (emote * CHUNK_BUCKETS + row) * Long.BYTES;
+	}
+
+	/**
+	 * @return The mapped chunk, mapping it (and growing the file) if needed
+	 */
+	private MappedByteBuffer chunk(int chunkNumber) throws IOException {
+		while (mChunks.size() <= chunkNumber) {
+			mChunks.add(null);
+		}
+		MappedByteBuffer chunk = mChunks.get(chunkNumber);
+		if (chunk == null) {
+			chunk = mFile.map(FileChannel.MapMode.READ_WRITE, mHeaderSize + chunkNumber * mChunkBytes, mChunkBytes);
+			mChunks.set(chunkNumber, chunk);
+		}
+		return chunk;
+	}
+
+	/**
+	 * @return The mapped chunk, or null if the file does not reach it yet
+	 */
+	private MappedByteBuffer chunkIfPresent(int chunkNumber) {
+		if (chunkNumber < mChunks.size() && mChunks.get(chunkNumber) != null) {
+			return mChunks.get(chunkNumber);
+		}
+		try {
+			final long position = mHeaderSize + chunkNumber * mChunkBytes;
+			if (mFile.size() < position + mChunkBytes) {
+				return null;
+			}
+			if (mWritable) {
+				return chunk(chunkNumber);
+			}
+			while (mChunks.size() <= chunkNumber) {
+				mChunks.add(null);
+			}
+			final MappedByteBuffer chunk = mFile.map(FileChannel.MapMode.READ_ONLY, position, mChunkBytes);
+			mChunks.set(chunkNumber, chunk);
+			return chunk;
+		} catch (IOException exp) {
+			exp.printStackTrace();
+			return null;
+		}
+	}
+
+}
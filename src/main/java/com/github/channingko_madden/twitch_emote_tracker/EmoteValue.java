@@ -1,12 +1,16 @@
 package com.github.channingko_madden.twitch_emote_tracker;
 
 import java.util.regex.Pattern;
-import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.regex.Matcher;
 
 /**
  * This class can be used to count the occurrences of an emote within a String, and 
- * stores a running total of occurrences.
+ * stores a running total of occurrences, plus a rolling history of recent occurrences (RateHistory).
+ *
+ * The counts may be incremented by many threads at once and read from any thread (ex. the Swing table model)
+ * without locking.
  *
  */
 public class EmoteValue implements EmotePublisher {
@@ -15,11 +19,29 @@ public class EmoteValue implements EmotePublisher {
 	private final String mEmoteString;
 	/** Regex pattern for finding the occurrences of the emote within a String */
 	private final Pattern mEmoteRegexPattern; 	
-	/** Store occurrences of the emote */
-	private long mEmoteCount = 0;
+	/** Store occurrences of the emote. Striped, so concurrent increments do not contend on one counter */
+	private final LongAdder mEmoteCount = new LongAdder();
+	/** Part of the count restored from saved totals, which have no times */
+	private final LongAdder mRestoredCount = new LongAdder();
+	/** Store recent occurrences of the emote in time buckets, for rates over the last minute, hour and day */
+	private final RateHistory mHistory = new RateHistory();
+	/** Finds sudden jumps in the per second count of the emote */
+	private final SpikeDetector mSpikes = new SpikeDetector();
+	/** Distinct chatters who posted the emote */
+	private final UniqueChatters mChatters = new UniqueChatters();
+	/** Time of the latest occurrence of the emote, or 0 if it has not occurred since tracking started */
+	private volatile long mLastPostedMillis = 0;
 	/** Store the times this emote is queried for by chat users */
-	private long mQueries = 0;
-	private ArrayList<EmoteSubscriber> mSubscribers = new ArrayList<EmoteSubscriber>();
+	private final LongAdder mQueries = new LongAdder();
+	/**
+	 * Subscribers are added from the GUI thread while events are published from the processing threads.
+	 * The array is replaced, never modified, so publishing can loop over it without locking or allocating.
+	 */
+	private volatile EmoteSubscriber[] mSubscribers = new EmoteSubscriber[0];
+	/** Events read the live counts, so one instance per type is published over and over */
+	private final MyEvent mCountEvent = new MyEvent(EmoteEvent.Type.Count);
+	private final MyEvent mQueryEvent = new MyEvent(EmoteEvent.Type.Query);
+	private final MyEvent mSpikeEvent = new MyEvent(EmoteEvent.Type.Spike);
 
 	/**
 	 * Constructor
@@ -41,14 +63,102 @@ public class EmoteValue implements EmotePublisher {
 	 * @return The running count of occurrences of the emote
 	 */
 	public long getCount() {
-		return mEmoteCount;
+		return mEmoteCount.sum();
+	}
+	
+	/**
+	 * @return The part of the running count that was restored from saved totals (see restore), which has no times
+	 */
+	public long getRestoredCount() {
+		return mRestoredCount.sum();
+	}
+	
+	/**
+	 * @return The number of occurrences of the emote within the last minute
+	 */
+	public long getCountLastMinute() {
+		return mHistory.getLastMinute(System.currentTimeMillis());
+	}
+	
+	/**
+	 * @return The number of occurrences of the emote within the last hour
+	 */
+	public long getCountLastHour() {
+		return mHistory.getLastHour(System.currentTimeMillis());
+	}
+	
+	/**
+	 * @return The number of occurrences of the emote within the last day
+	 */
+	public long getCountLastDay() {
+		return mHistory.getLastDay(System.currentTimeMillis());
+	}
+	
+	/**
+	 * @return Time of the latest occurrence of the emote in milliseconds since the epoch, or 0 if it has not occurred
+	 *         since tracking started (saved totals have no times)
+	 */
+	public long getLastPostedMillis() {
+		return mLastPostedMillis;
+	}
+	
+	/**
+	 * @return Estimated number of distinct chatters who posted the emote since tracking started
+	 */
+	public long getUniqueChatters() {
+		return mChatters.getTotal();
+	}
+	
+	/**
+	 * @return Estimated number of distinct chatters who posted the emote within the last hour
+	 */
+	public long getUniqueChattersLastHour() {
+		return mChatters.getLastHour(System.currentTimeMillis());
+	}
+	
+	/**
+	 * @return Time the latest spike in the emote's per second count started, in milliseconds since the epoch, or 0 if
+	 *         there has been none
+	 */
+	public long getLastSpikeMillis() {
+		return mSpikes.getLastSpikeMillis();
+	}
+	
+	/**
+	 * @return Number of standard deviations over the average per second count at which the latest spike started
+	 */
+	public double getSpikeScore() {
+		return mSpikes.getLastScore();
+	}
+	
+	/**
+	 * @return The distinct chatters who posted the emote, to merge with others (ex. the same emote in other channels)
+	 */
+	public UniqueChatters getChatters() {
+		return mChatters;
+	}
+	
+	/**
+	 * Add a chatter who posted the emote. No event is published, the next count event reports it
+	 * @param chatterHash Hash of the chatter's nick (see HyperLogLog.hash)
+	 * @param timeMillis Time the chatter posted, in milliseconds since the epoch
+	 */
+	public void addChatter(long chatterHash, long timeMillis) {
+		mChatters.add(timeMillis, chatterHash);
+	}
+	
+	/**
+	 * @return The rolling history of recent occurrences of the emote
+	 */
+	public RateHistory getHistory() {
+		return mHistory;
 	}
 	
 	/**
 	 * @return The number of times this emote has been queried for.
 	 */
 	public long getQueries() {
-		return mQueries;
+		return mQueries.sum();
 	}
 
 	
@@ -56,16 +166,37 @@ public class EmoteValue implements EmotePublisher {
 	 * @return Increment the number of queries for this emote that have occurred and publish an emote event
 	 */
 	public void incrementQueries() {
-		mQueries++;
-		publishEvent(new MyEvent(EmoteEvent.Type.Query));
+		mQueries.increment();
+		publishEvent(mQueryEvent);
+	}
+	 
+	/**
+	 * Add previously saved totals (ex. from an EmoteStore) to the running count and queries, and publish an emote
+	 * event for each. The rate history is left alone, since the saved totals have no times, and the restored count
+	 * is kept apart (see getRestoredCount) so a saved history does not count it at the time it was restored.
+	 *
+	 * @param count Saved count of occurrences
+	 * @param queries Saved number of queries
+	 */
+	public void restore(long count, long queries) {
+		mEmoteCount.add(count);
+		mRestoredCount.add(count);
+		mQueries.add(queries);
+		publishEvent(mCountEvent);
+		publishEvent(mQueryEvent);
 	}
 	 
 	 /**
 	  * Clear the running count of occurrences of the emote and queries for the emote
 	  */
 	 public void clear() {
-		 mEmoteCount = 0;
-		 mQueries = 0;
+		 mEmoteCount.reset();
+		 mRestoredCount.reset();
+		 mQueries.reset();
+		 mHistory.clear();
+		 mChatters.clear();
+		 mSpikes.clear();
+		 mLastPostedMillis = 0;
 	 }
 	 
 	
@@ -85,20 +216,63 @@ public class EmoteValue implements EmotePublisher {
 		if (count == 0) {
 			return false;
 		} else {
-			mEmoteCount += count;
-			publishEvent(new MyEvent(EmoteEvent.Type.Count));
+			final long now = System.currentTimeMillis();
+			mEmoteCount.add(count);
+			mHistory.add(now, count);
+			mLastPostedMillis = Math.max(mLastPostedMillis, now);
+			publishEvent(mCountEvent);
 			return true;
 		}
 	}
 
+	/**
+	 * Add occurrences of the emote found elsewhere (ex. by an EmoteMatcher) to the running count.
+	 * Publishes an emote event if there are emote occurrences.
+	 *
+	 * @param occurrences Number of occurrences to add
+	 */
+	public void add(long occurrences) {
+		add(occurrences, System.currentTimeMillis());
+	}
+
+	/**
+	 * Add occurrences of the emote that happened at a given time (ex. from recorded chat) to the running count.
+	 * Publishes an emote event if there are emote occurrences, and a spike event if they start a spike.
+	 *
+	 * @param occurrences Number of occurrences to add
+	 * @param timeMillis Time of the occurrences, in milliseconds since the epoch
+	 */
+	public void add(long occurrences, long timeMillis) {
+		if (occurrences > 0) {
+			mEmoteCount.add(occurrences);
+			mHistory.add(timeMillis, occurrences);
+			mLastPostedMillis = Math.max(mLastPostedMillis, timeMillis);
+			publishEvent(mCountEvent);
+			if (mSpikes.add(timeMillis, occurrences)) {
+				publishEvent(mSpikeEvent);
+			}
+		}
+	}
+
 	@Override
-	public void addEmoteListener(EmoteSubscriber subscriber) {
-		mSubscribers.add(subscriber);
+	public synchronized void addEmoteListener(EmoteSubscriber subscriber) {
+		final EmoteSubscriber[] subscribers = Arrays.copyOf(mSubscribers, mSubscribers.length + 1);
+		subscribers[subscribers.length - 1] = subscriber;
+		mSubscribers = subscribers;
 	}
 
 	@Override
-	public void removeEmoteListener(EmoteSubscriber subscriber) {
-		mSubscribers.remove(subscriber);
+	public synchronized void removeEmoteListener(EmoteSubscriber subscriber) {
+		final EmoteSubscriber[] subscribers = mSubscribers;
+		for (int i = 0; i < subscribers.length; i++) {
+			if (subscribers[i].equals(subscriber)) {
+				final EmoteSubscriber[] removed = new EmoteSubscriber[subscribers.length - 1];
+				System.arraycopy(subscribers, 0, removed, 0, i);
+				System.arraycopy(subscribers, i + 1, removed, i, subscribers.length - i - 1);
+				mSubscribers = removed;
+				return;
+			}
+		}
 	}
 	
 	/**
@@ -106,13 +280,19 @@ public class EmoteValue implements EmotePublisher {
 	 * @param event Event to publish
 	 */
 	private void publishEvent(EmoteEvent event) {
-		for (EmoteSubscriber sub : mSubscribers) {
-			sub.actionPerformed(event);
+		final EmoteSubscriber[] subscribers = mSubscribers;
+		for (int i = 0; i < subscribers.length; i++) {
+			try {
+				subscribers[i].actionPerformed(event);
+			} catch (RuntimeException exp) {
+				exp.printStackTrace(); // a broken subscriber must not stop the others, or the counting
+			}
 		}
 	}
 	
 	/**
-	 * This class is used to pass event data to subscribers
+	 * This class is used to pass event data to subscribers. The data is read from the emote when asked for,
+	 * so an event always reports the latest counts.
 	 * @author channing.ko-madden
 	 *
 	 */
@@ -132,12 +312,37 @@ public class EmoteValue implements EmotePublisher {
 
 		@Override
 		public long getEmoteCount() {
-			return mEmoteCount;
+			return getCount();
 		}
 
 		@Override
 		public long getEmoteQueries() {
-			return mQueries;
+			return getQueries();
+		}
+
+		@Override
+		public long getEmoteCountLastMinute() {
+			return getCountLastMinute();
+		}
+
+		@Override
+		public long getEmoteCountLastHour() {
+			return getCountLastHour();
+		}
+
+		@Override
+		public long getEmoteUniqueChatters() {
+			return getUniqueChatters();
+		}
+
+		@Override
+		public long getEmoteUniqueChattersLastHour() {
+			return getUniqueChattersLastHour();
+		}
+
+		@Override
+		public double getEmoteSpikeScore() {
+			return getSpikeScore();
 		}
 
 		@Override
@@ -3,6 +3,8 @@ package com.github.channingko_madden.twitch_emote_tracker;
 import java.awt.CardLayout;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
 
 import javax.swing.JFrame;
@@ -33,11 +35,35 @@ public class HelloTwitch {
 	private final String STARTPANEL = "Start Panel";
 	private final String RUNNINGPANEL = "Running Panel";
 	private JPanel mCards;
-	private TwitchSocket mTwitchSocket;
+	private volatile TwitchSocket mTwitchSocket;
+	/** Saves the emote counts of the channels being tracked, null if the store could not be opened */
+	private volatile EmoteStore mEmoteStore;
+	/** Records the raw chat, null if chat is not being recorded */
+	private volatile ChatRecorder mChatRecorder;
 	private RunningGui mRunningGui;
 	
 	public HelloTwitch() {
 		buildGui();
+		// closing the window exits, so save the counts and finish the chat recording on the way out
+		Runtime.getRuntime().addShutdownHook(new Thread(new ShutdownHook(), "Shutdown"));
+	}
+	
+	/**
+	 * Stop the Twitch bot, finish the chat recording and save the emote counts. Does nothing if not tracking
+	 */
+	private synchronized void stopTracking() {
+		if (mTwitchSocket != null) {
+			mTwitchSocket.close();
+			mTwitchSocket = null;
+		}
+		if (mChatRecorder != null) {
+			mChatRecorder.close();
+			mChatRecorder = null;
+		}
+		if (mEmoteStore != null) {
+			mEmoteStore.close();
+			mEmoteStore = null;
+		}
 	}
 	
 	private void buildGui() {
@@ -59,7 +85,7 @@ public class HelloTwitch {
 	
 	/**
 	 * This class listens to the "Launch" button. When pressed, the Twitch bot will
-	 * join the channel and begin tracking the emotes. The Running GUI is displayed
+	 * join the channels and begin tracking the emotes in each channel. The Running GUI is displayed
 	 * afterwards.
 	 * 
 	 * @author channing.ko-madden
@@ -72,14 +98,38 @@ public class HelloTwitch {
 
 			if (mStartGui.launchable()) {
 				System.out.println("Launching bot");
-				List<EmoteValue> emotes = mStartGui.getTargetEmotes();
-				mRunningGui.buildGui(emotes, new CloseListener());
+				List<ChannelTracker> channels = new ArrayList<>();
+				for (String channelName : mStartGui.getChannelNames()) {
+					// each channel counts its emotes separately
+					final ChannelTracker channel = new ChannelTracker(channelName, mStartGui.getTargetEmotes());
+					if (mStartGui.filterSpam()) {
+						channel.setSpamFilter(new SpamFilter());
+					}
+					channels.add(channel);
+				}
+				try {
+					// restore the counts saved the last time these channels were tracked
+					mEmoteStore = new EmoteStore(EmoteStore.defaultDirectory(), channels);
+				} catch (IOException exp) {
+					exp.printStackTrace();
+					mEmoteStore = null;
+				}
+				mRunningGui.buildGui(channels, new CloseListener());
 				
 				mTwitchSocket = new TwitchSocket(
-						mStartGui.getChannelName(),
+						channels,
 						mStartGui.getUserName(),
-						mStartGui.getOAuth(),
-						emotes);
+						mStartGui.getOAuth());
+				
+				if (mStartGui.recordChat()) {
+					try {
+						mChatRecorder = new ChatRecorder(EmoteStore.defaultDirectory().resolve("recordings"));
+						mTwitchSocket.setRecorder(mChatRecorder);
+					} catch (IOException exp) {
+						exp.printStackTrace();
+						mChatRecorder = null;
+					}
+				}
 				
 				CardLayout layout = (CardLayout) (mCards.getLayout());
 				layout.show(mCards, RUNNINGPANEL);
@@ -97,11 +147,26 @@ public class HelloTwitch {
 
 		@Override
 		public void actionPerformed(ActionEvent e) {
-			mTwitchSocket.close();
+			stopTracking();
 			CardLayout layout = (CardLayout) (mCards.getLayout());
 			layout.show(mCards, STARTPANEL);
 		}
 		
 	}
 	
+	/**
+	 * This class runs when the app exits (ex. the window is closed, or the process is stopped), and stops the Twitch bot
+	 * the same way the "Close" button does
+	 * @author channing.ko-madden
+	 *
+	 */
+	private class ShutdownHook implements Runnable {
+
+		@Override
+		public void run() {
+			stopTracking();
+		}
+		
+	}
+	
 }
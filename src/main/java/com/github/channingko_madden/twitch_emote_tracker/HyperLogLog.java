@@ -0,0 +1,142 @@
+package com.github.channingko_madden.twitch_emote_tracker;
+
+import java.util.Arrays;
+
+/**
+ * This class estimates how many distinct things (ex. chatters) were seen, in fixed memory, with a HyperLogLog sketch.
+ *
+ * Each thing is hashed to 64 bits. The first bits of the hash pick one of 2^precision registers, and the register
+ * keeps the longest run of leading zeros seen in the rest of the hash. The more distinct hashes seen, the longer the
+ * runs, so the registers give an estimate with a standard error of about 1.04 / sqrt(2^precision), 1.6% at the default
+ * precision, using one byte per register however many things are seen. Seeing the same thing again changes nothing.
+ *
+ * Sketches of the same precision merge by keeping the largest of each register, so the sketch of a union (ex. several
+ * time windows, or several channels) is built from the sketches of its parts, without seeing the things again.
+ *
+ * Not thread safe.
+ *
+ * @author channing.ko-madden
+ *
+ */
+public class HyperLogLog {
+
+	/** Default precision, 4096 registers */
+	public static final int DEFAULT_PRECISION = 12;
+
+	private final int mPrecision;
+	private final byte[] mRegisters;
+
+	/**
+	 * Constructor, with the default precision
+	 */
+	public HyperLogLog() {
+		this(DEFAULT_PRECISION);
+	}
+
+	/**
+	 * Constructor
+	 * @param precision Number of hash bits picking the register, from 4 to 18. Uses 2^precision bytes
+	 */
+	public HyperLogLog(int precision) {
+		if (precision < 4 || precision > 18) {
+			throw new IllegalArgumentException("Invalid precision: " + precision);
+		}
+		mPrecision = precision;
+		mRegisters = new byte[1 << precision];
+	}
+
+	/**
+	 * Hash text to 64 bits, for offer (FNV-1a, then the MurmurHash3 finalizer to spread the bits)
+	 * @param text Text holding what to hash
+	 * @param start Start of what to hash (inclusive)
+	 * @param end End of what to hash (exclusive)
+	 * @return 64 bit hash
+	 */
+	public static long hash(CharSequence text, int start, int end) {
+		long hash = 0xcbf29ce484222325L;
+		for (int i = start; i < end; i++) {
+			hash ^= text.charAt(i);
+			hash *= 0x100000001b3L;
+		}
+		hash ^= hash >>> 33;
+		hash *= 0xff51afd7ed558ccdL;
+		hash ^= hash >>> 33;
+		hash *= 0xc4ceb9fe1a85ec53L;
+		hash ^= hash >>> 33;
+		return hash;
+	}
+
+	/**
+	 * See a thing
+	 * @param hash 64 bit hash of the thing (see hash)
+	 */
+	public void offer(long hash) {
+		final int register = (int) (hash >>> (64 - mPrecision));
+		// leading zeros of the remaining bits, plus one. A set bit stops the count at the end of the hash
+		final byte rank = (byte) (Long.numberOfLeadingZeros((hash << mPrecision) | (1L << (mPrecision - 1))) + 1);
+		if (rank > mRegisters[register]) {
+			mRegisters[register] = rank;
+		}
+	}
+
+	/**
+	 * Add everything seen by another sketch to this one
+	 * @param other Sketch of the same precision
+	 */
+	public void merge(HyperLogLog other) {
+		if (other.mPrecision != mPrecision) {
+			throw new IllegalArgumentException("Cannot merge precision " + other.mPrecision + " into " + mPrecision);
+		}
+		for (int i = 0; i < mRegisters.length; i++) {
+			if (other.mRegisters[i] > mRegisters[i]) {
+				mRegisters[i] = other.mRegisters[i];
+			}
+		}
+	}
+
+	/**
+	 * @return Estimated number of distinct things seen
+	 */
+	public long estimate() {
+		final int m = mRegisters.length;
+		double sum = 0;
+		int zeros = 0;
+		for (int i = 0; i < m; i++) {
+			sum += Math.scalb(1.0, -mRegisters[i]);
+			if (mRegisters[i] == 0) {
+				zeros++;
+			}
+		}
+		final double alpha = 0.7213 / (1 + 1.079 / m);
+		final double estimate = alpha * m * m / sum;
+		if (estimate <= 2.5 * m && zeros > 0) {
+			// few things seen, count the empty registers instead (linear counting)
+			return Math.round(m * Math.log((double) m / zeros));
+		}
+		return Math.round(estimate);
+	}
+
+	/**
+	 * @return A copy of this sketch
+	 */
+	public HyperLogLog copy() {
+		final HyperLogLog copy = new HyperLogLog(mPrecision);
+		System.arraycopy(mRegisters, 0, copy.mRegisters, 0, mRegisters.length);
+		return copy;
+	}
+
+	/**
+	 * Forget everything seen
+	 */
+	public void clear() {
+		Arrays.fill(mRegisters, (byte) 0);
+	}
+
+	/**
+	 * @return Number of hash bits picking the register
+	 */
+	public int getPrecision() {
+		return mPrecision;
+	}
+
+}
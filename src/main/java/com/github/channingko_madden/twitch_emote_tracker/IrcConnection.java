@@ -0,0 +1,240 @@
+package com.github.channingko_madden.twitch_emote_tracker;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * This class is a non-blocking connection to an IRC server, serviced by an IrcSelectorLoop.
+ *
+ * Bytes are read into one reusable direct buffer, and CRLF delimited lines are framed within that buffer and
+ * decoded into one reusable char buffer, which is handed to the LineHandler. No String is created for a line
+ * unless the handler creates one.
+ *
+ * @author channing.ko-madden
+ *
+ */
+public class IrcConnection {
+
+	/** Size of the read buffer. Twitch lines are at most 512 bytes plus 8191 bytes of tags */
+	public static final int READ_BUFFER_SIZE = 64 * 1024;
+
+	/**
+	 * This interface defines a receiver of the lines read from an IrcConnection
+	 */
+	public interface LineHandler {
+
+		/**
+		 * Called on the selector loop thread for each line read
+		 * @param connection Connection the line was read from
+		 * @param line Line without the trailing CRLF. Only valid until this method returns
+		 */
+		void onLine(IrcConnection connection, CharSequence line);
+
+		/**
+		 * Called once when the connection is closed by either end: on the selector loop thread when the server closed
+		 * it or it failed, otherwise on the thread that called close
+		 * @param connection Connection that closed
+		 */
+		void onClosed(IrcConnection connection);
+	}
+
+	private final SocketChannel mChannel;
+	private final IrcSelectorLoop mLoop;
+	private final LineHandler mHandler;
+	/** Bytes read from the server. Holds the start of an incomplete line between reads */
+	private final ByteBuffer mReadBuffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+	/** Decoded characters of the current line, handed to the handler */
+	private final CharBuffer mLine = CharBuffer.allocate(READ_BUFFER_SIZE);
+	private final CharsetDecoder mDecoder = StandardCharsets.UTF_8.newDecoder()
+			.onMalformedInput(CodingErrorAction.REPLACE)
+			.onUnmappableCharacter(CodingErrorAction.REPLACE);
+	/** Set when a line longer than the read buffer is being skipped, up to its end */
+	private boolean mSkippingLine = false;
+	/** Encoded lines waiting to be written */
+	private final Queue<ByteBuffer> mWriteQueue = new ConcurrentLinkedQueue<>();
+	private SelectionKey mKey;
+	private final AtomicBoolean mClosed = new AtomicBoolean();
+
+	/**
+	 * Connect to an IRC server, and start reading lines from it on the selector loop
+	 * @param server Host name of the IRC server
+	 * @param port Port of the IRC server
+	 * @param loop Selector loop that services this connection
+	 * @param handler Receiver of the lines read
+	 * @throws IOException If the connection can not be made
+	 */
+	public IrcConnection(String server, int port, IrcSelectorLoop loop, LineHandler handler) throws IOException {
+		mChannel = SocketChannel.open(new InetSocketAddress(server, port));
+		mChannel.configureBlocking(false);
+		mLoop = loop;
+		mHandler = handler;
+		mLoop.register(this);
+	}
+
+	/**
+	 * Queue a line to be written to the server. May be called from any thread.
+	 * @param line IRC line, without the trailing CRLF
+	 */
+	public void send(String line) {
+		if (mClosed.get()) {
+			return;
+		}
+		mWriteQueue.add(StandardCharsets.UTF_8.encode(line + "\r\n"));
+		if (mLoop.inLoop()) {
+			onWritable();
+		} else {
+			mLoop.requestWrite(this);
+		}
+	}
+
+	/**
+	 * Queue lines to be written to the server together, in one write if the socket accepts it. May be called from any thread.
+	 * @param lines IRC lines, without the trailing CRLF
+	 */
+	public void send(List<String> lines) {
+		if (mClosed.get() || lines.isEmpty()) {
+			return;
+		}
+		final StringBuilder batch = new StringBuilder();
+		for (String line : lines) {
+			batch.append(line).append("\r\n");
+		}
+		mWriteQueue.add(StandardCharsets.UTF_8.encode(batch.toString()));
+		if (mLoop.inLoop()) {
+			onWritable();
+		} else {
+			mLoop.requestWrite(this);
+		}
+	}
+
+	/**
+	 * Close the connection. May be called from any thread, and by several at once (ex. the loop on a read error and
+	 * TwitchSocket.close): only the first closes it and calls the handler's onClosed.
+	 */
+	public void close() {
+		if (!mClosed.compareAndSet(false, true)) {
+			return;
+		}
+		try {
+			mChannel.close(); // also cancels the selection key
+		} catch (IOException exp) {
+			exp.printStackTrace();
+		}
+		mHandler.onClosed(this);
+	}
+
+	/**
+	 * @return True if the connection has been closed
+	 */
+	public boolean isClosed() {
+		return mClosed.get();
+	}
+
+	/**
+	 * Register with the selector. Called on the loop thread.
+	 */
+	void register(Selector selector) {
+		try {
+			mKey = mChannel.register(selector, SelectionKey.OP_READ, this);
+			onWritable(); // lines may have been queued before registering
+		} catch (ClosedChannelException exp) {
+			close();
+		}
+	}
+
+	/**
+	 * Read what is available, and hand every complete line to the handler. Called on the loop thread.
+	 */
+	void onReadable() {
+		try {
+			if (mChannel.read(mReadBuffer) == -1) {
+				close();
+				return;
+			}
+		} catch (IOException exp) {
+			close();
+			return;
+		}
+		mReadBuffer.flip();
+		int lineStart = mReadBuffer.position();
+		final int end = mReadBuffer.limit();
+		for (int i = lineStart; i < end; i++) {
+			if (mReadBuffer.get(i) == '\n') {
+				if (mSkippingLine) {
+					mSkippingLine = false;
+				} else {
+					final int lineEnd = (i > lineStart && mReadBuffer.get(i - 1) == '\r') ? i - 1 : i;
+					deliverLine(lineStart, lineEnd);
+				}
+				lineStart = i + 1;
+				if (mClosed.get()) {
+					return;
+				}
+			}
+		}
+		mReadBuffer.limit(end);
+		mReadBuffer.position(lineStart);
+		if (lineStart == 0 && end == mReadBuffer.capacity()) {
+			// a line longer than the buffer, which no IRC server should send. Drop it
+			mSkippingLine = true;
+			mReadBuffer.clear();
+		} else {
+			mReadBuffer.compact(); // keep the start of an incomplete line for the next read
+		}
+	}
+
+	/**
+	 * Decode the bytes of one line, in place within the read buffer, and hand them to the handler
+	 */
+	private void deliverLine(int start, int end) {
+		mReadBuffer.limit(end);
+		mReadBuffer.position(start);
+		mLine.clear();
+		mDecoder.reset();
+		mDecoder.decode(mReadBuffer, mLine, true);
+		mDecoder.flush(mLine);
+		mLine.flip();
+		mReadBuffer.limit(mReadBuffer.capacity());
+		if (mLine.length() > 0) {
+			mHandler.onLine(this, mLine);
+		}
+	}
+
+	/**
+	 * Write as many waiting lines as the socket accepts, and wait for the socket to be writable if some remain.
+	 * Called on the loop thread.
+	 */
+	void onWritable() {
+		if (mKey == null || mClosed.get()) {
+			return; // not registered yet, lines are written once registered
+		}
+		try {
+			ByteBuffer pending;
+			while ((pending = mWriteQueue.peek()) != null) {
+				mChannel.write(pending);
+				if (pending.hasRemaining()) {
+					mKey.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+					return;
+				}
+				mWriteQueue.poll();
+			}
+			mKey.interestOps(SelectionKey.OP_READ);
+		} catch (IOException exp) {
+			close();
+		}
+	}
+
+}
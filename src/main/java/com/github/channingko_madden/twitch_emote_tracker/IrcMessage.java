@@ -0,0 +1,291 @@
+package com.github.channingko_madden.twitch_emote_tracker;
+
+/**
+ * This class is a reusable, mutable view of one parsed IRC line.
+ *
+ * Parsing records where the prefix, command, params and trailing param start and end within the line, instead of
+ * creating Strings for them, so one instance can parse any number of lines without allocating. Line format:
+ * <pre>
+ * [@tags SPACE] [:prefix SPACE] command [SPACE param]* [SPACE :trailing]
+ * ex. :twitch_lurker!twitch_lurker@twitch_lurker.tmi.twitch.tv PRIVMSG #channel_name :EZ Clap!
+ * ex. @emotes=25:0-4;mod=0 :twitch_lurker!twitch_lurker@twitch_lurker.tmi.twitch.tv PRIVMSG #channel_name :Kappa
+ * </pre>
+ * The offsets are only valid while the parsed line is unchanged.
+ *
+ * @author channing.ko-madden
+ *
+ */
+public class IrcMessage {
+
+	/** Maximum number of params before the trailing param allowed by IRC */
+	public static final int MAX_PARAMS = 15;
+
+	/** The parsed line */
+	private CharSequence mLine;
+	/** Start and end of the IRCv3 tags, without the leading '@'. Start is -1 if there are no tags */
+	private int mTagsStart = -1;
+	private int mTagsEnd = -1;
+	/** Start and end of the value of the tag found by the last call to findTag */
+	private int mTagValueStart = -1;
+	private int mTagValueEnd = -1;
+	/** Start and end of the prefix, without the leading ':'. Start is -1 if there is no prefix */
+	private int mPrefixStart = -1;
+	private int mPrefixEnd = -1;
+	/** End of the nick within the prefix (ex. the '!' of nick!user@host) */
+	private int mNickEnd = -1;
+	/** Start and end of the command */
+	private int mCommandStart = -1;
+	private int mCommandEnd = -1;
+	/** Start and end of each param before the trailing param */
+	private final int[] mParamStarts = new int[MAX_PARAMS];
+	private final int[] mParamEnds = new int[MAX_PARAMS];
+	private int mParamCount = 0;
+	/** Start and end of the trailing param, without the leading ':'. Start is -1 if there is no trailing param */
+	private int mTrailingStart = -1;
+	private int mTrailingEnd = -1;
+
+	/**
+	 * Parse an IRC line
+	 * @param line Line without the trailing CRLF
+	 * @return True if the line has a command, false if it is not a valid IRC line
+	 */
+	public boolean parse(CharSequence line) {
+		mLine = line;
+		mTagsStart = mTagsEnd = -1;
+		mTagValueStart = mTagValueEnd = -1;
+		mPrefixStart = mPrefixEnd = mNickEnd = -1;
+		mCommandStart = mCommandEnd = -1;
+		mParamCount = 0;
+		mTrailingStart = mTrailingEnd = -1;
+
+		final int length = line.length();
+		int pos = 0;
+		if (pos < length && line.charAt(pos) == '@') {
+			mTagsStart = pos + 1;
+			pos = indexOfSpace(line, mTagsStart, length);
+			mTagsEnd = pos;
+			pos = skipSpaces(line, pos, length);
+		}
+		if (pos < length && line.charAt(pos) == ':') {
+			mPrefixStart = pos + 1;
+			pos = indexOfSpace(line, mPrefixStart, length);
+			mPrefixEnd = pos;
+			mNickEnd = mPrefixStart;
+			while (mNickEnd < mPrefixEnd && line.charAt(mNickEnd) != '!' && line.charAt(mNickEnd) != '@') {
+				mNickEnd++;
+			}
+			pos = skipSpaces(line, pos, length);
+		}
+
+		mCommandStart = pos;
+		pos = indexOfSpace(line, pos, length);
+		mCommandEnd = pos;
+		if (mCommandEnd == mCommandStart) {
+			return false;
+		}
+
+		while ((pos = skipSpaces(line, pos, length)) < length) {
+			if (line.charAt(pos) == ':' || mParamCount == MAX_PARAMS) {
+				mTrailingStart = line.charAt(pos) == ':' ? pos + 1 : pos;
+				mTrailingEnd = length;
+				break;
+			}
+			mParamStarts[mParamCount] = pos;
+			pos = indexOfSpace(line, pos, length);
+			mParamEnds[mParamCount] = pos;
+			mParamCount++;
+		}
+		return true;
+	}
+
+	/**
+	 * Copy the result of parsing a line from another view, for an identical copy of that line.
+	 * Cheaper than parsing the copy again.
+	 *
+	 * @param other View that parsed the original line
+	 * @param line Identical copy of the original line
+	 */
+	public void copyFrom(IrcMessage other, CharSequence line) {
+		mLine = line;
+		mTagsStart = other.mTagsStart;
+		mTagsEnd = other.mTagsEnd;
+		mTagValueStart = other.mTagValueStart;
+		mTagValueEnd = other.mTagValueEnd;
+		mPrefixStart = other.mPrefixStart;
+		mPrefixEnd = other.mPrefixEnd;
+		mNickEnd = other.mNickEnd;
+		mCommandStart = other.mCommandStart;
+		mCommandEnd = other.mCommandEnd;
+		mParamCount = other.mParamCount;
+		System.arraycopy(other.mParamStarts, 0, mParamStarts, 0, mParamCount);
+		System.arraycopy(other.mParamEnds, 0, mParamEnds, 0, mParamCount);
+		mTrailingStart = other.mTrailingStart;
+		mTrailingEnd = other.mTrailingEnd;
+	}
+
+	/**
+	 * @return The parsed line
+	 */
+	public CharSequence getLine() {
+		return mLine;
+	}
+
+	/**
+	 * @param command Command to compare with (ex. PRIVMSG)
+	 * @return True if the line's command is exactly the given command
+	 */
+	public boolean isCommand(String command) {
+		return TextIndex.regionEquals(command, mLine, mCommandStart, mCommandEnd);
+	}
+
+	/**
+	 * @return True if the line has IRCv3 tags
+	 */
+	public boolean hasTags() {
+		return mTagsStart != -1;
+	}
+
+	/**
+	 * Find a tag by its key. The position of its value is read with getTagValueStart and getTagValueEnd.
+	 *
+	 * @param key Key of the tag (ex. emotes)
+	 * @return True if the line has the tag, false otherwise
+	 */
+	public boolean findTag(String key) {
+		mTagValueStart = mTagValueEnd = -1;
+		int pos = mTagsStart;
+		while (pos != -1 && pos < mTagsEnd) {
+			int tagEnd = pos;
+			while (tagEnd < mTagsEnd && mLine.charAt(tagEnd) != ';') {
+				tagEnd++;
+			}
+			final int keyEnd = pos + key.length();
+			if (keyEnd <= tagEnd && TextIndex.regionEquals(key, mLine, pos, keyEnd)
+					&& (keyEnd == tagEnd || mLine.charAt(keyEnd) == '=')) {
+				mTagValueStart = Math.min(keyEnd + 1, tagEnd); // a key without '=' has an empty value
+				mTagValueEnd = tagEnd;
+				return true;
+			}
+			pos = tagEnd + 1;
+		}
+		return false;
+	}
+
+	/**
+	 * @return Start of the value of the tag found by the last call to findTag, or -1 if it was not found
+	 */
+	public int getTagValueStart() {
+		return mTagValueStart;
+	}
+
+	/**
+	 * @return End of the value of the tag found by the last call to findTag, or -1 if it was not found
+	 */
+	public int getTagValueEnd() {
+		return mTagValueEnd;
+	}
+
+	/**
+	 * @return True if the line has a prefix
+	 */
+	public boolean hasPrefix() {
+		return mPrefixStart != -1;
+	}
+
+	/**
+	 * @return Start of the nick within the prefix, or -1 if there is no prefix
+	 */
+	public int getNickStart() {
+		return mPrefixStart;
+	}
+
+	/**
+	 * @return End of the nick within the prefix, or -1 if there is no prefix
+	 */
+	public int getNickEnd() {
+		return mNickEnd;
+	}
+
+	/**
+	 * @return Number of params before the trailing param
+	 */
+	public int getParamCount() {
+		return mParamCount;
+	}
+
+	/**
+	 * @param i Param number, from 0 to getParamCount (exclusive)
+	 * @return Start of the param
+	 */
+	public int getParamStart(int i) {
+		return mParamStarts[i];
+	}
+
+	/**
+	 * @param i Param number, from 0 to getParamCount (exclusive)
+	 * @return End of the param
+	 */
+	public int getParamEnd(int i) {
+		return mParamEnds[i];
+	}
+
+	/**
+	 * @return True if the line has a trailing param
+	 */
+	public boolean hasTrailing() {
+		return mTrailingStart != -1;
+	}
+
+	/**
+	 * @return Start of the trailing param, without the leading ':', or -1 if there is none
+	 */
+	public int getTrailingStart() {
+		return mTrailingStart;
+	}
+
+	/**
+	 * @return End of the trailing param, or -1 if there is none
+	 */
+	public int getTrailingEnd() {
+		return mTrailingEnd;
+	}
+
+	/**
+	 * @param text Text to compare with
+	 * @return True if the trailing param starts with the given text
+	 */
+	public boolean trailingStartsWith(String text) {
+		return hasTrailing() && mTrailingEnd - mTrailingStart >= text.length()
+				&& TextIndex.regionEquals(text, mLine, mTrailingStart, mTrailingStart + text.length());
+	}
+
+	/**
+	 * @return The trailing param as a new String, or null if there is none. Allocates, so keep off the hot path
+	 */
+	public String getTrailing() {
+		return hasTrailing() ? mLine.subSequence(mTrailingStart, mTrailingEnd).toString() : null;
+	}
+
+	/**
+	 * @return Position of the next space at or after start, or end if there is none
+	 */
+	private static int indexOfSpace(CharSequence line, int start, int end) {
+		int pos = start;
+		while (pos < end && line.charAt(pos) != ' ') {
+			pos++;
+		}
+		return pos;
+	}
+
+	/**
+	 * @return Position of the first character at or after start that is not a space, or end if there is none
+	 */
+	private static int skipSpaces(CharSequence line, int start, int end) {
+		int pos = start;
+		while (pos < end && line.charAt(pos) == ' ') {
+			pos++;
+		}
+		return pos;
+	}
+
+}
@@ -0,0 +1,123 @@
+package com.github.channingko_madden.twitch_emote_tracker;
+
+import java.io.IOException;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * This class runs one thread that services many IRC connections with a Selector.
+ *
+ * Connections are registered from any thread, and their reads, line framing and writes are all done on the loop thread.
+ * Line handlers are called on the loop thread, so they should hand lines off quickly (ex. to a MessageRingBuffer)
+ * rather than processing them.
+ *
+ * @author channing.ko-madden
+ *
+ */
+public class IrcSelectorLoop implements Runnable {
+
+	private final Selector mSelector;
+	/** Connections waiting to be registered with the selector */
+	private final Queue<IrcConnection> mPendingRegistrations = new ConcurrentLinkedQueue<>();
+	/** Connections with lines waiting to be written */
+	private final Queue<IrcConnection> mPendingWrites = new ConcurrentLinkedQueue<>();
+	private final Thread mThread;
+	private volatile boolean mRunning = true;
+
+	/**
+	 * Constructor. Starts the loop thread.
+	 * @param name Name of the loop thread
+	 * @throws IOException If the selector can not be opened
+	 */
+	public IrcSelectorLoop(String name) throws IOException {
+		mSelector = Selector.open();
+		mThread = new Thread(this, name);
+		mThread.start();
+	}
+
+	/**
+	 * Start servicing a connection. May be called from any thread.
+	 * @param connection Connection to service
+	 */
+	void register(IrcConnection connection) {
+		mPendingRegistrations.add(connection);
+		mSelector.wakeup();
+	}
+
+	/**
+	 * Ask the loop to write the lines waiting in a connection. May be called from any thread.
+	 * @param connection Connection with lines to write
+	 */
+	void requestWrite(IrcConnection connection) {
+		mPendingWrites.add(connection);
+		mSelector.wakeup();
+	}
+
+	/**
+	 * @return True if called from the loop thread
+	 */
+	boolean inLoop() {
+		return Thread.currentThread() == mThread;
+	}
+
+	/**
+	 * Stop the loop thread and close all of its connections.
+	 * The loop thread is interrupted, in case a line handler is blocked handing off a line.
+	 */
+	public void close() {
+		mRunning = false;
+		mThread.interrupt();
+	}
+
+	@Override
+	public void run() {
+		try {
+			while (mRunning) {
+				mSelector.select();
+
+				IrcConnection connection;
+				while ((connection = mPendingRegistrations.poll()) != null) {
+					connection.register(mSelector);
+				}
+				while ((connection = mPendingWrites.poll()) != null) {
+					connection.onWritable();
+				}
+
+				final Iterator<SelectionKey> keys = mSelector.selectedKeys().iterator();
+				while (keys.hasNext()) {
+					final SelectionKey key = keys.next();
+					keys.remove();
+					final IrcConnection selected = (IrcConnection) key.attachment();
+					try {
+						if (key.isReadable()) {
+							selected.onReadable();
+						}
+						if (key.isValid() && key.isWritable()) {
+							selected.onWritable();
+						}
+					} catch (CancelledKeyException exp) {
+						// connection was closed while handling the key
+					}
+				}
+			}
+		} catch (IOException exp) {
+			exp.printStackTrace();
+		} finally {
+			for (SelectionKey key : new ArrayList<>(mSelector.keys())) {
+				((IrcConnection) key.attachment()).close();
+			}
+			try {
+				mSelector.close();
+			} catch (IOException exp) {
+				exp.printStackTrace();
+			}
+			System.out.println("Selector loop over");
+		}
+	}
+
+}
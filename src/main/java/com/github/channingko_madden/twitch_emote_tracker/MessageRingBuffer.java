@@ -0,0 +1,243 @@
+package com.github.channingko_madden.twitch_emote_tracker;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Bounded, lock-free queue for handing messages from one producer thread to one consumer thread
+ * (ex. from the thread reading the Twitch IRC to the thread processing chat messages).
+ *
+ * Only one thread may call offer, and only one thread may call poll/take. What happens when the queue is
+ * full is decided by the OverflowPolicy. The current depth and the number of dropped messages can be read
+ * from any thread.
+ *
+ * @author channing.ko-madden
+ *
+ * @param <E> Type of message held by the queue
+ */
+public class MessageRingBuffer<E> {
+
+	/**
+	 * This enum denotes what the producer does when the queue is full
+	 * BLOCK - Wait until the consumer makes room
+	 * DROP_OLDEST - Discard the oldest message in the queue to make room for the new one
+	 * DROP_NEWEST - Discard the new message
+	 * @author channing.ko-madden
+	 *
+	 */
+	public enum OverflowPolicy {
+		BLOCK,
+		DROP_OLDEST,
+		DROP_NEWEST
+	}
+
+	/** Slots holding the messages. Slots are not cleared when a message is removed, the old message is released once the producer wraps around to it */
+	private final AtomicReferenceArray<E> mBuffer;
+	/** Number of slots, always a power of two */
+	private final int mCapacity;
+	/** Mask used to wrap a sequence number into a slot index */
+	private final int mMask;
+	private final OverflowPolicy mPolicy;
+	/** Sequence number of the next message to remove. Advanced by the consumer, or by the producer when dropping the oldest message */
+	private final AtomicLong mHead = new AtomicLong();
+	/** Sequence number of the next slot to fill. Only advanced by the producer */
+	private final AtomicLong mTail = new AtomicLong();
+	/** Number of messages dropped because the queue was full */
+	private final AtomicLong mDropped = new AtomicLong();
+	/** Consumer thread parked waiting for a message, or null */
+	private volatile Thread mWaitingConsumer;
+	/** Producer thread parked waiting for room, or null */
+	private volatile Thread mWaitingProducer;
+
+	/**
+	 * Constructor
+	 * @param capacity Maximum number of messages held, rounded up to the next power of two
+	 * @param policy What to do when a message is offered to a full queue
+	 */
+	public MessageRingBuffer(int capacity, OverflowPolicy policy) {
+		if (capacity < 1 || capacity > (1 << 30)) {
+			throw new IllegalArgumentException("Invalid capacity: " + capacity);
+		}
+		mCapacity = Integer.highestOneBit(capacity) == capacity ? capacity : Integer.highestOneBit(capacity) << 1;
+		mMask = mCapacity - 1;
+		mBuffer = new AtomicReferenceArray<E>(mCapacity);
+		mPolicy = policy;
+	}
+
+	/**
+	 * Add a message to the queue. Must only be called by the producer thread.
+	 *
+	 * @param message Message to add
+	 * @return True if the message was added, false if it was dropped
+	 * @throws InterruptedException If interrupted while waiting for room with the BLOCK policy
+	 */
+	public boolean offer(E message) throws InterruptedException {
+		final long tail = mTail.get();
+		long head;
+		while (tail - (head = mHead.get()) >= mCapacity) {
+			switch (mPolicy) {
+				case DROP_NEWEST: {
+					mDropped.incrementAndGet();
+					return false;
+				} case DROP_OLDEST: {
+					// race the consumer for the oldest message, if the consumer wins there is room anyway
+					if (mHead.compareAndSet(head, head + 1)) {
+						mDropped.incrementAndGet();
+					}
+					break;
+				} default: {
+					mWaitingProducer = Thread.currentThread();
+					if (tail - mHead.get() >= mCapacity) {
+						LockSupport.park(this);
+					}
+					mWaitingProducer = null;
+					if (Thread.interrupted()) {
+						throw new InterruptedException();
+					}
+					break;
+				}
+			}
+		}
+		mBuffer.set((int) tail & mMask, message);
+		mTail.set(tail + 1);
+		final Thread consumer = mWaitingConsumer;
+		if (consumer != null) {
+			LockSupport.unpark(consumer);
+		}
+		return true;
+	}
+
+	/**
+	 * Remove the oldest message from the queue. Must only be called by the consumer thread.
+	 * @return The oldest message, or null if the queue is empty
+	 */
+	public E poll() {
+		while (true) {
+			final long head = mHead.get();
+			if (head >= mTail.get()) {
+				return null;
+			}
+			final E message = mBuffer.get((int) head & mMask);
+			// fails only if the producer dropped this message, in which case try the next one
+			if (mHead.compareAndSet(head, head + 1)) {
+				final Thread producer = mWaitingProducer;
+				if (producer != null) {
+					LockSupport.unpark(producer);
+				}
+				return message;
+			}
+		}
+	}
+
+	/**
+	 * Remove the oldest message from the queue, waiting for a message if the queue is empty.
+	 * Must only be called by the consumer thread.
+	 *
+	 * @return The oldest message
+	 * @throws InterruptedException If interrupted while waiting
+	 */
+	public E take() throws InterruptedException {
+		E message;
+		while ((message = poll()) == null) {
+			mWaitingConsumer = Thread.currentThread();
+			if (isEmpty()) {
+				LockSupport.park(this);
+			}
+			mWaitingConsumer = null;
+			if (Thread.interrupted()) {
+				throw new InterruptedException();
+			}
+		}
+		return message;
+	}
+
+	/**
+	 * Remove up to max of the oldest messages from the queue in one step. Must only be called by the consumer thread.
+	 *
+	 * @param batch Array the messages are copied into, starting at index 0
+	 * @param max Maximum number of messages to remove, must not be larger than the batch array
+	 * @return The number of messages removed, 0 if the queue is empty
+	 */
+	public int drainTo(E[] batch, int max) {
+		while (true) {
+			final long head = mHead.get();
+			final int count = (int) Math.min(max, mTail.get() - head);
+			if (count <= 0) {
+				return 0;
+			}
+			for (int i = 0; i < count; i++) {
+				batch[i] = mBuffer.get((int) (head + i) & mMask);
+			}
+			// fails only if the producer dropped some of these messages, in which case copy them again
+			if (mHead.compareAndSet(head, head + count)) {
+				final Thread producer = mWaitingProducer;
+				if (producer != null) {
+					LockSupport.unpark(producer);
+				}
+				return count;
+			}
+		}
+	}
+
+	/**
+	 * Remove up to max of the oldest messages from the queue in one step, waiting for a message if the queue is empty.
+	 * Must only be called by the consumer thread.
+	 *
+	 * @param batch Array the messages are copied into, starting at index 0
+	 * @param max Maximum number of messages to remove, must not be larger than the batch array
+	 * @return The number of messages removed, at least 1
+	 * @throws InterruptedException If interrupted while waiting
+	 */
+	public int takeBatch(E[] batch, int max) throws InterruptedException {
+		int count;
+		while ((count = drainTo(batch, max)) == 0) {
+			mWaitingConsumer = Thread.currentThread();
+			if (isEmpty()) {
+				LockSupport.park(this);
+			}
+			mWaitingConsumer = null;
+			if (Thread.interrupted()) {
+				throw new InterruptedException();
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * @return True if the queue holds no messages
+	 */
+	public boolean isEmpty() {
+		return mHead.get() >= mTail.get();
+	}
+
+	/**
+	 * @return The number of messages currently in the queue
+	 */
+	public int size() {
+		final long head = mHead.get();
+		return (int) Math.max(0, mTail.get() - head);
+	}
+
+	/**
+	 * @return The maximum number of messages the queue holds
+	 */
+	public int capacity() {
+		return mCapacity;
+	}
+
+	/**
+	 * @return The number of messages dropped because the queue was full
+	 */
+	public long getDroppedCount() {
+		return mDropped.get();
+	}
+
+	/**
+	 * @return What happens when a message is offered to a full queue
+	 */
+	public OverflowPolicy getPolicy() {
+		return mPolicy;
+	}
+
+}
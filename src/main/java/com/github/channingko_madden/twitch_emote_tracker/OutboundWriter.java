@@ -0,0 +1,214 @@
+package com.github.channingko_madden.twitch_emote_tracker;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * This class sends chat messages (ex. replies to chat commands) on its own thread, at a rate Twitch accepts.
+ *
+ * Messages are queued by the processing threads, which never wait for the socket or the rate limit. A dedicated
+ * writer thread takes as many waiting messages as the rate limit allows and sends them to the LineSink together,
+ * so a burst is written in one go. The rate limit is a token bucket of TWITCH_MESSAGE_LIMIT tokens, where each
+ * token comes back TWITCH_LIMIT_PERIOD_MILLIS after it is spent, matching Twitch's limit of 20 messages per 30
+ * seconds in any window so the bot is not muted.
+ *
+ * Messages queued with the same coalesce key (ex. replies to "!emotecount" for the same emote) while an earlier one
+ * is still waiting replace it, so a burst of identical queries gets one reply with the latest count.
+ *
+ * Only chat messages go through this queue. PONG and other IRC commands are sent straight to the connection.
+ *
+ * @author channing.ko-madden
+ *
+ */
+public class OutboundWriter implements ChatPipeline.ReplySink {
+
+	/** Messages a regular user can send to Twitch chat within TWITCH_LIMIT_PERIOD_MILLIS */
+	public static final int TWITCH_MESSAGE_LIMIT = 20;
+	/** Period of Twitch's chat rate limit */
+	public static final long TWITCH_LIMIT_PERIOD_MILLIS = 30 * 1000;
+	/** Default number of messages that can wait to be sent. More are dropped */
+	public static final int DEFAULT_MAX_PENDING = 100;
+
+	/**
+	 * This interface defines where the messages are written
+	 */
+	public interface LineSink {
+
+		/**
+		 * Called on the writer thread with the messages to send now
+		 * @param lines IRC lines, without the trailing CRLF
+		 */
+		void sendLines(List<String> lines);
+	}
+
+	private final LineSink mSink;
+	private final int mMaxPending;
+	/** Messages waiting to be sent by coalesce key, oldest first. Guarded by this */
+	private final LinkedHashMap<String, String> mPending = new LinkedHashMap<>();
+	/** Time each token was last spent, as a ring. Empty if there is no rate limit. Guarded by this */
+	private long[] mSpentTimes;
+	/** Index of the oldest spent token in mSpentTimes */
+	private int mNextToken = 0;
+	private long mPeriodMillis;
+	private final Thread mThread;
+
+	private long mSent = 0;
+	private long mCoalesced = 0;
+	private long mDropped = 0;
+
+	/**
+	 * Constructor. Starts the writer, with Twitch's rate limit
+	 * @param sink Where the messages are written
+	 */
+	public OutboundWriter(LineSink sink) {
+		this(sink, TWITCH_MESSAGE_LIMIT, TWITCH_LIMIT_PERIOD_MILLIS, DEFAULT_MAX_PENDING);
+	}
+
+	/**
+	 * Constructor. Starts the writer
+	 * @param sink Where the messages are written
+	 * @param messageLimit Messages that can be sent within periodMillis, or 0 for no limit
+	 * @param periodMillis Period of the rate limit
+	 * @param maxPending Number of messages that can wait to be sent. More are dropped
+	 */
+	public OutboundWriter(LineSink sink, int messageLimit, long periodMillis, int maxPending) {
+		if (maxPending < 1) {
+			throw new IllegalArgumentException("Invalid pending message count: " + maxPending);
+		}
+		mSink = sink;
+		mMaxPending = maxPending;
+		setLimit(messageLimit, periodMillis);
+		mThread = new Thread(new Writer(), "OutboundWriter");
+		mThread.start();
+	}
+
+	/**
+	 * Change the rate limit (ex. 100 messages per 30 seconds when the bot is a moderator of every channel)
+	 * @param messageLimit Messages that can be sent within periodMillis, or 0 for no limit
+	 * @param periodMillis Period of the rate limit
+	 */
+	public synchronized void setLimit(int messageLimit, long periodMillis) {
+		if (messageLimit < 0 || periodMillis < 0) {
+			throw new IllegalArgumentException("Invalid rate limit: " + messageLimit + " per " + periodMillis + " ms");
+		}
+		mSpentTimes = new long[messageLimit];
+		Arrays.fill(mSpentTimes, Long.MIN_VALUE / 2); // every token is available
+		mNextToken = 0;
+		mPeriodMillis = periodMillis;
+		notifyAll();
+	}
+
+	@Override
+	public void sendLine(String line) {
+		sendLine(line, line); // identical messages coalesce
+	}
+
+	@Override
+	public synchronized void sendLine(String line, String coalesceKey) {
+		if (mPending.containsKey(coalesceKey)) {
+			mPending.put(coalesceKey, line); // keeps its place in the queue
+			mCoalesced++;
+		} else if (mPending.size() >= mMaxPending) {
+			mDropped++;
+		} else {
+			mPending.put(coalesceKey, line);
+			notifyAll();
+		}
+	}
+
+	/**
+	 * Stop the writer. Messages still waiting are not sent
+	 */
+	public void close() {
+		mThread.interrupt();
+	}
+
+	/**
+	 * @return Number of messages waiting to be sent
+	 */
+	public synchronized int getPendingCount() {
+		return mPending.size();
+	}
+
+	/**
+	 * @return Number of messages sent
+	 */
+	public synchronized long getSentCount() {
+		return mSent;
+	}
+
+	/**
+	 * @return Number of messages replaced by a later message with the same coalesce key before being sent
+	 */
+	public synchronized long getCoalescedCount() {
+		return mCoalesced;
+	}
+
+	/**
+	 * @return Number of messages dropped because too many were waiting to be sent
+	 */
+	public synchronized long getDroppedCount() {
+		return mDropped;
+	}
+
+	/**
+	 * Wait until there are messages to send and tokens to send them with, and take them from the queue
+	 * @return Messages to send now, at least one
+	 */
+	private synchronized List<String> takeSendable() throws InterruptedException {
+		while (true) {
+			if (mPending.isEmpty()) {
+				wait();
+				continue;
+			}
+			final long now = System.currentTimeMillis();
+			int tokens = mPending.size();
+			if (mSpentTimes.length > 0) {
+				tokens = 0;
+				while (tokens < mPending.size() && tokens < mSpentTimes.length
+						&& now - mSpentTimes[(mNextToken + tokens) % mSpentTimes.length] >= mPeriodMillis) {
+					tokens++;
+				}
+				if (tokens == 0) {
+					wait(Math.max(1, mSpentTimes[mNextToken] + mPeriodMillis - now)); // until the oldest token is back
+					continue;
+				}
+			}
+			final List<String> lines = new ArrayList<>(tokens);
+			final Iterator<String> pending = mPending.values().iterator();
+			for (int i = 0; i < tokens; i++) {
+				lines.add(pending.next());
+				pending.remove();
+				if (mSpentTimes.length > 0) {
+					mSpentTimes[mNextToken] = now;
+					mNextToken = (mNextToken + 1) % mSpentTimes.length;
+				}
+			}
+			mSent += tokens;
+			return lines;
+		}
+	}
+
+	/**
+	 * Sends the waiting messages as the rate limit allows
+	 */
+	private class Writer implements Runnable {
+
+		@Override
+		public void run() {
+			try {
+				while (true) {
+					mSink.sendLines(takeSendable());
+				}
+			} catch (InterruptedException exp) {
+				// closing
+			} finally {
+				System.out.println("Outbound writer over");
+			}
+		}
+	}
+
+}
@@ -0,0 +1,30 @@
+package com.github.channingko_madden.twitch_emote_tracker;
+
+/**
+ * This class is the "!rate [emote]" command, which replies with how often a tracked emote was posted over the last
+ * minute and the last hour (RateHistory).
+ *
+ * @author channing.ko-madden
+ *
+ */
+public class RateCommand implements ChatCommand {
+
+	@Override
+	public String getName() {
+		return "!rate";
+	}
+
+	@Override
+	public void execute(ChannelTracker channel, String argument, Reply reply) {
+		final int index = channel.indexOfEmote(argument);
+		if (index == -1) {
+			reply.send(channel, channel.createUniqueMessage(":( " + argument + " is not being tracked", ":("), argument);
+			return;
+		}
+		final EmoteValue emote = channel.getEmotes().get(index);
+		reply.send(channel, channel.createUniqueMessage(emote.string() + " " + emote.getCountLastMinute()
+				+ " in the last minute, " + emote.getCountLastHour() + " in the last hour", emote.string()),
+				getName() + " " + emote.string());
+	}
+
+}
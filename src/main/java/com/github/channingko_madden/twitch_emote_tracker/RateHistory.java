@@ -0,0 +1,148 @@
+package com.github.channingko_madden.twitch_emote_tracker;
+
+import java.util.Arrays;
+
+/**
+ * This class keeps a rolling history of how many times something happened (ex. an emote was posted), in fixed
+ * time buckets at three resolutions: 60 one second buckets, 60 one minute buckets and 24 one hour buckets.
+ *
+ * Adding occurrences and reading the sum of a whole window (last minute, hour or day) are O(1), and the memory
+ * used is the same no matter how long the history runs. Buckets that fall out of a window are cleared lazily
+ * as time moves forward, when the history is next added to or read.
+ *
+ * Times are passed in, so a history can be filled from recorded chat as well as live chat.
+ *
+ * @author channing.ko-madden
+ *
+ */
+public class RateHistory {
+
+	public static final long SECOND_MILLIS = 1000;
+	public static final long MINUTE_MILLIS = 60 * SECOND_MILLIS;
+	public static final long HOUR_MILLIS = 60 * MINUTE_MILLIS;
+
+	private final Ring mSeconds = new Ring(60, SECOND_MILLIS);
+	private final Ring mMinutes = new Ring(60, MINUTE_MILLIS);
+	private final Ring mHours = new Ring(24, HOUR_MILLIS);
+
+	/**
+	 * Add occurrences at a point in time. Occurrences older than a window are not added to that window.
+	 * @param timeMillis Time of the occurrences, in milliseconds since the epoch
+	 * @param occurrences Number of occurrences
+	 */
+	public synchronized void add(long timeMillis, long occurrences) {
+		mSeconds.add(timeMillis, occurrences);
+		mMinutes.add(timeMillis, occurrences);
+		mHours.add(timeMillis, occurrences);
+	}
+
+	/**
+	 * @param nowMillis Current time, in milliseconds since the epoch
+	 * @return Occurrences within the last minute, in one second buckets
+	 */
+	public synchronized long getLastMinute(long nowMillis) {
+		return mSeconds.sum(nowMillis);
+	}
+
+	/**
+	 * @param nowMillis Current time, in milliseconds since the epoch
+	 * @return Occurrences within the last hour, in one minute buckets
+	 */
+	public synchronized long getLastHour(long nowMillis) {
+		return mMinutes.sum(nowMillis);
+	}
+
+	/**
+	 * @param nowMillis Current time, in milliseconds since the epoch
+	 * @return Occurrences within the last day, in one hour buckets
+	 */
+	public synchronized long getLastDay(long nowMillis) {
+		return mHours.sum(nowMillis);
+	}
+
+	/**
+	 * @param nowMillis Current time, in milliseconds since the epoch
+	 * @param secondsAgo Which second to read, 0 is the current second, up to 59
+	 * @return Occurrences within one second bucket
+	 */
+	public synchronized long getSecond(long nowMillis, int secondsAgo) {
+		return mSeconds.bucket(nowMillis, secondsAgo);
+	}
+
+	/**
+	 * Clear the history
+	 */
+	public synchronized void clear() {
+		mSeconds.clear();
+		mMinutes.clear();
+		mHours.clear();
+	}
+
+	/**
+	 * Ring of fixed time buckets, with a running sum of all buckets in the ring
+	 */
+	private static class Ring {
+
+		private final long[] mBuckets;
+		private final long mBucketMillis;
+		/** Absolute number (time / bucket length) of the newest bucket */
+		private long mCurrent = Long.MIN_VALUE;
+		/** Sum of all buckets */
+		private long mSum = 0;
+
+		Ring(int size, long bucketMillis) {
+			mBuckets = new long[size];
+			mBucketMillis = bucketMillis;
+		}
+
+		void add(long timeMillis, long occurrences) {
+			final long bucket = Math.floorDiv(timeMillis, mBucketMillis);
+			advance(bucket);
+			if (mCurrent - bucket < mBuckets.length) { // late occurrences are added if their bucket is still in the ring
+				mBuckets[slot(bucket)] += occurrences;
+				mSum += occurrences;
+			}
+		}
+
+		long sum(long nowMillis) {
+			advance(Math.floorDiv(nowMillis, mBucketMillis));
+			return mSum;
+		}
+
+		long bucket(long nowMillis, int ago) {
+			advance(Math.floorDiv(nowMillis, mBucketMillis));
+			return (ago < 0 || ago >= mBuckets.length) ? 0 : mBuckets[slot(mCurrent - ago)];
+		}
+
+		void clear() {
+			Arrays.fill(mBuckets, 0);
+			mSum = 0;
+		}
+
+		/**
+		 * Move the newest bucket forward to the given bucket, clearing the buckets that fall out of the ring.
+		 * Clears at most the whole ring, however far time has moved.
+		 */
+		private void advance(long bucket) {
+			if (mCurrent == Long.MIN_VALUE) {
+				mCurrent = bucket;
+				return;
+			}
+			if (bucket <= mCurrent) {
+				return;
+			}
+			final long steps = Math.min(bucket - mCurrent, mBuckets.length);
+			for (long i = 1; i <= steps; i++) {
+				final int slot = slot(mCurrent + i);
+				mSum -= mBuckets[slot];
+				mBuckets[slot] = 0;
+			}
+			mCurrent = bucket;
+		}
+
+		private int slot(long bucket) {
+			return (int) Math.floorMod(bucket, (long) mBuckets.length);
+		}
+	}
+
+}
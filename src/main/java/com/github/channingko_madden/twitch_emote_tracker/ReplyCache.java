@@ -0,0 +1,77 @@
+package com.github.channingko_madden.twitch_emote_tracker;
+
+import java.util.Arrays;
+
+/**
+ * This class collapses the replies to repeated "!emotecount" queries of one channel, by emote index.
+ *
+ * An emote is answered at most once per reply interval, so a burst of viewers asking for the same emote gets one
+ * reply instead of one each. The text of the last reply is kept, and reused while the count has not changed.
+ *
+ * It is only used by the thread running chat commands (CommandDispatcher).
+ *
+ * @author channing.ko-madden
+ *
+ */
+class ReplyCache {
+
+	/** Default time after answering an emote during which queries for it are not answered again */
+	public static final long DEFAULT_REPLY_INTERVAL_MILLIS = 5000;
+
+	/** Time each emote was last answered */
+	private final long[] mRepliedAt;
+	/** Count given in the last reply for each emote */
+	private final long[] mRepliedCounts;
+	/** Text of the last reply for each emote, null if never answered */
+	private final String[] mReplies;
+	private long mReplyIntervalMillis = DEFAULT_REPLY_INTERVAL_MILLIS;
+	private long mCollapsed = 0;
+
+	/**
+	 * Constructor
+	 * @param size Number of emotes
+	 */
+	public ReplyCache(int size) {
+		mRepliedAt = new long[size];
+		Arrays.fill(mRepliedAt, Long.MIN_VALUE / 2);
+		mRepliedCounts = new long[size];
+		mReplies = new String[size];
+	}
+
+	/**
+	 * @param millis Time after answering an emote during which queries for it are not answered again, 0 to answer every query
+	 */
+	public void setReplyInterval(long millis) {
+		mReplyIntervalMillis = millis;
+	}
+
+	/**
+	 * Get the reply to a query, unless the emote was answered within the reply interval
+	 *
+	 * @param index Emote index
+	 * @param emote The queried emote
+	 * @param nowMillis Time of the query
+	 * @return Reply giving the count of the emote, or null if no reply should be sent
+	 */
+	public String reply(int index, EmoteValue emote, long nowMillis) {
+		if (nowMillis - mRepliedAt[index] < mReplyIntervalMillis) {
+			mCollapsed++;
+			return null;
+		}
+		mRepliedAt[index] = nowMillis;
+		final long count = emote.getCount();
+		if (mReplies[index] == null || mRepliedCounts[index] != count) {
+			mReplies[index] = count + " " + emote.string();
+			mRepliedCounts[index] = count;
+		}
+		return mReplies[index];
+	}
+
+	/**
+	 * @return Number of queries that were not answered, because the emote had just been answered
+	 */
+	public long getCollapsedCount() {
+		return mCollapsed;
+	}
+
+}
@@ -0,0 +1,50 @@
+package com.github.channingko_madden.twitch_emote_tracker;
+
+/**
+ * This class is the "!since [emote]" command, which replies with how long ago a tracked emote was last posted.
+ *
+ * @author channing.ko-madden
+ *
+ */
+public class SinceCommand implements ChatCommand {
+
+	@Override
+	public String getName() {
+		return "!since";
+	}
+
+	@Override
+	public void execute(ChannelTracker channel, String argument, Reply reply) {
+		final int index = channel.indexOfEmote(argument);
+		if (index == -1) {
+			reply.send(channel, channel.createUniqueMessage(":( " + argument + " is not being tracked", ":("), argument);
+			return;
+		}
+		final EmoteValue emote = channel.getEmotes().get(index);
+		final long last = emote.getLastPostedMillis();
+		final String message;
+		if (last == 0) {
+			message = emote.string() + " has not been posted yet";
+		} else {
+			message = emote.string() + " was last posted " + formatAgo(System.currentTimeMillis() - last) + " ago";
+		}
+		reply.send(channel, channel.createUniqueMessage(message, "BibleThump"), getName() + " " + emote.string());
+	}
+
+	/**
+	 * @param millis Elapsed time
+	 * @return Elapsed time in the largest whole unit (ex. 3 m)
+	 */
+	private static String formatAgo(long millis) {
+		final long seconds = Math.max(0, millis / 1000);
+		if (seconds < 60) {
+			return seconds + " s";
+		} else if (seconds < 60 * 60) {
+			return (seconds / 60) + " m";
+		} else if (seconds < 24 * 60 * 60) {
+			return (seconds / (60 * 60)) + " h";
+		}
+		return (seconds / (24 * 60 * 60)) + " d";
+	}
+
+}
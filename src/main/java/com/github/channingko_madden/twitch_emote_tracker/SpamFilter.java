@@ -0,0 +1,151 @@
+package com.github.channingko_madden.twitch_emote_tracker;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class finds chatters repeating the same message (ex. bots and copypasta floods), so the repeats can be skipped
+ * before they are counted.
+ *
+ * Each message is reduced to a 64 bit fingerprint of the chatter's nick and the words of the message, ignoring
+ * whitespace and the invisible character chat clients append to get around Twitch's duplicate message check. The
+ * fingerprints seen within the window are kept with a count in a fixed size table of 4 way buckets, where a new
+ * fingerprint replaces the oldest of its bucket. A chatter may post the same message up to the repeat limit within
+ * a window, later copies are suppressed and counted.
+ *
+ * Memory is fixed and checking a message allocates nothing. A fingerprint pushed out of the table before its window
+ * ends only lets a repeat through, it never suppresses a message that was not repeated.
+ *
+ * Must only be used by the thread processing the channel. The suppressed count may be read from any thread.
+ *
+ * @author channing.ko-madden
+ *
+ */
+public class SpamFilter {
+
+	/** Default time a message is remembered, from its first post */
+	public static final long DEFAULT_WINDOW_MILLIS = 30 * 1000;
+	/** Default number of times a chatter may post the same message within the window. Later copies are suppressed */
+	public static final int DEFAULT_MAX_REPEATS = 1;
+	/** Default number of fingerprints remembered */
+	public static final int DEFAULT_CAPACITY = 1 << 16;
+
+	private static final int WAYS = 4;
+	/** U+E0000, appended by chat clients to repeat a message */
+	private static final char TAG_HIGH = '\uDB40';
+	private static final char TAG_LOW = '\uDC00';
+
+	private final long mWindowMillis;
+	private final int mMaxRepeats;
+	private final long[] mFingerprints;
+	/** Time each fingerprint was first posted in its window */
+	private final long[] mFirstPosted;
+	/** Number of posts of each fingerprint in its window. 0 for an empty entry */
+	private final int[] mPosts;
+	private final int mBucketMask;
+	private final AtomicLong mSuppressed = new AtomicLong();
+
+	/**
+	 * Constructor, with the default window, repeat limit and capacity
+	 */
+	public SpamFilter() {
+		this(DEFAULT_WINDOW_MILLIS, DEFAULT_MAX_REPEATS, DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Constructor
+	 * @param windowMillis Time a message is remembered, from its first post
+	 * @param maxRepeats Number of times a chatter may post the same message within the window, 1 to suppress every repeat
+	 * @param capacity Number of fingerprints remembered, rounded up to a power of two of at least 4
+	 */
+	public SpamFilter(long windowMillis, int maxRepeats, int capacity) {
+		if (maxRepeats < 1 || capacity < 1) {
+			throw new IllegalArgumentException("Invalid limits: " + maxRepeats + " repeats, capacity " + capacity);
+		}
+		mWindowMillis = windowMillis;
+		mMaxRepeats = maxRepeats;
+		final int entries = Math.max(WAYS, Integer.highestOneBit(capacity * 2 - 1));
+		mFingerprints = new long[entries];
+		mFirstPosted = new long[entries];
+		mPosts = new int[entries];
+		mBucketMask = entries / WAYS - 1;
+	}
+
+	/**
+	 * Check a chat message, and remember it
+	 * @param line Line holding the nick and the message
+	 * @param nickStart Start of the nick (inclusive)
+	 * @param nickEnd End of the nick (exclusive)
+	 * @param start Start of the message (inclusive)
+	 * @param end End of the message (exclusive)
+	 * @param nowMillis Time of the message
+	 * @return True if the message should be counted, false if it is a repeat over the limit, and is suppressed
+	 */
+	public boolean allow(CharSequence line, int nickStart, int nickEnd, int start, int end, long nowMillis) {
+		final long fingerprint = fingerprint(line, nickStart, nickEnd, start, end);
+		final int first = (int) (fingerprint & mBucketMask) * WAYS;
+		int oldest = first;
+		for (int i = first; i < first + WAYS; i++) {
+			if (mPosts[i] != 0 && mFingerprints[i] == fingerprint) {
+				if (nowMillis - mFirstPosted[i] >= mWindowMillis) {
+					// the window is over, start a new one
+					mFirstPosted[i] = nowMillis;
+					mPosts[i] = 1;
+					return true;
+				}
+				if (mPosts[i] >= mMaxRepeats) {
+					mSuppressed.incrementAndGet();
+					return false;
+				}
+				mPosts[i]++;
+				return true;
+			}
+			if (mPosts[i] == 0 || (mPosts[oldest] != 0 && mFirstPosted[i] < mFirstPosted[oldest])) {
+				oldest = i;
+			}
+		}
+		mFingerprints[oldest] = fingerprint;
+		mFirstPosted[oldest] = nowMillis;
+		mPosts[oldest] = 1;
+		return true;
+	}
+
+	/**
+	 * @return Number of messages suppressed as repeats
+	 */
+	public long getSuppressedCount() {
+		return mSuppressed.get();
+	}
+
+	/**
+	 * @return 64 bit fingerprint of a nick and the words of a message
+	 */
+	private static long fingerprint(CharSequence line, int nickStart, int nickEnd, int start, int end) {
+		long hash = 0xcbf29ce484222325L;
+		for (int i = nickStart; i < nickEnd; i++) {
+			hash = (hash ^ line.charAt(i)) * 0x100000001b3L;
+		}
+		boolean space = true; // separates the nick from the message
+		for (int i = start; i < end; i++) {
+			final char c = line.charAt(i);
+			if (EmoteMatcher.isWhitespace(c)) {
+				space = true;
+			} else if (c == TAG_HIGH && i + 1 < end && line.charAt(i + 1) == TAG_LOW) {
+				i++;
+			} else {
+				if (space) {
+					hash = (hash ^ ' ') * 0x100000001b3L;
+					space = false;
+				}
+				hash = (hash ^ c) * 0x100000001b3L;
+			}
+		}
+		// spread the bits, since the low bits pick the bucket
+		hash ^= hash >>> 33;
+		hash *= 0xff51afd7ed558ccdL;
+		hash ^= hash >>> 33;
+		hash *= 0xc4ceb9fe1a85ec53L;
+		hash ^= hash >>> 33;
+		return hash;
+	}
+
+}
@@ -0,0 +1,161 @@
+package com.github.channingko_madden.twitch_emote_tracker;
+
+/**
+ * This class detects when something (ex. an emote) suddenly happens far more often than usual, to mark hype moments
+ * while they happen.
+ *
+ * Occurrences are counted in one second buckets. When a second ends, its count updates an exponentially weighted
+ * moving average and variance of the per second count, which weigh recent seconds the most and forget quiet periods
+ * gradually. A spike starts when the count of the current second rises past the average by the threshold number of
+ * standard deviations (its z-score), and is reported once, as soon as it is crossed, not when the second ends. The
+ * spike is over once a whole second falls back under the threshold. Every update is O(1).
+ *
+ * Times are passed in, so spikes can be found in recorded chat as well as live chat.
+ *
+ * @author channing.ko-madden
+ *
+ */
+public class SpikeDetector {
+
+	/** Default number of seconds the average mostly covers. The weight of each new second is 2 / (seconds + 1) */
+	public static final int DEFAULT_AVERAGE_SECONDS = 60;
+	/** Default number of standard deviations over the average that starts a spike */
+	public static final double DEFAULT_THRESHOLD = 4;
+	/** Default fewest occurrences in a second that can start a spike, so a quiet emote posted twice is not a spike */
+	public static final long DEFAULT_MIN_COUNT = 5;
+	/** Seconds counted before spikes are reported, so the average has settled */
+	public static final int WARMUP_SECONDS = 30;
+	/** Most empty seconds folded into the average one by one after a gap, after which it has decayed to nothing */
+	private static final int MAX_GAP_SECONDS = 3600;
+
+	private final double mAlpha;
+	private final double mThreshold;
+	private final long mMinCount;
+	private double mMean = 0;
+	private double mVariance = 0;
+	/** Number of seconds folded into the average */
+	private long mSeconds = 0;
+	/** Absolute number (time / one second) of the current second, Long.MIN_VALUE before the first occurrence */
+	private long mCurrent = Long.MIN_VALUE;
+	private long mCount = 0;
+	/** Count of the current second at which a spike starts */
+	private double mSpikeCount = Double.MAX_VALUE;
+	private boolean mSpiking = false;
+	private double mLastScore = 0;
+	private long mLastSpikeMillis = 0;
+
+	/**
+	 * Constructor, with the default settings
+	 */
+	public SpikeDetector() {
+		this(DEFAULT_AVERAGE_SECONDS, DEFAULT_THRESHOLD, DEFAULT_MIN_COUNT);
+	}
+
+	/**
+	 * Constructor
+	 * @param averageSeconds Number of seconds the average mostly covers
+	 * @param threshold Number of standard deviations over the average that starts a spike
+	 * @param minCount Fewest occurrences in a second that can start a spike
+	 */
+	public SpikeDetector(int averageSeconds, double threshold, long minCount) {
+		if (averageSeconds < 1 || threshold <= 0) {
+			throw new IllegalArgumentException("Invalid settings: " + averageSeconds + " s, threshold " + threshold);
+		}
+		mAlpha = 2.0 / (averageSeconds + 1);
+		mThreshold = threshold;
+		mMinCount = minCount;
+	}
+
+	/**
+	 * Add occurrences at a point in time. Occurrences in a second that has already ended are not counted
+	 * @param timeMillis Time of the occurrences, in milliseconds since the epoch
+	 * @param occurrences Number of occurrences
+	 * @return True if these occurrences started a spike
+	 */
+	public synchronized boolean add(long timeMillis, long occurrences) {
+		final long second = Math.floorDiv(timeMillis, RateHistory.SECOND_MILLIS);
+		advance(second);
+		if (second != mCurrent) {
+			return false;
+		}
+		mCount += occurrences;
+		if (!mSpiking && mCount >= mSpikeCount) {
+			mSpiking = true;
+			mLastScore = mVariance > 0 ? (mCount - mMean) / Math.sqrt(mVariance) : Double.POSITIVE_INFINITY;
+			mLastSpikeMillis = timeMillis;
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * @return Time the latest spike started, in milliseconds since the epoch, or 0 if there has been none
+	 */
+	public synchronized long getLastSpikeMillis() {
+		return mLastSpikeMillis;
+	}
+
+	/**
+	 * @return Number of standard deviations over the average at which the latest spike started
+	 */
+	public synchronized double getLastScore() {
+		return mLastScore;
+	}
+
+	/**
+	 * @return Exponentially weighted average count per second, as of the last second that ended
+	 */
+	public synchronized double getMean() {
+		return mMean;
+	}
+
+	/**
+	 * Forget the average and any spike
+	 */
+	public synchronized void clear() {
+		mMean = 0;
+		mVariance = 0;
+		mSeconds = 0;
+		mCurrent = Long.MIN_VALUE;
+		mCount = 0;
+		mSpikeCount = Double.MAX_VALUE;
+		mSpiking = false;
+		mLastScore = 0;
+		mLastSpikeMillis = 0;
+	}
+
+	/**
+	 * End the current second, and the empty seconds after it, up to the given second
+	 */
+	private void advance(long second) {
+		if (mCurrent == Long.MIN_VALUE) {
+			mCurrent = second;
+			return;
+		}
+		if (second <= mCurrent) {
+			return;
+		}
+		fold(mCount);
+		final long empty = Math.min(second - mCurrent - 1, MAX_GAP_SECONDS);
+		for (long i = 0; i < empty; i++) {
+			fold(0);
+		}
+		mSpiking = mSpiking && (mCount >= mSpikeCount && empty == 0);
+		mCurrent = second;
+		mCount = 0;
+		mSpikeCount = mSeconds < WARMUP_SECONDS ? Double.MAX_VALUE
+				: Math.max(mMinCount, mMean + mThreshold * Math.sqrt(mVariance));
+	}
+
+	/**
+	 * Fold the count of an ended second into the average and variance
+	 */
+	private void fold(long count) {
+		final double difference = count - mMean;
+		final double increment = mAlpha * difference;
+		mMean += increment;
+		mVariance = (1 - mAlpha) * (mVariance + difference * increment);
+		mSeconds++;
+	}
+
+}
@@ -0,0 +1,137 @@
+package com.github.channingko_madden.twitch_emote_tracker;
+
+/**
+ * This class maps a fixed set of Strings to their index, and can look up any range of characters without
+ * creating a String for it (ex. a token of a chat message, or the channel name of an IRC line).
+ *
+ * Uses an open addressing hash table that is built once and never modified, so it can be shared between threads.
+ *
+ * @author channing.ko-madden
+ *
+ */
+public class TextIndex {
+
+	/** The Strings in the index, in the order they were given */
+	private final String[] mKeys;
+	/** Hash of each key, by key index */
+	private final int[] mHashes;
+	/** Open addressing hash table. Each slot holds a key index + 1, or 0 if the slot is empty */
+	private final int[] mTable;
+	/** Mask used to wrap a hash into the table */
+	private final int mMask;
+
+	/**
+	 * Constructor
+	 * @param keys The Strings to index. If a String is given twice, lookups return the first index
+	 */
+	public TextIndex(String[] keys) {
+		mKeys = keys.clone();
+		mHashes = new int[mKeys.length];
+
+		// keep the table at most half full so probe sequences stay short
+		int tableSize = 2;
+		while (tableSize < mKeys.length * 2) {
+			tableSize <<= 1;
+		}
+		mTable = new int[tableSize];
+		mMask = tableSize - 1;
+
+		for (int i = 0; i < mKeys.length; i++) {
+			final String key = mKeys[i];
+			final int hash = hash(key, 0, key.length());
+			mHashes[i] = hash;
+			if (find(key, 0, key.length(), hash) == -1) {
+				int slot = hash & mMask;
+				while (mTable[slot] != 0) {
+					slot = (slot + 1) & mMask;
+				}
+				mTable[slot] = i + 1;
+			}
+		}
+	}
+
+	/**
+	 * @return The number of Strings in the index
+	 */
+	public int size() {
+		return mKeys.length;
+	}
+
+	/**
+	 * @param index Key index
+	 * @return The String at the index, in the order given to the constructor
+	 */
+	public String getKey(int index) {
+		return mKeys[index];
+	}
+
+	/**
+	 * Return the index of the String that is exactly the given range of characters
+	 * @param text Text containing the String
+	 * @param start Start of the range (inclusive)
+	 * @param end End of the range (exclusive)
+	 * @return Index of the String, or -1 if it is not in the index
+	 */
+	public int indexOf(CharSequence text, int start, int end) {
+		return find(text, start, end, hash(text, start, end));
+	}
+
+	/**
+	 * Return the index of the String that is exactly the given text
+	 * @param text Text to look up
+	 * @return Index of the String, or -1 if it is not in the index
+	 */
+	public int indexOf(CharSequence text) {
+		return indexOf(text, 0, text.length());
+	}
+
+	/**
+	 * Look up a range of characters within the hash table
+	 * @return Index of the key, or -1 if not found
+	 */
+	private int find(CharSequence text, int start, int end, int hash) {
+		int slot = hash & mMask;
+		int entry;
+		while ((entry = mTable[slot]) != 0) {
+			final int index = entry - 1;
+			if (mHashes[index] == hash && regionEquals(mKeys[index], text, start, end)) {
+				return index;
+			}
+			slot = (slot + 1) & mMask;
+		}
+		return -1;
+	}
+
+	/**
+	 * Hash a range of characters. Uses the same polynomial as String.hashCode, with the high bits folded in
+	 * since the table only looks at the low bits.
+	 */
+	private static int hash(CharSequence text, int start, int end) {
+		int hash = 0;
+		for (int i = start; i < end; i++) {
+			hash = 31 * hash + text.charAt(i);
+		}
+		return hash ^ (hash >>> 16);
+	}
+
+	/**
+	 * Return if a range of characters is exactly the given String
+	 * @param expected String to compare against
+	 * @param text Text containing the range
+	 * @param start Start of the range (inclusive)
+	 * @param end End of the range (exclusive)
+	 * @return True if the range of characters equals the String
+	 */
+	public static boolean regionEquals(String expected, CharSequence text, int start, int end) {
+		if (expected.length() != end - start) {
+			return false;
+		}
+		for (int i = 0; i < expected.length(); i++) {
+			if (expected.charAt(i) != text.charAt(start + i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+}
@@ -0,0 +1,48 @@
+package com.github.channingko_madden.twitch_emote_tracker;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * This class is the "!top [n]" command, which replies with the n most posted words of the channel's chat over the
+ * last minute or two (TrendingTokens), so viewers see the hot emotes whether they are tracked or not.
+ *
+ * @author channing.ko-madden
+ *
+ */
+public class TopCommand implements ChatCommand {
+
+	/** Number of words given when the command has no argument */
+	public static final int DEFAULT_COUNT = 3;
+	/** Most words given, to keep the reply within one chat message */
+	public static final int MAX_COUNT = 10;
+
+	@Override
+	public String getName() {
+		return "!top";
+	}
+
+	@Override
+	public void execute(ChannelTracker channel, String argument, Reply reply) {
+		int n = DEFAULT_COUNT;
+		try {
+			if (!argument.isEmpty()) {
+				n = Math.max(1, Math.min(MAX_COUNT, Integer.parseInt(argument)));
+			}
+		} catch (NumberFormatException exp) {
+			// keep the default
+		}
+		final TrendingTokens trending = channel.getTrending();
+		final List<TrendingTokens.Entry> top = trending == null ? Collections.emptyList() : trending.getTop(n);
+		if (top.isEmpty()) {
+			reply.send(channel, channel.createUniqueMessage("Nothing is trending yet", "ResidentSleeper"), getName());
+			return;
+		}
+		final StringBuilder message = new StringBuilder("Trending:");
+		for (int i = 0; i < top.size(); i++) {
+			message.append(i == 0 ? " " : ", ").append(top.get(i).getText()).append(' ').append(top.get(i).getCount());
+		}
+		reply.send(channel, channel.createUniqueMessage(message.toString(), "PogChamp"), getName());
+	}
+
+}
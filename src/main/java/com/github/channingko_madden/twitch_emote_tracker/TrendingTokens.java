@@ -0,0 +1,340 @@
+package com.github.channingko_madden.twitch_emote_tracker;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class finds the most posted words of a channel's chat (tracked emotes or not), so that hot emotes can be
+ * discovered without tracking them first.
+ *
+ * Every whitespace delimited token of every chat message is counted with the Space-Saving algorithm, which keeps a
+ * fixed number of counters: a token without a counter takes over the counter with the lowest count, inheriting that
+ * count as its possible overcount. Any token posted more often than (tokens in the window / capacity) is guaranteed
+ * a counter, so the heavy hitters are always found, in bounded memory whatever the number of distinct tokens.
+ *
+ * Counting happens in windows: when a window ends, its counts are kept as the previous window and a new one is
+ * started, so the top tokens reflect the last one to two windows of chat. Counting a message allocates nothing.
+ *
+ * Tokens are added by the thread processing the channel and read from any thread, one lock per message.
+ *
+ * @author channing.ko-madden
+ *
+ */
+public class TrendingTokens {
+
+	/** Default number of counters per window */
+	public static final int DEFAULT_CAPACITY = 256;
+	/** Default length of a window */
+	public static final long DEFAULT_WINDOW_MILLIS = 60 * 1000;
+	/** Longest token counted. Longer tokens are not emotes, and are skipped */
+	public static final int MAX_TOKEN_LENGTH = 32;
+
+	/**
+	 * This class is a token and its approximate count
+	 */
+	public static class Entry {
+		private final String mText;
+		private final long mCount;
+		private final long mError;
+
+		Entry(String text, long count, long error) {
+			mText = text;
+			mCount = count;
+			mError = error;
+		}
+
+		/**
+		 * @return The token
+		 */
+		public String getText() {
+			return mText;
+		}
+
+		/**
+		 * @return Approximate count of the token, never less than the true count
+		 */
+		public long getCount() {
+			return mCount;
+		}
+
+		/**
+		 * @return Most the count may be over the true count. The token was posted at least count - error times
+		 */
+		public long getError() {
+			return mError;
+		}
+	}
+
+	private final long mWindowMillis;
+	private SpaceSaving mCurrent;
+	private SpaceSaving mPrevious;
+	private long mWindowStart = 0;
+
+	/**
+	 * Constructor, with the default capacity and window
+	 */
+	public TrendingTokens() {
+		this(DEFAULT_CAPACITY, DEFAULT_WINDOW_MILLIS);
+	}
+
+	/**
+	 * Constructor
+	 * @param capacity Number of counters per window
+	 * @param windowMillis Length of a window
+	 */
+	public TrendingTokens(int capacity, long windowMillis) {
+		if (capacity < 1) {
+			throw new IllegalArgumentException("Invalid capacity: " + capacity);
+		}
+		mWindowMillis = windowMillis;
+		mCurrent = new SpaceSaving(capacity);
+		mPrevious = new SpaceSaving(capacity);
+	}
+
+	/**
+	 * Count every token of a chat message
+	 * @param message Text holding the message
+	 * @param start Start of the message (inclusive)
+	 * @param end End of the message (exclusive)
+	 * @param nowMillis Time of the message
+	 */
+	public synchronized void add(CharSequence message, int start, int end, long nowMillis) {
+		if (nowMillis - mWindowStart >= mWindowMillis) {
+			// the previous window is kept only if it was the one just before this
+			final boolean adjacent = nowMillis - mWindowStart < 2 * mWindowMillis;
+			final SpaceSaving ended = mCurrent;
+			mCurrent = mPrevious;
+			mPrevious = ended;
+			mCurrent.clear();
+			if (!adjacent) {
+				mPrevious.clear();
+			}
+			mWindowStart = nowMillis - (nowMillis % mWindowMillis);
+		}
+		int i = start;
+		while (i < end) {
+			while (i < end && EmoteMatcher.isWhitespace(message.charAt(i))) {
+				i++;
+			}
+			final int tokenStart = i;
+			int hash = 0;
+			while (i < end && !EmoteMatcher.isWhitespace(message.charAt(i))) {
+				hash = 31 * hash + message.charAt(i);
+				i++;
+			}
+			if (i > tokenStart && i - tokenStart <= MAX_TOKEN_LENGTH) {
+				mCurrent.offer(message, tokenStart, i, hash ^ (hash >>> 16));
+			}
+		}
+	}
+
+	/**
+	 * Return the most posted tokens of the current and previous windows, ranked by the count they are guaranteed to
+	 * have. Tokens whose count may be mostly overcount (inherited by taking over counters) are left out
+	 * @param n Number of tokens
+	 * @return Up to n tokens, most posted first
+	 */
+	public synchronized List<Entry> getTop(int n) {
+		final Map<String, long[]> counts = new HashMap<>();
+		mPrevious.addCounts(counts);
+		mCurrent.addCounts(counts);
+		final List<Entry> entries = new ArrayList<>(counts.size());
+		for (Map.Entry<String, long[]> count : counts.entrySet()) {
+			if (count.getValue()[1] * 2 < count.getValue()[0]) {
+				entries.add(new Entry(count.getKey(), count.getValue()[0], count.getValue()[1]));
+			}
+		}
+		entries.sort(new ByCount());
+		return entries.subList(0, Math.min(n, entries.size()));
+	}
+
+	/**
+	 * Forget every count
+	 */
+	public synchronized void clear() {
+		mCurrent.clear();
+		mPrevious.clear();
+	}
+
+	/**
+	 * Orders tokens from the most to the least posted
+	 */
+	private static class ByCount implements Comparator<Entry> {
+
+		@Override
+		public int compare(Entry a, Entry b) {
+			return Long.compare(b.mCount - b.mError, a.mCount - a.mError);
+		}
+	}
+
+	/**
+	 * Space-Saving counters of one window. Counters are kept in a min-heap by count, to find the one to take over,
+	 * and in an open addressing hash table by token, to find the counter of a token without creating a String
+	 */
+	private static class SpaceSaving {
+		/** Characters of the token of each counter */
+		private final char[][] mTokens;
+		private final int[] mLengths;
+		private final int[] mHashes;
+		private final long[] mCounts;
+		/** Count each token inherited when it took over its counter */
+		private final long[] mErrors;
+		/** Counters ordered as a binary min-heap by count */
+		private final int[] mHeap;
+		/** Position of each counter in mHeap */
+		private final int[] mHeapPositions;
+		/** Hash table of counters. Each slot holds a counter + 1, or 0 if the slot is empty */
+		private final int[] mTable;
+		private final int mMask;
+		private int mSize = 0;
+
+		SpaceSaving(int capacity) {
+			mTokens = new char[capacity][MAX_TOKEN_LENGTH];
+			mLengths = new int[capacity];
+			mHashes = new int[capacity];
+			mCounts = new long[capacity];
+			mErrors = new long[capacity];
+			mHeap = new int[capacity];
+			mHeapPositions = new int[capacity];
+			mTable = new int[Integer.highestOneBit(capacity * 2 - 1) << 1];
+			mMask = mTable.length - 1;
+		}
+
+		void offer(CharSequence text, int start, int end, int hash) {
+			int slot = hash & mMask;
+			int entry;
+			while ((entry = mTable[slot]) != 0) {
+				final int counter = entry - 1;
+				if (mHashes[counter] == hash && tokenEquals(counter, text, start, end)) {
+					mCounts[counter]++;
+					siftDown(mHeapPositions[counter]);
+					return;
+				}
+				slot = (slot + 1) & mMask;
+			}
+			final int counter;
+			if (mSize < mHeap.length) {
+				counter = mSize++;
+				mCounts[counter] = 1;
+				mErrors[counter] = 0;
+				mHeap[counter] = counter;
+				mHeapPositions[counter] = counter;
+				siftUp(counter);
+			} else {
+				// take over the counter with the lowest count, which becomes the overcount of the new token
+				counter = mHeap[0];
+				remove(counter);
+				mErrors[counter] = mCounts[counter];
+				mCounts[counter]++;
+				siftDown(0);
+				slot = hash & mMask;
+				while (mTable[slot] != 0) {
+					slot = (slot + 1) & mMask;
+				}
+			}
+			for (int i = start; i < end; i++) {
+				mTokens[counter][i - start] = text.charAt(i);
+			}
+			mLengths[counter] = end - start;
+			mHashes[counter] = hash;
+			mTable[slot] = counter + 1;
+		}
+
+		/**
+		 * Add the count and error of every token to the map, by token
+		 */
+		void addCounts(Map<String, long[]> counts) {
+			for (int counter = 0; counter < mSize; counter++) {
+				final String token = new String(mTokens[counter], 0, mLengths[counter]);
+				long[] count = counts.get(token);
+				if (count == null) {
+					count = new long[2];
+					counts.put(token, count);
+				}
+				count[0] += mCounts[counter];
+				count[1] += mErrors[counter];
+			}
+		}
+
+		void clear() {
+			Arrays.fill(mTable, 0);
+			mSize = 0;
+		}
+
+		private boolean tokenEquals(int counter, CharSequence text, int start, int end) {
+			if (mLengths[counter] != end - start) {
+				return false;
+			}
+			final char[] token = mTokens[counter];
+			for (int i = start; i < end; i++) {
+				if (token[i - start] != text.charAt(i)) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		/**
+		 * Remove a counter from the hash table, shifting back the entries after it so lookups still find them
+		 */
+		private void remove(int counter) {
+			int slot = mHashes[counter] & mMask;
+			while (mTable[slot] != counter + 1) {
+				slot = (slot + 1) & mMask;
+			}
+			int next = (slot + 1) & mMask;
+			while (mTable[next] != 0) {
+				final int home = mHashes[mTable[next] - 1] & mMask;
+				// move the entry back if its home slot is not between the hole and the entry
+				if (((next - home) & mMask) >= ((next - slot) & mMask)) {
+					mTable[slot] = mTable[next];
+					slot = next;
+				}
+				next = (next + 1) & mMask;
+			}
+			mTable[slot] = 0;
+		}
+
+		private void siftUp(int position) {
+			final int counter = mHeap[position];
+			while (position > 0) {
+				final int parent = (position - 1) >>> 1;
+				if (mCounts[mHeap[parent]] <= mCounts[counter]) {
+					break;
+				}
+				place(mHeap[parent], position);
+				position = parent;
+			}
+			place(counter, position);
+		}
+
+		private void siftDown(int position) {
+			final int counter = mHeap[position];
+			while (true) {
+				int child = 2 * position + 1;
+				if (child >= mSize) {
+					break;
+				}
+				if (child + 1 < mSize && mCounts[mHeap[child + 1]] < mCounts[mHeap[child]]) {
+					child++;
+				}
+				if (mCounts[counter] <= mCounts[mHeap[child]]) {
+					break;
+				}
+				place(mHeap[child], position);
+				position = child;
+			}
+			place(counter, position);
+		}
+
+		private void place(int counter, int position) {
+			mHeap[position] = counter;
+			mHeapPositions[counter] = position;
+		}
+	}
+
+}
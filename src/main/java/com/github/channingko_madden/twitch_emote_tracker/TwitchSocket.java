@@ -1,104 +1,232 @@
 package com.github.channingko_madden.twitch_emote_tracker;
 
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.OutputStreamWriter;
-import java.net.Socket;
-import java.nio.charset.StandardCharsets;
-import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.locks.Condition;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
 
 /**
- * This class opens a socket connection to the twitch irc, attempts to join a
- * channel, and listens to chat, counting how many times "KEKW" is posted in
- * chat.
- * 
- * Chat users can post the "!kekws" command, and the number of recoded KEKWs
- * will be sent back to the chat.
+ * This class opens a socket connection to the twitch irc, joins one or more
+ * channels, and listens to chat, counting how many times each tracked emote is
+ * posted in each channel.
+ *
+ * The connection is non-blocking and serviced by an IrcSelectorLoop, which can
+ * be shared by many TwitchSockets so that one thread reads all connections.
+ * Lines are parsed in place (IrcMessage) and handed to a ChatPipeline, which
+ * counts the emotes on a pool of worker threads, so in steady state nothing is
+ * allocated per chat message on the way from the socket to the emote counts.
+ *
+ * Chat users can post the "!emotecount" command, and the count of the emote
+ * will be sent back to the chat. Replies are sent by an OutboundWriter within
+ * Twitch's rate limit, while PONG is sent straight away.
  *
  */
 public class TwitchSocket {
 
-	final private String server = "irc.chat.twitch.tv";
-	final private int port = 6667; // twitch irc port
+	/** Default number of chat messages that can wait to be processed, per worker */
+	public static final int DEFAULT_QUEUE_CAPACITY = 8192;
+	/** Default maximum number of chat messages processed together */
+	public static final int DEFAULT_BATCH_SIZE = 256;
+	/** Twitch IRC server */
+	public static final String DEFAULT_SERVER = "irc.chat.twitch.tv";
+	/** Twitch IRC port */
+	public static final int DEFAULT_PORT = 6667;
+
+	final private String mServer; // IRC server to connect to
+	final private int mPort; // IRC server port
 	final private String mNickname; // User's twitch account name
 	final private String mToken; // Users' oauth token
-	final private String mChannelName; // Channel to join
-	private Socket mChatSocket;
-	private BufferedReader mChatReader;
-	private BufferedWriter mTwitchWriter; // Had success with buffered write, but don't know why
-	final private Lock mMessageLock = new ReentrantLock();
-	final private Condition mMessageCond = mMessageLock.newCondition();
-	final private ArrayList<String> mMessageList = new ArrayList<>();
-	final private List<EmoteValue> mEmoteValues;
-	/** Flag to flip when a unique chat message is created, so the next one created is also unique. */
-	private boolean mNeedUniqueMsg = false; 
-	
-	/** Thread that reads from Twitch IRC */
-	private Thread mReadThread;
-	/** Thread that process chat messages */
-	private Thread mProcessThread;
+	/** Channels to join */
+	final private List<ChannelTracker> mChannels;
+	/** Connection to Twitch IRC */
+	private IrcConnection mConnection;
+	/** Selector loop servicing the connection */
+	final private IrcSelectorLoop mLoop;
+	/** True if mLoop was created by this socket, and is closed with it */
+	final private boolean mOwnsLoop;
+	/** Sends chat messages through the connection, within Twitch's rate limit */
+	final private OutboundWriter mOutbound;
+	/** Counts the emotes of the chat messages, and answers chat commands through mOutbound */
+	final private ChatPipeline mPipeline;
+	/** Parses lines on the selector loop, to find which worker they go to */
+	final private IrcMessage mRouteMessage = new IrcMessage();
+	/** Records every line read, null if chat is not being recorded */
+	private volatile ChatRecorder mRecorder;
 
 	/**
 	 * Constructor
-	 * 
+	 *
 	 * @param channel_name Twitch channel to join (ex. t90official)
 	 * @param nickname     Your twitch account name
 	 * @param token        OAUTH token for your twitch account
 	 * @param emotes The emotes the user wants to track
 	 */
 	public TwitchSocket(String channel_name, String nickname, String token, List<EmoteValue> emotes) {
-		this.mChannelName = "#" + channel_name;
+		this(List.of(new ChannelTracker(channel_name, emotes)), nickname, token);
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * Uses one worker per channel, up to the number of available processors.
+	 *
+	 * @param channels Twitch channels to join, and the emotes to track in each
+	 * @param nickname Your twitch account name
+	 * @param token    OAUTH token for your twitch account
+	 */
+	public TwitchSocket(List<ChannelTracker> channels, String nickname, String token) {
+		this(channels, nickname, token, DEFAULT_QUEUE_CAPACITY, MessageRingBuffer.OverflowPolicy.BLOCK,
+				DEFAULT_BATCH_SIZE, Math.min(channels.size(), Runtime.getRuntime().availableProcessors()));
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param channels Twitch channels to join, and the emotes to track in each
+	 * @param nickname Your twitch account name
+	 * @param token    OAUTH token for your twitch account
+	 * @param queueCapacity Number of chat messages that can wait to be processed, per worker
+	 * @param overflowPolicy What to do with a chat message when queueCapacity messages are already waiting
+	 * @param batchSize Maximum number of waiting chat messages processed together. Emote events are published once per batch
+	 * @param workerCount Number of threads processing chat messages. Channels are spread evenly across the workers
+	 */
+	public TwitchSocket(List<ChannelTracker> channels, String nickname, String token,
+			int queueCapacity, MessageRingBuffer.OverflowPolicy overflowPolicy, int batchSize, int workerCount) {
+		this(channels, nickname, token, queueCapacity, overflowPolicy, batchSize, workerCount, null);
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param channels Twitch channels to join, and the emotes to track in each
+	 * @param nickname Your twitch account name
+	 * @param token    OAUTH token for your twitch account
+	 * @param queueCapacity Number of chat messages that can wait to be processed, per worker
+	 * @param overflowPolicy What to do with a chat message when queueCapacity messages are already waiting.
+	 *                       With BLOCK a full queue stalls the selector loop, and so every connection it services
+	 * @param batchSize Maximum number of waiting chat messages processed together. Emote events are published once per batch
+	 * @param workerCount Number of threads processing chat messages. Channels are spread evenly across the workers
+	 * @param loop Selector loop to service the connection, shared with other sockets. If null the socket creates its own
+	 */
+	public TwitchSocket(List<ChannelTracker> channels, String nickname, String token,
+			int queueCapacity, MessageRingBuffer.OverflowPolicy overflowPolicy, int batchSize, int workerCount,
+			IrcSelectorLoop loop) {
+		this(DEFAULT_SERVER, DEFAULT_PORT, channels, nickname, token, queueCapacity, overflowPolicy, batchSize, workerCount, loop);
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * Connects to the given IRC server instead of Twitch (ex. a FakeTwitchServer for load testing),
+	 * with one worker per channel, up to the number of available processors.
+	 *
+	 * @param server   IRC server to connect to
+	 * @param port     IRC server port
+	 * @param channels Channels to join, and the emotes to track in each
+	 * @param nickname Your twitch account name
+	 * @param token    OAUTH token for your twitch account
+	 */
+	public TwitchSocket(String server, int port, List<ChannelTracker> channels, String nickname, String token) {
+		this(server, port, channels, nickname, token, DEFAULT_QUEUE_CAPACITY, MessageRingBuffer.OverflowPolicy.BLOCK,
+				DEFAULT_BATCH_SIZE, Math.min(channels.size(), Runtime.getRuntime().availableProcessors()), null);
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param server   IRC server to connect to
+	 * @param port     IRC server port
+	 * @param channels Channels to join, and the emotes to track in each
+	 * @param nickname Your twitch account name
+	 * @param token    OAUTH token for your twitch account
+	 * @param queueCapacity Number of chat messages that can wait to be processed, per worker
+	 * @param overflowPolicy What to do with a chat message when queueCapacity messages are already waiting.
+	 *                       With BLOCK a full queue stalls the selector loop, and so every connection it services
+	 * @param batchSize Maximum number of waiting chat messages processed together. Emote events are published once per batch
+	 * @param workerCount Number of threads processing chat messages. Channels are spread evenly across the workers
+	 * @param loop Selector loop to service the connection, shared with other sockets. If null the socket creates its own
+	 */
+	public TwitchSocket(String server, int port, List<ChannelTracker> channels, String nickname, String token,
+			int queueCapacity, MessageRingBuffer.OverflowPolicy overflowPolicy, int batchSize, int workerCount,
+			IrcSelectorLoop loop) {
+		mServer = server;
+		mPort = port;
 		this.mNickname = nickname;
 		this.mToken = token;
-		mEmoteValues = emotes;
+		mChannels = List.copyOf(channels);
+		mOutbound = new OutboundWriter(new ConnectionLineSink());
+		mPipeline = new ChatPipeline(channels, queueCapacity, overflowPolicy, batchSize, workerCount, mOutbound);
+		mOwnsLoop = (loop == null);
+		mLoop = mOwnsLoop ? createLoop() : loop;
 		setUpNetworking();
-		mReadThread = new Thread(new ReadThread());
-		mReadThread.start();
-		mProcessThread = new Thread(new ProcessThread());
-		mProcessThread.start();
 		setUpTwitch();
 	}
-	
+
 	/**
 	 * Close socket connection to Twitch IRC and stop threads.
 	 */
 	public void close() {
-		
-		try {
-			mChatSocket.close();
-		} catch (IOException exp) {
-			exp.printStackTrace();
+
+		if (mConnection != null) {
+			mConnection.close();
 		}
-		
-		try {
-			mReadThread.interrupt();
-		} catch (SecurityException exp) {
-			exp.printStackTrace();
-		} 		
+		if (mOwnsLoop && mLoop != null) {
+			mLoop.close();
+		}
+
+		mPipeline.close();
+		mOutbound.close();
+	}
+
+	/**
+	 * Record every line read from now on, or stop recording. The recorder is not closed by this socket
+	 * @param recorder Recorder of the raw lines, or null to stop recording
+	 */
+	public void setRecorder(ChatRecorder recorder) {
+		mRecorder = recorder;
+	}
+
+	/**
+	 * @return Sender of the chat messages, ex. to change its rate limit when the bot is a moderator
+	 */
+	public OutboundWriter getOutboundWriter() {
+		return mOutbound;
+	}
 
+	/**
+	 * @return The number of chat messages waiting to be processed, over all workers
+	 */
+	public int getQueueDepth() {
+		return mPipeline.getQueueDepth();
+	}
+
+	/**
+	 * @return The number of chat messages dropped because too many were waiting to be processed, over all workers
+	 */
+	public long getDroppedMessages() {
+		return mPipeline.getDroppedMessages();
+	}
+
+	/**
+	 * Create the selector loop owned by this socket
+	 * @return Selector loop, or null if it could not be created
+	 */
+	private static IrcSelectorLoop createLoop() {
 		try {
-			mProcessThread.interrupt(); // condition variable await will unblock if thread is interrupted
-		} catch (SecurityException exp) {
+			return new IrcSelectorLoop("IrcSelectorLoop");
+		} catch (IOException exp) {
 			exp.printStackTrace();
-		} 		
+			return null;
+		}
 	}
 
 	/**
-	 * Set up Socket that connects to the twitch IRC and create reader/writers from
-	 * socket
+	 * Set up the connection to the IRC server (Twitch by default), serviced by the selector loop
 	 */
 	private void setUpNetworking() {
+		if (mLoop == null) {
+			return;
+		}
 		try {
-			mChatSocket = new Socket(server, port);
-			mChatReader = new BufferedReader(new InputStreamReader(mChatSocket.getInputStream()));
-			mTwitchWriter = new BufferedWriter(
-					new OutputStreamWriter(mChatSocket.getOutputStream(), StandardCharsets.UTF_8));
+			mConnection = new IrcConnection(mServer, mPort, mLoop, new ChatLineHandler());
 			System.out.println("Networking established");
 		} catch (IOException exp) {
 			exp.printStackTrace();
@@ -106,173 +234,88 @@ public class TwitchSocket {
 	}
 
 	/**
-	 * Configure Token, Nickname, and Channel to join with Twitch IRC
+	 * Configure Token, Nickname, and Channels to join with Twitch IRC.
+	 * Requests IRCv3 tags, so that chat messages come with the positions of the Twitch emotes they contain.
 	 */
 	private void setUpTwitch() {
-		try {
-			mTwitchWriter.write("PASS " + mToken + "\r\n"); // send our token
-			mTwitchWriter.flush();
-			mTwitchWriter.write("NICK " + mNickname + "\r\n"); // send our nickname
-			mTwitchWriter.flush();
-			mTwitchWriter.write("JOIN " + mChannelName + "\r\n"); // send what channel to listen to
-			mTwitchWriter.flush();
-		} catch (Exception exp) {
-			exp.printStackTrace();
+		sendLine("CAP REQ :twitch.tv/tags"); // ask for tags before registering
+		sendLine("PASS " + mToken); // send our token
+		sendLine("NICK " + mNickname); // send our nickname
+		for (ChannelTracker channel : mChannels) {
+			sendLine("JOIN " + channel.getIrcChannel()); // send what channel to listen to
 		}
 	}
 
 	/**
-	 * Reads from the Twitch IRC, places messages to process in mMessageList, then notifies the process thread's condition
+	 * Receives the lines read from the Twitch IRC on the selector loop, and hands each chat message to the pipeline.
+	 *
+	 * PING is answered here, so that a backlog of chat messages never delays the PONG.
 	 */
-	private class ReadThread implements Runnable {
+	private class ChatLineHandler implements IrcConnection.LineHandler {
 
 		@Override
-		public void run() {
-
-			String message;
+		public void onLine(IrcConnection connection, CharSequence line) {
 			try {
-				while ((message = mChatReader.readLine()) != null) {
-					// System.out.println("MESSAGE: " + message);
-					try {
-						mMessageLock.lock();
-						mMessageList.add(message);
-						mMessageCond.signal();
-						mMessageLock.unlock();
-					} catch (IllegalMonitorStateException exp) {
-						exp.printStackTrace();
-					}
-				}
-			} catch (Exception exp) {
-				exp.printStackTrace();
-			} finally {
-				System.out.println("Read thread over");
+				// System.out.println("MESSAGE: " + line);
+				routeMsg(line);
+			} catch (InterruptedException exp) {
+				Thread.currentThread().interrupt(); // closing, let the selector loop see it
 			}
 		}
-	}
-
-	/**
-	 * Extracts messages from the mMessageList to process.
-	 * Waits on a condition variable until messages are within the mMessageList.
-	 */
-	private class ProcessThread implements Runnable {
 
 		@Override
-		public void run() {
-			while (true) {
-				mMessageLock.lock();
-				if (mMessageList.isEmpty()) {
-					try {
-						mMessageCond.await();
-					} catch (Exception exp) {
-						exp.printStackTrace();
-					}
-				}
-
-				if (!mMessageList.isEmpty()) {
-					String msg = mMessageList.get(0);
-					mMessageList.remove(0);
-					try {
-						mMessageLock.unlock();
-					} catch (IllegalMonitorStateException exp) {
-						exp.printStackTrace();
-					}
-					// process messages here
-					processMsg(msg);
-				} else {
-					try {
-						mMessageLock.unlock(); // make sure to always unlock the lock!
-					} catch (IllegalMonitorStateException exp) {
-						exp.printStackTrace();
-					}
-				}
-			}
+		public void onClosed(IrcConnection connection) {
+			System.out.println("Connection closed");
 		}
-
 	}
 
 	/**
-	 * Search message for any tracked emote strings within a message body and extract statistic data to display to the user
-	 * 
-	 * Handles PING/PONG protocol
-	 * 
-	 * Handles the following commands:
-	 * - "!emotecount"
-	 * 
-	 * @param message Chat message from Twitch
+	 * Hand a message read from Twitch IRC to the pipeline, or handle it now if it does not belong to a channel
+	 *
+	 * @param line Message from Twitch. Reused by the connection once this returns, so workers get their own copy
+	 * @throws InterruptedException If interrupted while waiting for room in a worker's queue
 	 */
-	private void processMsg(final String message) {
-		if (message.startsWith("PING")) {
-			try {
-				System.out.println("PING Received: " + message);
-				mTwitchWriter.write("PONG " + message.substring(message.indexOf("PING") + "PING".length()) + "\r\n"); // ex reply. PONG :tmi.twitch.tv
-				mTwitchWriter.flush();
-			} catch (Exception exp) {
-				exp.printStackTrace();
-			}
-		} else {
-			// Want to parse PRIVMSG only for emotes. Format looks like:
-			// twitch_lurker:!twitch_lurker@twitch_lurker.tmi.twitch.tv PRIVMSG
-			// #channel_name :EZ Clap!
-			final int privmsg_pos = message.indexOf("PRIVMSG");
-			if (privmsg_pos != -1) {
-				final int colon_pos = message.indexOf(':', privmsg_pos + "PRIVMSG".length());
-				if (colon_pos != -1) // might not be necessary
-				{
-					// System.out.println(message.substring(colon_pos + 1));
-					if (message.substring(colon_pos + 1).startsWith("!emotecount ")) {
-						System.out.println("!emotecount command received");
-						String countCall = message.substring(colon_pos + "!emotecount ".length()).trim();
-						for (EmoteValue emote : mEmoteValues) {
-							if (emote.string().equals(countCall)) {
-								sendChatMessage(createUniqueMessage(emote.getCount() + " " + emote.string(), "... ;p"));
-								emote.incrementQueries();
-								return;
-							}
-						}
-						sendChatMessage(createUniqueMessage(":( " + countCall + " is not being tracked", ":("));
-					} else {
-						for (EmoteValue emote : mEmoteValues) {
-							if (emote.search(message.substring(colon_pos + 1))) {
-								System.out.println("New " + emote.string() + " Count: " + emote.getCount());
-							}
-						}
-					}
-				}
-			} else {
-				System.out.println(message); // print out non PRIVMSG messages
-			}
+	private void routeMsg(final CharSequence line) throws InterruptedException {
+		final ChatRecorder recorder = mRecorder;
+		if (recorder != null) {
+			recorder.record(line);
 		}
+		if (!mRouteMessage.parse(line)) {
+			return;
+		}
+		if (mRouteMessage.isCommand("PING")) {
+			final String message = line.toString();
+			System.out.println("PING Received: " + message);
+			sendLine("PONG " + message.substring(message.indexOf("PING") + "PING".length())); // ex reply. PONG :tmi.twitch.tv
+			return;
+		}
+		if (mPipeline.route(line, mRouteMessage)) {
+			return;
+		}
+		System.out.println(line); // print out non PRIVMSG messages
 	}
-	
+
 	/**
-	 * Combine the message and emote to create a unique message, so that Twitch does not ignore repeated identical messages.
-	 * 
-	 * @param message Primary message to send
-	 * @param emote Emote that is optionally added to message if needed to make it a unique message
-	 * @return Unique message
+	 * Writes the chat messages let through by the rate limit to the connection
 	 */
-	private String createUniqueMessage(final String message, final String emote)
-	{
-		if (mNeedUniqueMsg) {
-			mNeedUniqueMsg = false;
-			return message + " " + emote;
-		} else {
-			mNeedUniqueMsg = true;
-			return message;
+	private class ConnectionLineSink implements OutboundWriter.LineSink {
+
+		@Override
+		public void sendLines(List<String> lines) {
+			if (mConnection != null) {
+				mConnection.send(lines);
+			}
 		}
 	}
-	
+
 	/**
-	 * Send a PRIVMSG (aka chat message) to the currently joined channel
-	 * 
-	 * @param message Chat message
+	 * Send a line to Twitch IRC. The line is written by the selector loop, so this never blocks the caller.
+	 *
+	 * @param line IRC line, without the trailing CRLF
 	 */
-	private void sendChatMessage(final String message) {
-		try {
-			mTwitchWriter.write("PRIVMSG " + mChannelName + " :" + message + "\r\n"); // send Private message
-			mTwitchWriter.flush();
-		} catch (Exception exp) {
-			exp.printStackTrace();
+	private void sendLine(final String line) {
+		if (mConnection != null) {
+			mConnection.send(line);
 		}
 	}
 
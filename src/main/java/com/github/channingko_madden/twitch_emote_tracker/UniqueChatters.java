@@ -0,0 +1,144 @@
+package com.github.channingko_madden.twitch_emote_tracker;
+
+/**
+ * This class estimates how many distinct chatters posted something (ex. an emote), since tracking started and within
+ * the last hour, with HyperLogLog sketches.
+ *
+ * The last hour is kept as a ring of ten minute sketches, merged when read, so the window slides in ten minute steps
+ * and memory stays fixed. Like the sketches, a whole UniqueChatters can be merged into another (ex. the same emote
+ * counted by several readers, or in several channels).
+ *
+ * Chatters are added by the thread processing the channel and read from any thread.
+ *
+ * @author channing.ko-madden
+ *
+ */
+public class UniqueChatters {
+
+	/** Length of each sketch of the last hour */
+	public static final long BUCKET_MILLIS = 10 * RateHistory.MINUTE_MILLIS;
+	private static final int BUCKETS = (int) (RateHistory.HOUR_MILLIS / BUCKET_MILLIS);
+
+	private final HyperLogLog mTotal = new HyperLogLog();
+	private final HyperLogLog[] mBuckets = new HyperLogLog[BUCKETS];
+	/** Absolute number (time / bucket length) of the sketch in each slot of mBuckets, Long.MIN_VALUE if unused */
+	private final long[] mBucketNumbers = new long[BUCKETS];
+
+	/**
+	 * Constructor
+	 */
+	public UniqueChatters() {
+		for (int i = 0; i < BUCKETS; i++) {
+			mBuckets[i] = new HyperLogLog();
+			mBucketNumbers[i] = Long.MIN_VALUE;
+		}
+	}
+
+	/**
+	 * Add a chatter at a point in time
+	 * @param timeMillis Time the chatter posted, in milliseconds since the epoch
+	 * @param chatterHash Hash of the chatter's nick (see HyperLogLog.hash)
+	 */
+	public synchronized void add(long timeMillis, long chatterHash) {
+		mTotal.offer(chatterHash);
+		final HyperLogLog bucket = bucket(Math.floorDiv(timeMillis, BUCKET_MILLIS));
+		if (bucket != null) { // late chatters are added to the last hour if their bucket is still kept
+			bucket.offer(chatterHash);
+		}
+	}
+
+	/**
+	 * @return Estimated number of distinct chatters since tracking started
+	 */
+	public synchronized long getTotal() {
+		return mTotal.estimate();
+	}
+
+	/**
+	 * @param nowMillis Current time, in milliseconds since the epoch
+	 * @return Estimated number of distinct chatters within the last hour, in ten minute steps
+	 */
+	public long getLastHour(long nowMillis) {
+		return getLastHourSketch(nowMillis).estimate();
+	}
+
+	/**
+	 * @param nowMillis Current time, in milliseconds since the epoch
+	 * @return Sketch of the chatters within the last hour, to merge with other sketches (ex. of other channels)
+	 */
+	public synchronized HyperLogLog getLastHourSketch(long nowMillis) {
+		final long current = Math.floorDiv(nowMillis, BUCKET_MILLIS);
+		final HyperLogLog sketch = new HyperLogLog();
+		for (int i = 0; i < BUCKETS; i++) {
+			if (mBucketNumbers[i] <= current && current - mBucketNumbers[i] < BUCKETS) {
+				sketch.merge(mBuckets[i]);
+			}
+		}
+		return sketch;
+	}
+
+	/**
+	 * @return Copy of the sketch of the chatters since tracking started
+	 */
+	public synchronized HyperLogLog getTotalSketch() {
+		return mTotal.copy();
+	}
+
+	/**
+	 * Add the chatters of another UniqueChatters to this one. Its ten minute sketches are merged into the same ten
+	 * minutes here, if they are not older than the ones kept here
+	 * @param other Chatters to add, not changed
+	 */
+	public void merge(UniqueChatters other) {
+		final HyperLogLog total;
+		final HyperLogLog[] buckets = new HyperLogLog[BUCKETS];
+		final long[] numbers = new long[BUCKETS];
+		synchronized (other) { // never hold both locks
+			total = other.mTotal.copy();
+			for (int i = 0; i < BUCKETS; i++) {
+				buckets[i] = other.mBuckets[i].copy();
+				numbers[i] = other.mBucketNumbers[i];
+			}
+		}
+		synchronized (this) {
+			mTotal.merge(total);
+			for (int i = 0; i < BUCKETS; i++) {
+				if (numbers[i] != Long.MIN_VALUE) {
+					final HyperLogLog bucket = bucket(numbers[i]);
+					if (bucket != null) {
+						bucket.merge(buckets[i]);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Forget every chatter
+	 */
+	public synchronized void clear() {
+		mTotal.clear();
+		for (int i = 0; i < BUCKETS; i++) {
+			mBuckets[i].clear();
+			mBucketNumbers[i] = Long.MIN_VALUE;
+		}
+	}
+
+	/**
+	 * Find the sketch of a ten minute bucket, reusing the slot of a bucket that fell out of the hour
+	 * @param number Absolute number (time / bucket length) of the bucket
+	 * @return The sketch, or null if the bucket is older than the one now in its slot
+	 */
+	private HyperLogLog bucket(long number) {
+		final int slot = (int) Math.floorMod(number, (long) BUCKETS);
+		if (mBucketNumbers[slot] != number) {
+			if (mBucketNumbers[slot] != Long.MIN_VALUE && mBucketNumbers[slot] > number) {
+				return null;
+			}
+			mBuckets[slot].clear();
+			mBucketNumbers[slot] = number;
+		}
+		return mBuckets[slot];
+	}
+
+}
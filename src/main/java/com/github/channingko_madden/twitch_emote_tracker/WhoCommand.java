@@ -0,0 +1,44 @@
+package com.github.channingko_madden.twitch_emote_tracker;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * This class is the "!who [emote]" command, which replies with the chatters who posted a tracked emote the most.
+ *
+ * @author channing.ko-madden
+ *
+ */
+public class WhoCommand implements ChatCommand {
+
+	/** Number of chatters given */
+	public static final int COUNT = 3;
+
+	@Override
+	public String getName() {
+		return "!who";
+	}
+
+	@Override
+	public void execute(ChannelTracker channel, String argument, Reply reply) {
+		final int index = channel.indexOfEmote(argument);
+		if (index == -1) {
+			reply.send(channel, channel.createUniqueMessage(":( " + argument + " is not being tracked", ":("), argument);
+			return;
+		}
+		final String emote = channel.getEmotes().get(index).string();
+		final ChatterStats chatters = channel.getChatters();
+		final List<ChatterStats.Chatter> top = chatters == null ? Collections.emptyList() : chatters.getTop(index, COUNT);
+		if (top.isEmpty()) {
+			reply.send(channel, channel.createUniqueMessage(emote + " has not been posted yet", "ResidentSleeper"),
+					getName() + " " + emote);
+			return;
+		}
+		final StringBuilder message = new StringBuilder("Top ").append(emote).append(" posters:");
+		for (int i = 0; i < top.size(); i++) {
+			message.append(i == 0 ? " " : ", ").append(top.get(i).getNick()).append(' ').append(top.get(i).getCount());
+		}
+		reply.send(channel, channel.createUniqueMessage(message.toString(), "PogChamp"), getName() + " " + emote);
+	}
+
+}
@@ -0,0 +1,130 @@
+package com.github.channingko_madden.twitch_emote_tracker.gui;
+
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import javax.swing.Timer;
+import javax.swing.table.AbstractTableModel;
+
+/**
+ * This class collects the table cells that have changed, and tells the table model about them on the
+ * Swing event dispatch thread at a fixed frame rate.
+ *
+ * Cells can be marked as changed from any thread. However many times a cell changes between two frames, the
+ * table is only told once, so the cost of refreshing the table does not depend on how fast chat is moving.
+ *
+ * @author channing.ko-madden
+ *
+ */
+public class DirtyRowTracker {
+
+	/** Default number of times per second the table is refreshed */
+	public static final int DEFAULT_REFRESH_RATE = 20;
+
+	/** Table model to notify of changed cells */
+	private final AbstractTableModel mModel;
+	/** Changed columns of each row, as a bit mask (bit n set means column n changed) */
+	private final AtomicIntegerArray mDirtyColumns;
+	/** Set when any cell has changed since the last frame, so idle frames skip scanning the rows */
+	private final AtomicBoolean mDirty = new AtomicBoolean(false);
+	/** Swing timer that flushes changed cells on the event dispatch thread */
+	private final Timer mTimer;
+
+	/**
+	 * Constructor
+	 * @param model Table model to notify of changed cells
+	 * @param rows Number of rows in the table
+	 * @param refreshRate Number of times per second the table is refreshed
+	 */
+	public DirtyRowTracker(AbstractTableModel model, int rows, int refreshRate) {
+		mModel = model;
+		mDirtyColumns = new AtomicIntegerArray(rows);
+		mTimer = new Timer(1000 / Math.max(1, refreshRate), new FlushListener());
+		mTimer.setCoalesce(true); // skip frames instead of queueing them up if the event dispatch thread falls behind
+	}
+
+	/**
+	 * Mark a cell as changed. May be called from any thread.
+	 * @param row Row of the cell
+	 * @param column Column of the cell, at most 31
+	 */
+	public void markDirty(int row, int column) {
+		final int bit = 1 << column;
+		int columns;
+		do {
+			columns = mDirtyColumns.get(row);
+			if ((columns & bit) != 0) {
+				return; // already waiting for the next frame
+			}
+		} while (!mDirtyColumns.compareAndSet(row, columns, columns | bit));
+		mDirty.set(true);
+	}
+
+	/**
+	 * Mark a column as changed in every row. May be called from any thread.
+	 * @param column Column to mark, at most 31
+	 */
+	public void markColumnDirty(int column) {
+		for (int row = 0; row < mDirtyColumns.length(); row++) {
+			markDirty(row, column);
+		}
+	}
+
+	/**
+	 * Start refreshing the table
+	 */
+	public void start() {
+		mTimer.start();
+	}
+
+	/**
+	 * Stop refreshing the table
+	 */
+	public void stop() {
+		mTimer.stop();
+	}
+
+	/**
+	 * Tell the table model about every cell changed since the last frame. Must be called on the event dispatch thread.
+	 */
+	private void flush() {
+		if (!mDirty.getAndSet(false)) {
+			return;
+		}
+		int firstRow = -1;
+		int lastRow = -1;
+		int firstColumns = 0;
+		for (int row = 0; row < mDirtyColumns.length(); row++) {
+			final int columns = mDirtyColumns.getAndSet(row, 0);
+			if (columns != 0) {
+				if (firstRow == -1) {
+					firstRow = row;
+					firstColumns = columns;
+				}
+				lastRow = row;
+			}
+		}
+		if (firstRow == -1) {
+			return;
+		} else if (firstRow == lastRow && Integer.bitCount(firstColumns) == 1) {
+			mModel.fireTableCellUpdated(firstRow, Integer.numberOfTrailingZeros(firstColumns));
+		} else {
+			mModel.fireTableRowsUpdated(firstRow, lastRow); // one event covering every changed row
+		}
+	}
+
+	/**
+	 * This class listens to the refresh timer, and flushes the changed cells each frame
+	 * @author channing.ko-madden
+	 *
+	 */
+	private class FlushListener implements ActionListener {
+
+		@Override
+		public void actionPerformed(ActionEvent e) {
+			flush();
+		}
+	}
+}
@@ -1,5 +1,8 @@
 package com.github.channingko_madden.twitch_emote_tracker.gui;
 
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
 import java.util.List;
 import java.util.Map;
 
@@ -20,10 +23,22 @@ public class EmoteTableModel extends AbstractTableModel{
 	 * what columns need to be updated based on what data has changed.
 	 */
 	public static Map<EmoteEvent.Type, Integer> TableColumns = 
-			Map.of(EmoteEvent.Type.Count, 1, EmoteEvent.Type.Query, 2);
+			Map.of(EmoteEvent.Type.Count, 1, EmoteEvent.Type.Query, 2, EmoteEvent.Type.Spike, 7);
+	
+	/**
+	 * Table column numbers of the rolling counts. These change with Count events, and also as time passes.
+	 */
+	public static final int[] RateColumns = {3, 4, 6};
+	
+	/**
+	 * Table column numbers of the distinct chatters. These change with Count events.
+	 */
+	public static final int[] ChatterColumns = {5, 6};
 	
 	private final List<EmoteValue> mEmoteList;
-	private final String[] columnNames = {"Emote", "Count", "Queries"};
+	/** Format of the time of the latest spike, in the local time zone */
+	private final DateTimeFormatter mTimeFormat = DateTimeFormatter.ofPattern("HH:mm:ss").withZone(ZoneId.systemDefault());
+	private final String[] columnNames = {"Emote", "Count", "Queries", "Last Minute", "Last Hour", "Chatters", "Chatters Last Hour", "Last Spike"};
 	
 	
 	public EmoteTableModel(List<EmoteValue> emotes) {
@@ -53,6 +68,17 @@ public class EmoteTableModel extends AbstractTableModel{
 			return mEmoteList.get(rowIndex).getCount();
 		} else if (columnIndex == 2) {
 			return mEmoteList.get(rowIndex).getQueries();
+		} else if (columnIndex == 3) {
+			return mEmoteList.get(rowIndex).getCountLastMinute();
+		} else if (columnIndex == 4) {
+			return mEmoteList.get(rowIndex).getCountLastHour();
+		} else if (columnIndex == 5) {
+			return mEmoteList.get(rowIndex).getUniqueChatters();
+		} else if (columnIndex == 6) {
+			return mEmoteList.get(rowIndex).getUniqueChattersLastHour();
+		} else if (columnIndex == 7) {
+			final long spike = mEmoteList.get(rowIndex).getLastSpikeMillis();
+			return spike == 0 ? "" : mTimeFormat.format(Instant.ofEpochMilli(spike));
 		} else {
 			return "";
 		}
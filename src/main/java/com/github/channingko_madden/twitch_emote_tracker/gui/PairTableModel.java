@@ -0,0 +1,67 @@
+package com.github.channingko_madden.twitch_emote_tracker.gui;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.swing.table.AbstractTableModel;
+
+import com.github.channingko_madden.twitch_emote_tracker.EmoteCooccurrence;
+
+/**
+ * Table Model for displaying the pairs of tracked emotes most often posted in the same message (EmoteCooccurrence).
+ *
+ * The pairs are read when refresh is called, on the event dispatch thread, so the table never reads the counts
+ * while they change.
+ *
+ * @author channing.ko-madden
+ *
+ */
+public class PairTableModel extends AbstractTableModel {
+
+	private static final long serialVersionUID = 1L;
+
+	/** Number of pairs displayed */
+	public static final int ROWS = 20;
+
+	private final EmoteCooccurrence mCooccurrence;
+	private List<EmoteCooccurrence.Pair> mTop = new ArrayList<>();
+	private final String[] columnNames = {"Posted Together", "Messages"};
+
+	public PairTableModel(EmoteCooccurrence cooccurrence) {
+		mCooccurrence = cooccurrence;
+	}
+
+	/**
+	 * Read the current top pairs, and redraw the table. Must be called on the event dispatch thread
+	 */
+	public void refresh() {
+		mTop = mCooccurrence.getTop(ROWS);
+		fireTableDataChanged();
+	}
+
+	@Override
+	public int getRowCount() {
+		return mTop.size();
+	}
+
+	@Override
+	public int getColumnCount() {
+		return columnNames.length;
+	}
+
+	@Override
+	public String getColumnName(int column) {
+		return columnNames[column];
+	}
+
+	@Override
+	public Object getValueAt(int rowIndex, int columnIndex) {
+		final EmoteCooccurrence.Pair pair = mTop.get(rowIndex);
+		if (columnIndex == 0) {
+			return pair.getFirst().string() + " + " + pair.getSecond().string();
+		} else {
+			return pair.getCount();
+		}
+	}
+
+}
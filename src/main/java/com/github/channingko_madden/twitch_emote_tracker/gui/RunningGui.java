@@ -1,27 +1,38 @@
 package com.github.channingko_madden.twitch_emote_tracker.gui;
 
 import java.awt.BorderLayout;
+import java.awt.Dimension;
+import java.awt.GridLayout;
+import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.util.ArrayList;
 import java.util.List;
 
 import javax.swing.BorderFactory;
 import javax.swing.JButton;
+import javax.swing.JLabel;
 import javax.swing.JPanel;
 import javax.swing.JScrollPane;
 import javax.swing.JTable;
+import javax.swing.JTabbedPane;
 import javax.swing.ScrollPaneConstants;
-import javax.swing.table.AbstractTableModel;
+import javax.swing.Timer;
 
+import com.github.channingko_madden.twitch_emote_tracker.ChannelTracker;
 import com.github.channingko_madden.twitch_emote_tracker.EmoteEvent;
 import com.github.channingko_madden.twitch_emote_tracker.EmoteSubscriber;
 import com.github.channingko_madden.twitch_emote_tracker.EmoteValue;
+import com.github.channingko_madden.twitch_emote_tracker.SpamFilter;
 
 /**
  * This class builds the GUI that displays to the user the data it is tracking.
+ * When more than one channel is tracked, each channel's data is displayed in its own tab.
+ * Beside the tracked emotes, the most posted words of the chat are displayed, to spot hot emotes that are not tracked,
+ * and the pairs of tracked emotes most often posted in the same message. When repeated messages are skipped, the
+ * number skipped is displayed above.
  * 
  * This GUI allows the user to return to the start GUI.
- * In the future there will be a prompt before returning asking the user if they want to return with or without saving the data gathered 
- * up to this point.
+ * The data gathered up to this point is saved (EmoteStore), and restored the next time the same channel is tracked.
  * 
  * @author channing.ko-madden
  *
@@ -30,8 +41,17 @@ public class RunningGui {
 	
 	/** JPanel that contains the Running GUI */
 	private JPanel mThePanel;
-	/** Table that displays emote statistics */
-	private JTable mDataTable;
+	/** Collect the table cells changed by emote events, and refresh them on the event dispatch thread. One per table */
+	private final List<DirtyRowTracker> mRowTrackers = new ArrayList<>();
+	/** Trending word tables, refreshed by the rate timer */
+	private final List<TrendingTableModel> mTrendingModels = new ArrayList<>();
+	/** Emote pair tables, refreshed by the rate timer */
+	private final List<PairTableModel> mPairModels = new ArrayList<>();
+	/** Labels displaying the number of repeated messages skipped by each channel's SpamFilter, refreshed by the rate timer */
+	private final List<JLabel> mSpamLabels = new ArrayList<>();
+	private final List<SpamFilter> mSpamFilters = new ArrayList<>();
+	/** Marks the rolling count columns as changed once a second, since they fall as time passes without any emote events */
+	private final Timer mRateTimer = new Timer(1000, new RateDecayListener());
 	
 	/**
 	 * Constructor 
@@ -45,35 +65,108 @@ public class RunningGui {
 	}
 	
 	/**
-	 * Build the GUI based on the emotes to track
-	 * @param emotes Emotes to display data of
+	 * Build the GUI based on the channels and emotes to track
+	 * @param channels Channels to display emote data of
 	 * @param closeListener Listener for the close button
 	 */
-	public void buildGui(List<EmoteValue> emotes, ActionListener closeListener) {
+	public void buildGui(List<ChannelTracker> channels, ActionListener closeListener) {
 
 		// Clear the panel so we can rebuild it.
 		mThePanel.removeAll();
+		stopRefresh();
 		
-		// create table and place inside a scrolling pane
-		mDataTable = new JTable(new EmoteTableModel(emotes));
-		mDataTable.setFillsViewportHeight(true);
-		
-		for (int i = 0; i < emotes.size(); i++) {
-			emotes.get(i).addEmoteListener(new EmoteRowListener(i));
+		if (channels.size() == 1) {
+			mThePanel.add(BorderLayout.CENTER, buildChannelPanel(channels.get(0)));
+		} else {
+			JTabbedPane channelTabs = new JTabbedPane();
+			for (ChannelTracker channel : channels) {
+				channelTabs.addTab(channel.getChannelName(), buildChannelPanel(channel));
+			}
+			mThePanel.add(BorderLayout.CENTER, channelTabs);
 		}
-		
-		JScrollPane scrollPane = new JScrollPane(mDataTable);
-		scrollPane.setVerticalScrollBarPolicy(ScrollPaneConstants.VERTICAL_SCROLLBAR_ALWAYS);
-		
-		mThePanel.add(BorderLayout.CENTER, scrollPane);
+		mRateTimer.start();
 		
 		JButton closeButton = new JButton("Close");
+		closeButton.addActionListener(new StopRefreshListener());
 		closeButton.addActionListener(closeListener);
 		
 		mThePanel.add(BorderLayout.SOUTH, closeButton);
 		
 	}
 	
+	/**
+	 * Build the panel of one channel: the table of tracked emotes, and beside it the tables of trending words and of
+	 * emote pairs
+	 * @param channel Channel to display data of
+	 * @return Panel containing the tables
+	 */
+	private JPanel buildChannelPanel(ChannelTracker channel) {
+		JPanel channelPanel = new JPanel(new BorderLayout());
+		channelPanel.add(BorderLayout.CENTER, buildTable(channel.getEmotes()));
+		
+		JPanel sidePanel = new JPanel(new GridLayout(0, 1));
+		if (channel.getTrending() != null) {
+			TrendingTableModel trendingModel = new TrendingTableModel(channel.getTrending());
+			mTrendingModels.add(trendingModel);
+			JTable trendingTable = new JTable(trendingModel);
+			trendingTable.setFillsViewportHeight(true);
+			sidePanel.add(new JScrollPane(trendingTable));
+		}
+		
+		PairTableModel pairModel = new PairTableModel(channel.getCooccurrence());
+		mPairModels.add(pairModel);
+		JTable pairTable = new JTable(pairModel);
+		pairTable.setFillsViewportHeight(true);
+		sidePanel.add(new JScrollPane(pairTable));
+		sidePanel.setPreferredSize(new Dimension(250, 0));
+		channelPanel.add(BorderLayout.EAST, sidePanel);
+		
+		if (channel.getSpamFilter() != null) {
+			JLabel spamLabel = new JLabel();
+			mSpamLabels.add(spamLabel);
+			mSpamFilters.add(channel.getSpamFilter());
+			channelPanel.add(BorderLayout.NORTH, spamLabel);
+		}
+		return channelPanel;
+	}
+	
+	/**
+	 * Build a table displaying the data of the emotes, placed inside a scrolling pane
+	 * @param emotes Emotes to display data of
+	 * @return Scrolling pane containing the table
+	 */
+	private JScrollPane buildTable(List<EmoteValue> emotes) {
+		EmoteTableModel model = new EmoteTableModel(emotes);
+		JTable dataTable = new JTable(model);
+		dataTable.setFillsViewportHeight(true);
+		
+		DirtyRowTracker rowTracker = new DirtyRowTracker(model, emotes.size(), DirtyRowTracker.DEFAULT_REFRESH_RATE);
+		rowTracker.start();
+		mRowTrackers.add(rowTracker);
+		for (int i = 0; i < emotes.size(); i++) {
+			emotes.get(i).addEmoteListener(new EmoteRowListener(rowTracker, i));
+		}
+		
+		JScrollPane scrollPane = new JScrollPane(dataTable);
+		scrollPane.setVerticalScrollBarPolicy(ScrollPaneConstants.VERTICAL_SCROLLBAR_ALWAYS);
+		return scrollPane;
+	}
+	
+	/**
+	 * Stop refreshing all data tables
+	 */
+	private void stopRefresh() {
+		mRateTimer.stop();
+		for (DirtyRowTracker rowTracker : mRowTrackers) {
+			rowTracker.stop();
+		}
+		mRowTrackers.clear();
+		mTrendingModels.clear();
+		mPairModels.clear();
+		mSpamLabels.clear();
+		mSpamFilters.clear();
+	}
+	
 	/**
 	 * Return a JPanel that contains the GUI, for displaying by the main class
 	 * @return JPanel with GUI set up
@@ -83,19 +176,63 @@ public class RunningGui {
 	}
 	
 	/**
-	 * This class listens to emote events for a given emote, and tells the data table to update the cell that displays the data
+	 * This class listens to the "Close" button, and stops refreshing the data tables
+	 * @author channing.ko-madden
+	 *
+	 */
+	private class StopRefreshListener implements ActionListener {
+
+		@Override
+		public void actionPerformed(ActionEvent e) {
+			stopRefresh();
+		}
+	}
+	
+	/**
+	 * This class listens to the rate timer, marks the rolling count columns of every table as changed, and
+	 * refreshes the trending word and emote pair tables and the skipped message counts
+	 * @author channing.ko-madden
+	 *
+	 */
+	private class RateDecayListener implements ActionListener {
+
+		@Override
+		public void actionPerformed(ActionEvent e) {
+			for (TrendingTableModel trendingModel : mTrendingModels) {
+				trendingModel.refresh();
+			}
+			for (PairTableModel pairModel : mPairModels) {
+				pairModel.refresh();
+			}
+			for (int i = 0; i < mSpamLabels.size(); i++) {
+				mSpamLabels.get(i).setText("Repeated messages skipped: " + mSpamFilters.get(i).getSuppressedCount());
+			}
+			for (DirtyRowTracker rowTracker : mRowTrackers) {
+				for (int column : EmoteTableModel.RateColumns) {
+					rowTracker.markColumnDirty(column);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * This class listens to emote events for a given emote, and marks the cell that displays the data as changed.
+	 * The cell is redrawn on the next refresh of the data table.
 	 * @author channing.ko-madden
 	 *
 	 */
 	private class EmoteRowListener implements EmoteSubscriber {
 		
-		private int row;
+		private final DirtyRowTracker rowTracker;
+		private final int row;
 		
 		/**
 		 * Constructor
+		 * @param rowTracker Tracker of the changed cells of the JTable the emote data is displayed in
 		 * @param row Row of JTable that emote data is displayed at
 		 */
-		public EmoteRowListener(int row) {
+		public EmoteRowListener(DirtyRowTracker rowTracker, int row) {
+			this.rowTracker = rowTracker;
 			this.row = row;
 		}
 
@@ -103,12 +240,21 @@ public class RunningGui {
 		public void actionPerformed(EmoteEvent event) {
 			switch (event.getType()) {
 				case Count: {
-					AbstractTableModel model = (AbstractTableModel) mDataTable.getModel();
-					model.fireTableCellUpdated(row, EmoteTableModel.TableColumns.get(EmoteEvent.Type.Count));
+					rowTracker.markDirty(row, EmoteTableModel.TableColumns.get(EmoteEvent.Type.Count));
+					for (int column : EmoteTableModel.RateColumns) {
+						rowTracker.markDirty(row, column);
+					}
+					for (int column : EmoteTableModel.ChatterColumns) {
+						rowTracker.markDirty(row, column);
+					}
 					break;
 				} case Query: {
-					AbstractTableModel model = (AbstractTableModel) mDataTable.getModel();
-					model.fireTableCellUpdated(row, EmoteTableModel.TableColumns.get(EmoteEvent.Type.Query));
+					rowTracker.markDirty(row, EmoteTableModel.TableColumns.get(EmoteEvent.Type.Query));
+					break;
+				} case Spike: {
+					System.out.printf("%s spike, %.1f standard deviations over its usual rate%n", event.getEmoteText(),
+							event.getEmoteSpikeScore());
+					rowTracker.markDirty(row, EmoteTableModel.TableColumns.get(EmoteEvent.Type.Spike));
 					break;
 				} default: {
 					break;
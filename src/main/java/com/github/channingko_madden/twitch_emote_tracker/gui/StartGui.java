@@ -6,6 +6,7 @@ import java.awt.GridBagConstraints;
 import java.awt.GridBagLayout;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.LinkedHashSet;
 import java.util.List;
@@ -21,7 +22,7 @@ import java.util.regex.Pattern;
  * This class builds the GUI that the user interacts with, in order to start the
  * Twitch emote bot
  * 
- * This GUI allows the user to input the name of a twitch streamer to connect
+ * This GUI allows the user to input the names of the twitch streamers to connect
  * with, and add/remove which emotes to track, then start the bot (which loads a
  * new gui).
  * 
@@ -31,11 +32,13 @@ import java.util.regex.Pattern;
 public class StartGui {
 	/** Regex pattern that matches valid Twitch usernames */
 	final private Pattern mUsernameRegexPattern = Pattern.compile("^[a-zA-Z0-9_]{4,25}$");
+	/** Regex pattern that separates channel names when more than one channel is entered */
+	final private Pattern mChannelSeparatorPattern = Pattern.compile("[,\\s]+");
 	
 	/** JPanel that contains the Start GUI */
 	private JPanel mThePanel;
 
-	/** Text field that contains the Twitch channel name to join */
+	/** Text field that contains the Twitch channel names to join, separated by commas */
 	private JTextField mChannelText;
 	/** Text field that user can write the Twitch emote to track */
 	private JTextField mAddEmoteText;
@@ -47,6 +50,9 @@ public class StartGui {
 	private JTextField mUserTwitchNicknameText;
 	/** Text field for the user OAuth token for their twitch account */
 	private JTextField mUserOAuthText;
+	/** Check box the user selects to record the chat to disk */
+	private JCheckBox mRecordChatBox;
+	private JCheckBox mFilterSpamBox;
 	/** Container that holds the added emotes */
 	private LinkedHashSet<String> mListData = new LinkedHashSet<>();
 
@@ -70,8 +76,8 @@ public class StartGui {
 		// components are placed. Aka it looks nice.
 		mThePanel.setBorder(BorderFactory.createEmptyBorder(10, 10, 10, 10));
 
-		// Text field for inputting the twitch channel to connect with
-		mChannelText = new JTextField("Twitch channel name", 25); // twitch channel name can be at max 25 characters
+		// Text field for inputting the twitch channels to connect with
+		mChannelText = new JTextField("Twitch channel names", 25); // twitch channel name can be at max 25 characters
 		mChannelText.addActionListener(new ChannelNameChecker());
 		mThePanel.add(BorderLayout.NORTH, mChannelText);
 
@@ -146,6 +152,12 @@ public class StartGui {
 		
 		launchBox.add(userAuthBox);
 
+		mRecordChatBox = new JCheckBox("Record chat");
+		launchBox.add(mRecordChatBox);
+
+		mFilterSpamBox = new JCheckBox("Skip repeated messages");
+		launchBox.add(mFilterSpamBox);
+
 		JButton launchButton = new JButton("Launch");
 		launchButton.addActionListener(launchListener);
 		launchBox.add(launchButton);
@@ -175,11 +187,17 @@ public class StartGui {
 	}
 	
 	/** 
-	 * Return the name of the Twitch Channel to join (ex. ninja, liihs)
-	 * @return Twitch Channel Name
+	 * Return the names of the Twitch Channels to join (ex. ninja, liihs)
+	 * @return Twitch Channel Names, without duplicates
 	 */
-	public String getChannelName() {
-		return mChannelText.getText();
+	public List<String> getChannelNames() {
+		final LinkedHashSet<String> names = new LinkedHashSet<>();
+		for (String name : mChannelSeparatorPattern.split(mChannelText.getText())) {
+			if (!name.isEmpty()) {
+				names.add(name);
+			}
+		}
+		return new ArrayList<>(names);
 	}
 	
 	/**
@@ -198,12 +216,28 @@ public class StartGui {
 		return mUserOAuthText.getText();
 	}
 	
+	/**
+	 * Return if the user wants the raw chat recorded, to replay later
+	 * @return True if chat should be recorded
+	 */
+	public boolean recordChat() {
+		return mRecordChatBox.isSelected();
+	}
+	
+	/**
+	 * Return if the user wants chatters repeating the same message to be counted once
+	 * @return True if repeated messages should be skipped
+	 */
+	public boolean filterSpam() {
+		return mFilterSpamBox.isSelected();
+	}
+	
 	/**
 	 * Return if the user has input data in the GUI correctly, and the app is ready to launch
 	 * @return True if app is launchable, false otherwise
 	 */
 	public boolean launchable() {
-		boolean launchable = validUsername(mChannelText);
+		boolean launchable = validChannels(mChannelText);
 		launchable &= validUsername(mUserTwitchNicknameText);
 		launchable &= validOAuth(mUserOAuthText.getText());
 		launchable &= addedEmoteCheck();
@@ -265,6 +299,29 @@ public class StartGui {
 		}
 	}
 	
+	/**
+	 * Check if the input Channel names are valid, and if not warn user by setting text
+	 * color to red.
+	 * 
+	 * @param textField JTextField object that contains the channel names, separated by commas
+	 * @return True if at least one channel name is entered and all are valid, false otherwise
+	 */
+	private boolean validChannels(JTextField textField) {
+		final List<String> names = getChannelNames();
+		boolean valid = !names.isEmpty();
+		for (String name : names) {
+			valid &= checkUsername(name);
+		}
+		if (!valid) {
+			textField.setSelectedTextColor(Color.RED);
+			textField.setForeground(Color.RED);
+		} else {
+			textField.setSelectedTextColor(Color.BLACK);
+			textField.setForeground(Color.BLACK);
+		}
+		return valid;
+	}
+	
 	/**
 	 * Check if there are emotes added to be tracked.
 	 * 
@@ -297,7 +354,9 @@ public class StartGui {
 		 */
 		@Override
 		public void actionPerformed(ActionEvent e) {
-			if (e.getSource() instanceof JTextField) {
+			if (e.getSource() == mChannelText) {
+				validChannels(mChannelText);
+			} else if (e.getSource() instanceof JTextField) {
 				validUsername((JTextField) e.getSource());
 			}
 		}
@@ -0,0 +1,66 @@
+package com.github.channingko_madden.twitch_emote_tracker.gui;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.swing.table.AbstractTableModel;
+
+import com.github.channingko_madden.twitch_emote_tracker.TrendingTokens;
+
+/**
+ * Table Model for displaying the most posted words of a channel's chat (TrendingTokens), tracked emotes or not.
+ *
+ * The words are read when refresh is called, on the event dispatch thread, so the table never reads the counts
+ * while they change.
+ *
+ * @author channing.ko-madden
+ *
+ */
+public class TrendingTableModel extends AbstractTableModel {
+
+	private static final long serialVersionUID = 1L;
+
+	/** Number of words displayed */
+	public static final int ROWS = 20;
+
+	private final TrendingTokens mTrending;
+	private List<TrendingTokens.Entry> mTop = new ArrayList<>();
+	private final String[] columnNames = {"Trending", "Count"};
+
+	public TrendingTableModel(TrendingTokens trending) {
+		mTrending = trending;
+	}
+
+	/**
+	 * Read the current top words, and redraw the table. Must be called on the event dispatch thread
+	 */
+	public void refresh() {
+		mTop = mTrending.getTop(ROWS);
+		fireTableDataChanged();
+	}
+
+	@Override
+	public int getRowCount() {
+		return mTop.size();
+	}
+
+	@Override
+	public int getColumnCount() {
+		return columnNames.length;
+	}
+
+	@Override
+	public String getColumnName(int column) {
+		return columnNames[column];
+	}
+
+	@Override
+	public Object getValueAt(int rowIndex, int columnIndex) {
+		if (columnIndex == 0) {
+			return mTop.get(rowIndex).getText();
+		} else {
+			return mTop.get(rowIndex).getCount();
+		}
+	}
+
+}
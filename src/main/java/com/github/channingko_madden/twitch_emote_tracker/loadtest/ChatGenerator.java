@@ -0,0 +1,149 @@
+package com.github.channingko_madden.twitch_emote_tracker.loadtest;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * This class generates raw Twitch IRC chat lines for one channel, from a fixed seed so that every run sees the same chat.
+ *
+ * Each word of a message is a tracked emote with a chance of the match density. When tagged, every other emote is
+ * treated as a native Twitch emote and listed in the emotes tag like Twitch does, and the rest are left to be found
+ * by scanning the message text (like BetterTTV emotes). The number of emote occurrences in each line is kept, so the
+ * counts of the tracker can be checked against what was sent.
+ *
+ * @author channing.ko-madden
+ *
+ */
+public class ChatGenerator {
+
+	/** Well known emotes, used before falling back to numbered emote names */
+	private static final String[] KNOWN_EMOTES = {"Kappa", "PogChamp", "LUL", "EZ", "Clap", "monkaS", "OMEGALUL",
+			"KEKW", "PepeHands", "Pog", "BibleThump", "4Head", "ResidentSleeper", "NotLikeThis", "Kreygasm"};
+	/** Words that are never emotes */
+	private static final String[] WORDS = {"the", "and", "that", "was", "what", "a", "chat", "is", "so", "good",
+			"play", "lol", "no", "way", "he", "did", "it", "again", "gg", "wp", "this", "game", "streamer", "when",
+			"nice", "clip", "here", "we", "go", "boys", "how", "last", "round"};
+
+	private final List<String> mEmotes;
+	private final String[] mLines;
+	private final String[] mMessages;
+	private final int[] mOccurrences;
+
+	/**
+	 * Create emote names to track
+	 * @param count Number of emotes
+	 * @return Well known emote names, followed by numbered emote names (ex. emote42)
+	 */
+	public static List<String> emoteNames(int count) {
+		final List<String> names = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) {
+			names.add(i < KNOWN_EMOTES.length ? KNOWN_EMOTES[i] : "emote" + i);
+		}
+		return names;
+	}
+
+	/**
+	 * Constructor. Generates all the lines up front.
+	 * @param channel Channel the lines are posted in, without the leading '#'
+	 * @param emotes Emotes posted in the chat
+	 * @param messageLength Number of words in each message
+	 * @param matchDensity Chance of each word being an emote, from 0 to 1
+	 * @param tagged True to give the lines IRCv3 tags, including the emotes tag
+	 * @param lineCount Number of lines to generate
+	 * @param seed Seed of the random chat
+	 */
+	public ChatGenerator(String channel, List<String> emotes, int messageLength, double matchDensity, boolean tagged,
+			int lineCount, long seed) {
+		mEmotes = new ArrayList<>(emotes);
+		mLines = new String[lineCount];
+		mMessages = new String[lineCount];
+		mOccurrences = new int[lineCount];
+
+		final Random random = new Random(seed);
+		final StringBuilder message = new StringBuilder();
+		final StringBuilder tag = new StringBuilder();
+		final StringBuilder raw = new StringBuilder();
+		final Map<Integer, StringBuilder> ranges = new HashMap<>();
+		for (int line = 0; line < lineCount; line++) {
+			message.setLength(0);
+			ranges.clear();
+			int occurrences = 0;
+			for (int word = 0; word < messageLength; word++) {
+				if (word > 0) {
+					message.append(' ');
+				}
+				if (!mEmotes.isEmpty() && random.nextDouble() < matchDensity) {
+					final int emote = random.nextInt(mEmotes.size());
+					final String name = mEmotes.get(emote);
+					if (tagged && emote % 2 == 0) {
+						final int start = message.length();
+						final StringBuilder range = ranges.computeIfAbsent(emote, k -> new StringBuilder());
+						range.append(range.length() == 0 ? "" : ",").append(start).append('-').append(start + name.length() - 1);
+					}
+					message.append(name);
+					occurrences++;
+				} else {
+					message.append(WORDS[random.nextInt(WORDS.length)]);
+				}
+			}
+
+			final String nick = "viewer" + random.nextInt(10000);
+			raw.setLength(0);
+			if (tagged) {
+				tag.setLength(0);
+				for (Map.Entry<Integer, StringBuilder> range : ranges.entrySet()) {
+					tag.append(tag.length() == 0 ? "" : "/").append(range.getKey()).append(':').append(range.getValue());
+				}
+				raw.append("@badge-info=;color=#1E90FF;display-name=").append(nick).append(";emotes=").append(tag)
+						.append(";mod=0;tmi-sent-ts=1600000000000 ");
+			}
+			raw.append(':').append(nick).append('!').append(nick).append('@').append(nick).append(".tmi.twitch.tv PRIVMSG #")
+					.append(channel).append(" :").append(message);
+			mLines[line] = raw.toString();
+			mMessages[line] = message.toString();
+			mOccurrences[line] = occurrences;
+		}
+	}
+
+	/**
+	 * @return Emotes posted in the chat
+	 */
+	public List<String> getEmotes() {
+		return mEmotes;
+	}
+
+	/**
+	 * @return Number of generated lines
+	 */
+	public int getLineCount() {
+		return mLines.length;
+	}
+
+	/**
+	 * @param i Line number
+	 * @return Raw IRC PRIVMSG line, without the trailing CRLF
+	 */
+	public String getLine(int i) {
+		return mLines[i];
+	}
+
+	/**
+	 * @param i Line number
+	 * @return The chat message (trailing param) of the line
+	 */
+	public String getMessage(int i) {
+		return mMessages[i];
+	}
+
+	/**
+	 * @param i Line number
+	 * @return Number of emote occurrences in the line
+	 */
+	public int getOccurrences(int i) {
+		return mOccurrences[i];
+	}
+
+}
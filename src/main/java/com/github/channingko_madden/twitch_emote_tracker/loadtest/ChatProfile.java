@@ -0,0 +1,52 @@
+package com.github.channingko_madden.twitch_emote_tracker.loadtest;
+
+/**
+ * This enum defines how the rate of chat messages changes over a load test
+ *
+ * @author channing.ko-madden
+ *
+ */
+public enum ChatProfile {
+
+	/** The base rate for the whole test */
+	STEADY {
+		@Override
+		public double rate(double baseRate, long elapsedMillis, long durationMillis) {
+			return baseRate;
+		}
+	},
+
+	/** The base rate, with one second bursts of ten times the base rate every ten seconds (ex. a big play on stream) */
+	BURST {
+		@Override
+		public double rate(double baseRate, long elapsedMillis, long durationMillis) {
+			return (elapsedMillis % 10000) >= 9000 ? baseRate * 10 : baseRate;
+		}
+	},
+
+	/**
+	 * The base rate for the first third of the test, then a jump to twenty times the base rate that decays back
+	 * towards the base rate over about thirty seconds (ex. a raid bringing in a second audience)
+	 */
+	RAID {
+		@Override
+		public double rate(double baseRate, long elapsedMillis, long durationMillis) {
+			final long raidStart = durationMillis / 3;
+			if (elapsedMillis < raidStart) {
+				return baseRate;
+			}
+			final double decay = Math.exp(-(elapsedMillis - raidStart) / 10000.0);
+			return baseRate * (1 + 19 * decay);
+		}
+	};
+
+	/**
+	 * Return the rate of chat messages at a point in the test
+	 * @param baseRate Base rate, in messages per second
+	 * @param elapsedMillis Time since the test started
+	 * @param durationMillis Length of the test
+	 * @return Rate in messages per second
+	 */
+	public abstract double rate(double baseRate, long elapsedMillis, long durationMillis);
+
+}
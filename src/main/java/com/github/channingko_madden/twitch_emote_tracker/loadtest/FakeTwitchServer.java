@@ -0,0 +1,366 @@
+package com.github.channingko_madden.twitch_emote_tracker.loadtest;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.github.channingko_madden.twitch_emote_tracker.IrcMessage;
+
+/**
+ * This class is a local stand-in for the Twitch IRC server, used to load test the tracker without a network.
+ *
+ * It accepts CAP REQ, PASS, NICK and JOIN, answers PING, and replays generated chat to the joined channels at a
+ * chosen rate (ChatProfile). Each client connection is read by its own thread.
+ *
+ * Latency is measured end to end with probes: "!emotecount" commands are sent in between the chat, and the time
+ * until the tracker posts its reply in the same channel is recorded. The tracker processes a channel's messages
+ * in order, so replies are matched to probes in the order the probes were sent.
+ *
+ * @author channing.ko-madden
+ *
+ */
+public class FakeTwitchServer {
+
+	/** Host name used in server replies */
+	private static final String HOST = "tmi.twitch.tv";
+
+	private final ServerSocket mServerSocket;
+	private final Thread mAcceptThread;
+	private final List<Client> mClients = new CopyOnWriteArrayList<>();
+	private volatile boolean mRunning = true;
+
+	/** Chat messages sent, over all channels and clients */
+	private final AtomicLong mSentMessages = new AtomicLong();
+	/** Emote occurrences within the chat messages sent */
+	private final AtomicLong mSentOccurrences = new AtomicLong();
+	/** PONGs received for PINGs sent by the server */
+	private final AtomicLong mPongs = new AtomicLong();
+	/** Time from sending each probe to receiving its reply, in nanoseconds */
+	private final List<Long> mProbeLatencies = new ArrayList<>();
+
+	/**
+	 * Constructor. Starts accepting connections on the loopback address.
+	 * @param port Port to listen on, or 0 for any free port
+	 * @throws IOException If the port could not be bound
+	 */
+	public FakeTwitchServer(int port) throws IOException {
+		mServerSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+		mAcceptThread = new Thread(new Acceptor(), "FakeTwitchServer");
+		mAcceptThread.start();
+	}
+
+	/**
+	 * @return Port the server is listening on
+	 */
+	public int getPort() {
+		return mServerSocket.getLocalPort();
+	}
+
+	/**
+	 * Wait until a client has joined a number of channels
+	 * @param channels Number of channels
+	 * @param timeoutMillis Maximum time to wait
+	 * @return True if a client joined the channels in time
+	 * @throws InterruptedException If interrupted while waiting
+	 */
+	public synchronized boolean awaitJoined(int channels, long timeoutMillis) throws InterruptedException {
+		final long deadline = System.currentTimeMillis() + timeoutMillis;
+		while (true) {
+			for (Client client : mClients) {
+				if (client.mChannels.size() >= channels) {
+					return true;
+				}
+			}
+			final long remaining = deadline - System.currentTimeMillis();
+			if (remaining <= 0) {
+				return false;
+			}
+			wait(remaining);
+		}
+	}
+
+	/**
+	 * Replay generated chat to every client, spreading messages round robin over the channels each client joined.
+	 * Blocks until the replay is over. Writing blocks when a client reads slower than the chat is sent, so the
+	 * sent rate can fall below the profile's rate.
+	 *
+	 * @param generators Chat to send, by channel name without the leading '#'
+	 * @param profile How the rate changes over the replay
+	 * @param messagesPerSecond Base rate of chat messages, over all channels
+	 * @param durationMillis Length of the replay
+	 * @param probeIntervalMillis Time between latency probes in each channel, or 0 for no probes
+	 * @throws InterruptedException If interrupted during the replay
+	 */
+	public void replay(Map<String, ChatGenerator> generators, ChatProfile profile, double messagesPerSecond,
+			long durationMillis, long probeIntervalMillis) throws InterruptedException {
+		final String[] channels = generators.keySet().toArray(new String[0]);
+		final int[] nextLine = new int[channels.length];
+		int nextChannel = 0;
+		double owed = 0;
+		final long start = System.nanoTime();
+		long last = start;
+		long nextProbe = 0;
+		long nextPing = 5000;
+		long elapsedMillis;
+		while ((elapsedMillis = (System.nanoTime() - start) / 1000000) < durationMillis) {
+			final long now = System.nanoTime();
+			owed += profile.rate(messagesPerSecond, elapsedMillis, durationMillis) * (now - last) / 1e9;
+			last = now;
+			while (owed >= 1) {
+				final int c = nextChannel;
+				nextChannel = (nextChannel + 1) % channels.length;
+				final ChatGenerator generator = generators.get(channels[c]);
+				final int line = nextLine[c];
+				nextLine[c] = (line + 1) % generator.getLineCount();
+				for (Client client : mClients) {
+					if (client.mChannels.contains(channels[c])) {
+						client.write(generator.getLine(line));
+						mSentMessages.incrementAndGet();
+						mSentOccurrences.addAndGet(generator.getOccurrences(line));
+					}
+				}
+				owed--;
+			}
+			if (probeIntervalMillis > 0 && elapsedMillis >= nextProbe) {
+				nextProbe = elapsedMillis + probeIntervalMillis;
+				for (int c = 0; c < channels.length; c++) {
+					final List<String> emotes = generators.get(channels[c]).getEmotes();
+					if (!emotes.isEmpty()) {
+						probe(channels[c], emotes.get((int) (elapsedMillis % emotes.size())));
+					}
+				}
+			}
+			if (elapsedMillis >= nextPing) {
+				nextPing = elapsedMillis + 5000;
+				for (Client client : mClients) {
+					client.write("PING :" + HOST);
+				}
+			}
+			for (Client client : mClients) {
+				client.flush();
+			}
+			Thread.sleep(1);
+		}
+	}
+
+	/**
+	 * Send an "!emotecount" command to a channel, and remember when it was sent
+	 * @param channel Channel name without the leading '#'
+	 * @param emote Emote to ask for
+	 */
+	private void probe(String channel, String emote) {
+		for (Client client : mClients) {
+			if (client.mChannels.contains(channel)) {
+				client.mProbes.computeIfAbsent(channel, k -> new ConcurrentLinkedQueue<>()).add(System.nanoTime());
+				client.write(":probe!probe@probe.tmi.twitch.tv PRIVMSG #" + channel + " :!emotecount " + emote);
+			}
+		}
+	}
+
+	/**
+	 * @return Number of chat messages sent
+	 */
+	public long getSentMessages() {
+		return mSentMessages.get();
+	}
+
+	/**
+	 * @return Number of emote occurrences within the chat messages sent
+	 */
+	public long getSentOccurrences() {
+		return mSentOccurrences.get();
+	}
+
+	/**
+	 * @return Number of PONGs received
+	 */
+	public long getPongs() {
+		return mPongs.get();
+	}
+
+	/**
+	 * @return Time from sending each answered probe to receiving its reply, in nanoseconds
+	 */
+	public long[] getProbeLatencies() {
+		synchronized (mProbeLatencies) {
+			final long[] latencies = new long[mProbeLatencies.size()];
+			for (int i = 0; i < latencies.length; i++) {
+				latencies[i] = mProbeLatencies.get(i);
+			}
+			return latencies;
+		}
+	}
+
+	/**
+	 * Stop accepting connections, and close every client connection
+	 */
+	public void close() {
+		mRunning = false;
+		try {
+			mServerSocket.close();
+		} catch (IOException exp) {
+			exp.printStackTrace();
+		}
+		for (Client client : mClients) {
+			client.close();
+		}
+	}
+
+	/**
+	 * Called by a client thread when the client has joined a channel
+	 */
+	private synchronized void onJoined() {
+		notifyAll();
+	}
+
+	/**
+	 * Accepts connections, and starts a thread reading each one
+	 */
+	private class Acceptor implements Runnable {
+
+		@Override
+		public void run() {
+			while (mRunning) {
+				try {
+					final Client client = new Client(mServerSocket.accept());
+					mClients.add(client);
+					new Thread(client, "FakeTwitchClient-" + mClients.size()).start();
+				} catch (IOException exp) {
+					if (mRunning) {
+						exp.printStackTrace();
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * One client connection. Reads and answers the client's lines on its own thread, while chat is written by the
+	 * replay thread.
+	 */
+	private class Client implements Runnable {
+
+		private final Socket mSocket;
+		private final BufferedReader mReader;
+		private final BufferedWriter mWriter;
+		/** Channels joined, without the leading '#' */
+		private final Set<String> mChannels = ConcurrentHashMap.newKeySet();
+		/** Send times of the probes waiting for a reply, by channel */
+		private final Map<String, Queue<Long>> mProbes = new ConcurrentHashMap<>();
+		private final IrcMessage mMessage = new IrcMessage();
+		private String mNick = "justinfan";
+
+		Client(Socket socket) throws IOException {
+			mSocket = socket;
+			mSocket.setTcpNoDelay(true);
+			mReader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+			mWriter = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8), 64 * 1024);
+		}
+
+		@Override
+		public void run() {
+			try {
+				String line;
+				while ((line = mReader.readLine()) != null) {
+					handleLine(line);
+				}
+			} catch (IOException exp) {
+				if (mRunning) {
+					exp.printStackTrace();
+				}
+			} finally {
+				mClients.remove(this);
+				close();
+			}
+		}
+
+		/**
+		 * Answer a line sent by the client
+		 */
+		private void handleLine(String line) {
+			if (!mMessage.parse(line)) {
+				return;
+			}
+			if (mMessage.isCommand("CAP")) {
+				writeNow(":" + HOST + " CAP * ACK :" + (mMessage.hasTrailing() ? mMessage.getTrailing() : ""));
+			} else if (mMessage.isCommand("NICK") && mMessage.getParamCount() > 0) {
+				mNick = line.substring(mMessage.getParamStart(0), mMessage.getParamEnd(0));
+				writeNow(":" + HOST + " 001 " + mNick + " :Welcome, GLHF!");
+			} else if (mMessage.isCommand("JOIN") && mMessage.getParamCount() > 0) {
+				final String channel = line.substring(mMessage.getParamStart(0), mMessage.getParamEnd(0));
+				writeNow(":" + mNick + "!" + mNick + "@" + mNick + "." + HOST + " JOIN " + channel);
+				mChannels.add(channel.startsWith("#") ? channel.substring(1) : channel);
+				onJoined();
+			} else if (mMessage.isCommand("PING")) {
+				writeNow(":" + HOST + " PONG " + HOST + " :" + (mMessage.hasTrailing() ? mMessage.getTrailing() : ""));
+			} else if (mMessage.isCommand("PONG")) {
+				mPongs.incrementAndGet();
+			} else if (mMessage.isCommand("PRIVMSG") && mMessage.getParamCount() > 0) {
+				final String channel = line.substring(mMessage.getParamStart(0) + 1, mMessage.getParamEnd(0));
+				final Queue<Long> probes = mProbes.get(channel);
+				final Long sent = probes == null ? null : probes.poll();
+				if (sent != null) {
+					synchronized (mProbeLatencies) {
+						mProbeLatencies.add(System.nanoTime() - sent);
+					}
+				}
+			}
+			// PASS is accepted without checking the token
+		}
+
+		/**
+		 * Queue a line to be sent with the next flush
+		 */
+		synchronized void write(String line) {
+			try {
+				mWriter.write(line);
+				mWriter.write("\r\n");
+			} catch (IOException exp) {
+				close();
+			}
+		}
+
+		/**
+		 * Send a line now
+		 */
+		synchronized void writeNow(String line) {
+			write(line);
+			flush();
+		}
+
+		/**
+		 * Send the queued lines
+		 */
+		synchronized void flush() {
+			try {
+				mWriter.flush();
+			} catch (IOException exp) {
+				close();
+			}
+		}
+
+		void close() {
+			try {
+				mSocket.close();
+			} catch (IOException exp) {
+				// already closed
+			}
+		}
+	}
+
+}
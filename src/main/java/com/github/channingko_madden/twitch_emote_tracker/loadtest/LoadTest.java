@@ -0,0 +1,144 @@
+package com.github.channingko_madden.twitch_emote_tracker.loadtest;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.math3.stat.descriptive.DescriptiveStatistics;
+
+import com.github.channingko_madden.twitch_emote_tracker.ChannelTracker;
+import com.github.channingko_madden.twitch_emote_tracker.EmoteValue;
+import com.github.channingko_madden.twitch_emote_tracker.MessageRingBuffer;
+import com.github.channingko_madden.twitch_emote_tracker.TwitchSocket;
+
+/**
+ * This class load tests the tracker against a FakeTwitchServer, and reports its end to end throughput and latency.
+ *
+ * Options are given as key=value arguments, ex. rate=20000 seconds=30 profile=RAID channels=4 emotes=100
+ * <ul>
+ * <li>rate: base chat messages per second, over all channels (default 5000)</li>
+ * <li>seconds: length of the replay (default 20)</li>
+ * <li>profile: STEADY, BURST or RAID (default STEADY)</li>
+ * <li>channels: number of channels joined (default 1)</li>
+ * <li>emotes: number of tracked emotes per channel (default 50)</li>
+ * <li>words: words per chat message (default 12)</li>
+ * <li>density: chance of each word being an emote (default 0.2)</li>
+ * <li>tagged: true to send IRCv3 tags (default true)</li>
+ * <li>policy: BLOCK, DROP_OLDEST or DROP_NEWEST (default BLOCK)</li>
+ * <li>workers: number of process workers (default one per channel, up to the number of processors)</li>
+ * <li>probe: milliseconds between latency probes per channel (default 100)</li>
+ * </ul>
+ *
+ * Throughput is the number of chat messages sent divided by the time until the tracker has counted every emote
+ * occurrence sent. Latency is the time from a "!emotecount" probe being sent to the tracker's reply arriving.
+ *
+ * @author channing.ko-madden
+ *
+ */
+public class LoadTest {
+
+	/** Maximum time to wait for the tracker to count what was sent once the replay is over */
+	private static final long DRAIN_TIMEOUT_MILLIS = 30000;
+
+	public static void main(String[] args) throws IOException, InterruptedException {
+		final Map<String, String> options = new LinkedHashMap<>();
+		for (String arg : args) {
+			final int equals = arg.indexOf('=');
+			if (equals <= 0) {
+				System.out.println("Ignoring argument " + arg + ", expected key=value");
+				continue;
+			}
+			options.put(arg.substring(0, equals), arg.substring(equals + 1));
+		}
+		final double rate = Double.parseDouble(options.getOrDefault("rate", "5000"));
+		final long durationMillis = (long) (Double.parseDouble(options.getOrDefault("seconds", "20")) * 1000);
+		final ChatProfile profile = ChatProfile.valueOf(options.getOrDefault("profile", "STEADY"));
+		final int channelCount = Integer.parseInt(options.getOrDefault("channels", "1"));
+		final int emoteCount = Integer.parseInt(options.getOrDefault("emotes", "50"));
+		final int words = Integer.parseInt(options.getOrDefault("words", "12"));
+		final double density = Double.parseDouble(options.getOrDefault("density", "0.2"));
+		final boolean tagged = Boolean.parseBoolean(options.getOrDefault("tagged", "true"));
+		final MessageRingBuffer.OverflowPolicy policy =
+				MessageRingBuffer.OverflowPolicy.valueOf(options.getOrDefault("policy", "BLOCK"));
+		final int workers = Integer.parseInt(options.getOrDefault("workers",
+				String.valueOf(Math.min(channelCount, Runtime.getRuntime().availableProcessors()))));
+		final long probeMillis = Long.parseLong(options.getOrDefault("probe", "100"));
+
+		final List<String> emoteNames = ChatGenerator.emoteNames(emoteCount);
+		final Map<String, ChatGenerator> generators = new LinkedHashMap<>();
+		final List<ChannelTracker> channels = new ArrayList<>();
+		for (int i = 0; i < channelCount; i++) {
+			final String name = "loadtest" + i;
+			generators.put(name, new ChatGenerator(name, emoteNames, words, density, tagged, 8192, i));
+			final List<EmoteValue> emotes = new ArrayList<>();
+			for (String emote : emoteNames) {
+				emotes.add(new EmoteValue(emote));
+			}
+			final ChannelTracker channel = new ChannelTracker(name, emotes);
+			channel.setReplyInterval(0); // every probe is answered
+			channels.add(channel);
+		}
+
+		final FakeTwitchServer server = new FakeTwitchServer(0);
+		final TwitchSocket socket = new TwitchSocket("localhost", server.getPort(), channels, "justinfan12345",
+				"oauth:loadtest", TwitchSocket.DEFAULT_QUEUE_CAPACITY, policy, TwitchSocket.DEFAULT_BATCH_SIZE, workers, null);
+		socket.getOutboundWriter().setLimit(0, 0); // every probe is answered, the fake server does not mute
+		try {
+			if (!server.awaitJoined(channelCount, 5000)) {
+				System.out.println("Tracker did not join the channels");
+				return;
+			}
+
+			System.out.println("Replaying " + profile + " chat at " + rate + " messages/s for " + durationMillis + " ms");
+			final long start = System.nanoTime();
+			server.replay(generators, profile, rate, durationMillis, probeMillis);
+			final long replayNanos = System.nanoTime() - start;
+
+			// wait for the tracker to count everything sent
+			final long expected = server.getSentOccurrences();
+			final long deadline = System.currentTimeMillis() + DRAIN_TIMEOUT_MILLIS;
+			long counted;
+			while ((counted = countAll(channels)) < expected && System.currentTimeMillis() < deadline) {
+				Thread.sleep(1);
+			}
+			final long totalNanos = System.nanoTime() - start;
+
+			final long sent = server.getSentMessages();
+			System.out.println("Messages sent:         " + sent);
+			System.out.printf("Send rate:             %.0f messages/s%n", sent / (replayNanos / 1e9));
+			System.out.printf("Tracker throughput:    %.0f messages/s%n", sent / (totalNanos / 1e9));
+			System.out.println("Emotes sent / counted: " + expected + " / " + counted
+					+ (counted < expected ? " (not all counted within " + DRAIN_TIMEOUT_MILLIS + " ms)" : ""));
+			System.out.println("Messages dropped:      " + socket.getDroppedMessages());
+			System.out.println("PONGs received:        " + server.getPongs());
+
+			final DescriptiveStatistics latency = new DescriptiveStatistics();
+			for (long nanos : server.getProbeLatencies()) {
+				latency.addValue(nanos / 1e6);
+			}
+			if (latency.getN() > 0) {
+				System.out.printf("Latency (ms):          n=%d mean=%.2f p50=%.2f p99=%.2f max=%.2f%n", latency.getN(),
+						latency.getMean(), latency.getPercentile(50), latency.getPercentile(99), latency.getMax());
+			}
+		} finally {
+			socket.close();
+			server.close();
+		}
+	}
+
+	/**
+	 * @return Sum of the counts of every emote in every channel
+	 */
+	private static long countAll(List<ChannelTracker> channels) {
+		long count = 0;
+		for (ChannelTracker channel : channels) {
+			for (EmoteValue emote : channel.getEmotes()) {
+				count += emote.getCount();
+			}
+		}
+		return count;
+	}
+
+}
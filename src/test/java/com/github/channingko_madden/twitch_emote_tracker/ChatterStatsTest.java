@@ -0,0 +1,68 @@
+package com.github.channingko_madden.twitch_emote_tracker;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Tests the per chatter counts of ChatterStats, and that the least recently posting chatters are evicted first
+ *
+ * @author channing.ko-madden
+ *
+ */
+public class ChatterStatsTest {
+
+	private final EmoteMatcher mMatcher = new EmoteMatcher(List.of(new EmoteValue("Kappa"), new EmoteValue("LUL")));
+
+	@Test
+	public void countsEachChattersEmotes() {
+		final ChatterStats stats = new ChatterStats(8, 32);
+		post(stats, "alice", "Kappa Kappa LUL");
+		post(stats, "bob", "Kappa");
+		post(stats, "alice", "Kappa");
+		assertEquals(3, stats.getCount("alice", 0));
+		assertEquals(1, stats.getCount("alice", 1));
+		assertEquals(1, stats.getCount("bob", 0));
+		assertEquals(0, stats.getCount("bob", 1));
+
+		final List<ChatterStats.Chatter> top = stats.getTop(0, 5);
+		assertEquals(2, top.size());
+		assertEquals("alice", top.get(0).getNick());
+		assertEquals(3, top.get(0).getCount());
+	}
+
+	@Test
+	public void evictsTheLeastRecentChatter() {
+		final ChatterStats stats = new ChatterStats(2, 32);
+		post(stats, "alice", "Kappa");
+		post(stats, "bob", "Kappa");
+		post(stats, "alice", "Kappa");
+		post(stats, "carol", "Kappa");
+		assertEquals(2, stats.getUserCount());
+		assertEquals(1, stats.getEvictedCount());
+		assertEquals(2, stats.getCount("alice", 0));
+		assertEquals(0, stats.getCount("bob", 0));
+		assertEquals(1, stats.getCount("carol", 0));
+
+		// an evicted chatter starts again from zero
+		post(stats, "bob", "Kappa");
+		assertEquals(1, stats.getCount("bob", 0));
+		assertEquals(0, stats.getCount("alice", 0));
+	}
+
+	@Test
+	public void ignoresTooLongNicks() {
+		final ChatterStats stats = new ChatterStats(8, 32);
+		post(stats, "n".repeat(ChatterStats.MAX_NICK_LENGTH + 1), "Kappa");
+		assertEquals(0, stats.getUserCount());
+	}
+
+	private void post(ChatterStats stats, String nick, String message) {
+		final String line = nick + " " + message;
+		final int matched = mMatcher.collect(line, nick.length() + 1, line.length());
+		stats.add(line, 0, nick.length(), mMatcher, matched);
+	}
+
+}
@@ -0,0 +1,202 @@
+package com.github.channingko_madden.twitch_emote_tracker;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Tests the trie lookup of CommandDispatcher, registering while commands are looked up, and running commands on
+ * the command thread
+ *
+ * @author channing.ko-madden
+ *
+ */
+public class CommandDispatcherTest {
+
+	private final List<String> mReplies = Collections.synchronizedList(new ArrayList<String>());
+	private final CommandDispatcher mDispatcher = new CommandDispatcher(new ListReply());
+
+	@After
+	public void close() {
+		mDispatcher.close();
+	}
+
+	@Test
+	public void findsTheCommandOfTheFirstWord() {
+		final ChatCommand top = new NamedCommand("!top");
+		final ChatCommand t = new NamedCommand("!t");
+		final ChatCommand topList = new NamedCommand("!toplist");
+		mDispatcher.register(top);
+		mDispatcher.register(t);
+		mDispatcher.register(topList);
+
+		assertSame(top, find("!top"));
+		assertSame(top, find("!top Kappa"));
+		assertSame(top, find("!top\tKappa"));
+		assertSame(t, find("!t"));
+		assertSame(topList, find("!toplist 5"));
+		assertNull(find("!to"));
+		assertNull(find("!topl"));
+		assertNull(find("!topx"));
+		assertNull(find("top"));
+		assertNull(find(" !top"));
+		assertNull(find(""));
+
+		// only the given range is looked at
+		final String line = "PRIVMSG #channel :!top Kappa";
+		final int start = line.indexOf('!');
+		assertSame(top, mDispatcher.find(line, start, line.length()));
+		assertSame(t, mDispatcher.find(line, start, start + 2));
+	}
+
+	@Test
+	public void replacesACommandWithTheSameName() {
+		final ChatCommand first = new NamedCommand("!top");
+		final ChatCommand second = new NamedCommand("!top");
+		final ChatCommand other = new NamedCommand("!tops");
+		mDispatcher.register(first);
+		mDispatcher.register(other);
+		mDispatcher.register(second);
+		assertSame(second, find("!top"));
+		assertSame(other, find("!tops"));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsAnEmptyName() {
+		mDispatcher.register(new NamedCommand(""));
+	}
+
+	@Test
+	public void findsWhileCommandsAreRegistered() throws InterruptedException {
+		final ChatCommand top = new NamedCommand("!top");
+		mDispatcher.register(top);
+		final int count = 2000;
+		final Thread registering = new Thread() {
+			@Override
+			public void run() {
+				for (int i = 0; i < count; i++) {
+					mDispatcher.register(new NamedCommand("!t" + i));
+				}
+			}
+		};
+		registering.start();
+		int missed = 0;
+		while (registering.isAlive()) {
+			if (find("!top Kappa") != top) {
+				missed++;
+			}
+		}
+		registering.join();
+		assertEquals(0, missed);
+		for (int i = 0; i < count; i++) {
+			assertEquals("!t" + i, find("!t" + i).getName());
+		}
+	}
+
+	@Test
+	public void runsCommandsOnTheCommandThread() throws InterruptedException {
+		mDispatcher.register(new FailingCommand());
+		mDispatcher.register(new NamedCommand("!ok"));
+		mDispatcher.execute(find("!fail"), null, "");
+		mDispatcher.execute(find("!ok"), null, "Kappa");
+		mDispatcher.awaitIdle();
+		// the failing command does not stop the next
+		assertEquals(List.of("!ok Kappa on CommandDispatcher"), mReplies);
+	}
+
+	@Test
+	public void dropsCommandsWhenTooManyWait() throws InterruptedException {
+		final CommandDispatcher dispatcher = new CommandDispatcher(new ListReply(), 1);
+		final BlockedCommand blocked = new BlockedCommand();
+		dispatcher.execute(blocked, null, "");
+		blocked.mStarted.await();
+		dispatcher.execute(new NamedCommand("!a"), null, ""); // waits in the queue
+		dispatcher.execute(new NamedCommand("!b"), null, ""); // queue is full
+		assertEquals(1, dispatcher.getDroppedCount());
+		blocked.mRelease.countDown();
+		dispatcher.awaitIdle();
+		assertEquals(List.of("!a  on CommandDispatcher"), mReplies);
+		dispatcher.close();
+	}
+
+	private ChatCommand find(String message) {
+		return mDispatcher.find(message, 0, message.length());
+	}
+
+	/**
+	 * Adds replies to mReplies
+	 */
+	private class ListReply implements ChatCommand.Reply {
+
+		@Override
+		public void send(ChannelTracker channel, String message, String subject) {
+			mReplies.add(message);
+		}
+	}
+
+	/**
+	 * Replies with its name, argument and thread
+	 */
+	private static class NamedCommand implements ChatCommand {
+		private final String mName;
+
+		NamedCommand(String name) {
+			mName = name;
+		}
+
+		@Override
+		public String getName() {
+			return mName;
+		}
+
+		@Override
+		public void execute(ChannelTracker channel, String argument, Reply reply) {
+			reply.send(channel, mName + " " + argument + " on " + Thread.currentThread().getName(), mName);
+		}
+	}
+
+	private static class FailingCommand implements ChatCommand {
+
+		@Override
+		public String getName() {
+			return "!fail";
+		}
+
+		@Override
+		public void execute(ChannelTracker channel, String argument, Reply reply) {
+			throw new IllegalStateException("broken command");
+		}
+	}
+
+	/**
+	 * Holds the command thread until released
+	 */
+	private static class BlockedCommand implements ChatCommand {
+		final CountDownLatch mStarted = new CountDownLatch(1);
+		final CountDownLatch mRelease = new CountDownLatch(1);
+
+		@Override
+		public String getName() {
+			return "!blocked";
+		}
+
+		@Override
+		public void execute(ChannelTracker channel, String argument, Reply reply) {
+			mStarted.countDown();
+			try {
+				mRelease.await();
+			} catch (InterruptedException exp) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+}
@@ -0,0 +1,213 @@
+package com.github.channingko_madden.twitch_emote_tracker;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests that EmoteMatcher counts the same occurrences as the whole-word regex of EmoteValue.search, and counts native
+ * Twitch emotes from the character ranges of the emotes tag
+ *
+ * @author channing.ko-madden
+ *
+ */
+public class EmoteMatcherTest {
+
+	private static final String[] EMOTES = {"Kappa", "LUL", "PogChamp", "KEKW", "Kappa123"};
+	/** Tokens of the generated messages: emotes, emotes within longer words, and other words */
+	private static final String[] TOKENS = {"Kappa", "LUL", "PogChamp", "KEKW", "Kappa123", "xKappa", "Kappax", "KappaKappa",
+			"LULW", "kappa", "hello", "!emotecount", "\uD83D\uDE00", "Kappa\uD83D\uDE00"};
+	/**
+	 * Separators of the generated messages: the regex \s set, and whitespace that \s does not match. Unicode line
+	 * terminators (ex. NEL, U+0085) are left out, as the regex's $ also matches before a final one
+	 */
+	private static final String[] SEPARATORS = {" ", "  ", "\t", "\n", "\u000B", "\f", "\r", "\r\n", "\u00A0", "\u2003",
+			"\u3000"};
+
+	@Test
+	public void countsLikeTheRegex() {
+		final List<EmoteValue> matched = emotes();
+		final List<EmoteValue> searched = emotes();
+		final EmoteMatcher matcher = new EmoteMatcher(matched);
+		final Random random = new Random(42);
+		for (int n = 0; n < 20000; n++) {
+			final String message = message(random);
+			final long[] before = counts(searched);
+			for (EmoteValue emote : searched) {
+				emote.search(message);
+			}
+			final long[] expected = counts(searched);
+			for (int i = 0; i < expected.length; i++) {
+				expected[i] -= before[i];
+			}
+
+			final long[] found = new long[EMOTES.length];
+			final int count = matcher.match(message, 0, message.length());
+			for (int i = 0; i < count; i++) {
+				found[matcher.getMatchedIndex(i)] += matcher.getMatchedCount(i);
+			}
+			for (int i = 0; i < expected.length; i++) {
+				assertEquals(EMOTES[i] + " in \"" + message + "\"", expected[i], found[i]);
+			}
+		}
+	}
+
+	@Test
+	public void splitsOnTheRegexWhitespaceOnly() {
+		for (char c = 0; c < 0x3001; c++) {
+			final boolean regex = String.valueOf(c).matches("\\s");
+			assertEquals("char " + (int) c, regex, EmoteMatcher.isWhitespace(c));
+		}
+		final EmoteMatcher matcher = new EmoteMatcher(emotes());
+		assertEquals(0, matcher.match("Kappa\u00A0LUL", 0, "Kappa\u00A0LUL".length()));
+		assertEquals(2, matcher.match("Kappa\u000BLUL", 0, "Kappa\u000BLUL".length()));
+	}
+
+	@Test
+	public void countsWithinTheGivenRangeOnly() {
+		final EmoteMatcher matcher = new EmoteMatcher(emotes());
+		final String line = ":nick!nick@nick PRIVMSG #channel :Kappa Kappa LUL";
+		final int start = line.indexOf(":Kappa") + 1;
+		assertEquals(2, matcher.match(line, start, line.length()));
+		assertEquals(0, matcher.getMatchedIndex(0));
+		assertEquals(2, matcher.getMatchedCount(0));
+		// a range that cuts a token only sees the part within it
+		assertEquals(0, matcher.match(line, start + 1, start + 5));
+		assertEquals(1, matcher.match(line, start, start + 5));
+	}
+
+	@Test
+	public void flushAddsTheCollectedCounts() {
+		final List<EmoteValue> emotes = emotes();
+		final EmoteMatcher matcher = new EmoteMatcher(emotes);
+		final long time = 1700000000000L;
+		assertEquals(2, matcher.collect("Kappa LUL Kappa", 0, 15, time));
+		assertEquals(1, matcher.collect("LUL", 0, 3, time + 10));
+		assertEquals(0, emotes.get(0).getCount());
+		assertEquals(2, matcher.flush());
+		assertEquals(2, emotes.get(0).getCount());
+		assertEquals(2, emotes.get(1).getCount());
+		assertEquals(0, matcher.flush());
+
+		// occurrences of an earlier second are flushed before those of the next second are collected
+		matcher.collect("KEKW", 0, 4, time);
+		matcher.collect("KEKW KEKW", 0, 9, time + 1000);
+		assertEquals(1, emotes.get(3).getCount());
+		matcher.flush();
+		assertEquals(3, emotes.get(3).getCount());
+		assertTrue(emotes.get(3).getLastPostedMillis() >= time + 1000);
+		assertFalse(emotes.get(4).getCount() > 0);
+	}
+
+	@Test
+	public void countsTheRangesOfTheEmotesTag() {
+		final EmoteMatcher matcher = new EmoteMatcher(emotes());
+		final long[] found = matchTagged(matcher, "25:0-4,14-18", "Kappa LUL hey Kappa");
+		assertEquals(2, found[0]);
+		// LUL is not in the tag, so it is a third-party emote found by the text scan
+		assertEquals(1, found[1]);
+	}
+
+	@Test
+	public void countsRangesInCodePointsPastSurrogatePairs() {
+		final EmoteMatcher matcher = new EmoteMatcher(emotes());
+		matchTagged(matcher, "25:0-4", "Kappa"); // native, so only the tag ranges count it
+		// each emoji is one code point but two chars, so Kappa starts at code point 2 and char 3
+		final String message = "\uD83D\uDE00 Kappa \uD83D\uDE00\uD83D\uDE00 Kappa";
+		final long[] found = matchTagged(matcher, "25:2-6,11-15", message);
+		assertEquals(2, found[0]);
+
+		final String emojiOnly = "\uD83D\uDE00\uD83D\uDE00";
+		assertEquals(0, matchTagged(matcher, "", emojiOnly)[0]);
+	}
+
+	@Test
+	public void skipsTheTextScanForNativeEmotes() {
+		final EmoteMatcher matcher = new EmoteMatcher(emotes());
+		matchTagged(matcher, "25:0-4", "Kappa");
+		// Kappa is now known to be native: text that Twitch did not tag as the emote is not counted
+		assertEquals(0, matchTagged(matcher, "", "Kappa")[0]);
+		assertEquals(1, matchTagged(matcher, "", "LUL")[1]);
+		// and an untagged message is still matched by text
+		assertEquals(1, matcher.match("Kappa", 0, 5));
+	}
+
+	@Test
+	public void ignoresBrokenRanges() {
+		final EmoteMatcher matcher = new EmoteMatcher(emotes());
+		final long[] found = matchTagged(matcher, "25:0-4,40-44,7-2,x/1902:", "Kappa hi");
+		assertEquals(1, found[0]);
+		// a range that is not a tracked emote is ignored, the emote text next to it is not tagged
+		assertEquals(0, matchTagged(matcher, "354:0-1", "hi LUL")[0]);
+		assertEquals(1, matchTagged(matcher, "354:0-1", "hi LUL")[1]);
+	}
+
+	@Test
+	public void countsTheEmotesTagOfAnIrcLine() {
+		final EmoteMatcher matcher = new EmoteMatcher(emotes());
+		final String line = "@badge-info=;emotes=25:2-6;tmi-sent-ts=1700000000000 :nick!nick@nick.tmi.twitch.tv "
+				+ "PRIVMSG #channel :\uD83D\uDE00 Kappa LUL";
+		final IrcMessage message = new IrcMessage();
+		assertTrue(message.parse(line));
+		assertTrue(message.findTag("emotes"));
+		final int matched = matcher.matchTagged(line, message.getTrailingStart(), message.getTrailingEnd(),
+				message.getTagValueStart(), message.getTagValueEnd());
+		assertEquals(2, matched);
+		assertEquals(0, matcher.getMatchedIndex(0));
+		assertEquals(1, matcher.getMatchedIndex(1));
+	}
+
+	/**
+	 * @return Occurrences of each emote found in the message, with the given emotes tag value
+	 */
+	private static long[] matchTagged(EmoteMatcher matcher, String tag, String message) {
+		final String line = tag + " " + message;
+		final long[] found = new long[EMOTES.length];
+		final int count = matcher.matchTagged(line, tag.length() + 1, line.length(), 0, tag.length());
+		for (int i = 0; i < count; i++) {
+			found[matcher.getMatchedIndex(i)] += matcher.getMatchedCount(i);
+		}
+		return found;
+	}
+
+	private static List<EmoteValue> emotes() {
+		final List<EmoteValue> emotes = new ArrayList<>();
+		for (String emote : EMOTES) {
+			emotes.add(new EmoteValue(emote));
+		}
+		return emotes;
+	}
+
+	private static long[] counts(List<EmoteValue> emotes) {
+		final long[] counts = new long[emotes.size()];
+		for (int i = 0; i < counts.length; i++) {
+			counts[i] = emotes.get(i).getCount();
+		}
+		return counts;
+	}
+
+	private static String message(Random random) {
+		final StringBuilder message = new StringBuilder();
+		if (random.nextInt(4) == 0) {
+			message.append(SEPARATORS[random.nextInt(SEPARATORS.length)]);
+		}
+		final int tokens = random.nextInt(6);
+		for (int i = 0; i < tokens; i++) {
+			if (i > 0) {
+				message.append(SEPARATORS[random.nextInt(SEPARATORS.length)]);
+			}
+			message.append(TOKENS[random.nextInt(TOKENS.length)]);
+		}
+		if (random.nextInt(4) == 0) {
+			message.append(SEPARATORS[random.nextInt(SEPARATORS.length)]);
+		}
+		return message.toString();
+	}
+
+}
@@ -0,0 +1,250 @@
+package com.github.channingko_madden.twitch_emote_tracker;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests that EmoteStore restores the saved totals after a clean close and after a crash, from files written the way
+ * EmoteStore writes them.
+ *
+ * @author channing.ko-madden
+ *
+ */
+public class EmoteStoreTest {
+
+	private static final String CHANNEL = "channel";
+
+	@Rule
+	public TemporaryFolder mFolder = new TemporaryFolder();
+
+	@Test
+	public void restoresTotalsAfterClose() throws IOException {
+		final Path directory = mFolder.getRoot().toPath();
+		final ChannelTracker first = channel("Kappa", "LUL");
+		final EmoteStore store = new EmoteStore(directory, List.of(first));
+		first.getEmotes().get(0).add(7);
+		first.getEmotes().get(1).add(2);
+		first.getEmotes().get(1).incrementQueries();
+		store.close();
+
+		final ChannelTracker second = channel("Kappa", "LUL");
+		new EmoteStore(directory, List.of(second)).close();
+		assertCounts(second, 7, 2);
+		assertEquals(1, second.getEmotes().get(1).getQueries());
+	}
+
+	@Test
+	public void replaysLogsWrittenAfterTheSnapshot() throws IOException {
+		final Path channelDirectory = mFolder.newFolder(CHANNEL).toPath();
+		writeSnapshot(channelDirectory, 1, new Object[] {"Kappa", 10L, 1L});
+		// generation 0 is already in the snapshot, and must not be counted twice
+		writeLog(channelDirectory, 0, frame(new Object[] {"Kappa", 100L, 0L}));
+		writeLog(channelDirectory, 1, frame(new Object[] {"Kappa", 5L, 0L}));
+		writeLog(channelDirectory, 2, frame(new Object[] {"Kappa", 2L, 1L}, new Object[] {"LUL", 3L, 0L}));
+
+		final ChannelTracker channel = channel("Kappa", "LUL");
+		new EmoteStore(mFolder.getRoot().toPath(), List.of(channel)).close();
+		assertCounts(channel, 17, 3);
+		assertEquals(2, channel.getEmotes().get(0).getQueries());
+	}
+
+	@Test
+	public void ignoresTornLastFrame() throws IOException {
+		final Path channelDirectory = mFolder.newFolder(CHANNEL).toPath();
+		final byte[] good = frame(new Object[] {"Kappa", 4L, 0L});
+		final byte[] torn = frame(new Object[] {"Kappa", 50L, 0L});
+		writeLog(channelDirectory, 0, good, Arrays.copyOf(torn, torn.length - 5));
+
+		final ChannelTracker channel = channel("Kappa");
+		final EmoteStore store = new EmoteStore(mFolder.getRoot().toPath(), List.of(channel));
+		assertCounts(channel, 4);
+		// the store keeps working after recovering, and the torn frame stays ignored
+		channel.getEmotes().get(0).add(1);
+		store.close();
+
+		final ChannelTracker reopened = channel("Kappa");
+		new EmoteStore(mFolder.getRoot().toPath(), List.of(reopened)).close();
+		assertCounts(reopened, 5);
+	}
+
+	@Test
+	public void ignoresCorruptLastFrame() throws IOException {
+		final Path channelDirectory = mFolder.newFolder(CHANNEL).toPath();
+		final byte[] good = frame(new Object[] {"Kappa", 4L, 0L});
+		final byte[] corrupt = frame(new Object[] {"Kappa", 50L, 0L});
+		corrupt[corrupt.length - 1] ^= 0x01; // flip a bit of the queries change, so the checksum no longer matches
+		writeLog(channelDirectory, 0, good, corrupt);
+
+		final ChannelTracker channel = channel("Kappa");
+		new EmoteStore(mFolder.getRoot().toPath(), List.of(channel)).close();
+		assertCounts(channel, 4);
+	}
+
+	@Test(expected = IOException.class)
+	public void rejectsCorruptSnapshot() throws IOException {
+		final Path channelDirectory = mFolder.newFolder(CHANNEL).toPath();
+		writeSnapshot(channelDirectory, 0, new Object[] {"Kappa", 10L, 0L});
+		final Path snapshot = channelDirectory.resolve("snapshot.dat");
+		final byte[] bytes = Files.readAllBytes(snapshot);
+		bytes[bytes.length - 12] ^= 0x01;
+		Files.write(snapshot, bytes);
+
+		new EmoteStore(mFolder.getRoot().toPath(), List.of(channel("Kappa"))).close();
+	}
+
+	@Test
+	public void keepsTotalsWhenTheEmotesChange() throws IOException {
+		final Path directory = mFolder.getRoot().toPath();
+		final ChannelTracker first = channel("Kappa", "LUL");
+		EmoteStore store = new EmoteStore(directory, List.of(first));
+		first.getEmotes().get(0).add(3);
+		first.getEmotes().get(1).add(8);
+		store.close();
+
+		// Kappa is no longer tracked, and the emote indices move
+		final ChannelTracker second = channel("PogChamp", "LUL");
+		store = new EmoteStore(directory, List.of(second));
+		assertCounts(second, 0, 8);
+		second.getEmotes().get(0).add(1);
+		store.close();
+
+		final ChannelTracker third = channel("LUL", "Kappa", "PogChamp");
+		new EmoteStore(directory, List.of(third)).close();
+		assertCounts(third, 8, 3, 1);
+
+		// the history of the older emote set is moved aside, not mixed with the new one
+		final Path channelDirectory = directory.resolve(CHANNEL);
+		int histories = 0;
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(channelDirectory, "history.ts*")) {
+			for (Path file : files) {
+				histories++;
+			}
+		}
+		assertEquals(3, histories);
+		final EmoteTimeSeries history = EmoteTimeSeries.openForReading(EmoteStore.timeSeriesPath(directory, CHANNEL));
+		assertEquals("LUL", history.getEmote(0));
+		history.close();
+	}
+
+	@Test
+	public void keepsRestoredTotalsOutOfTheHistory() throws IOException {
+		final Path directory = mFolder.getRoot().toPath();
+		final long now = System.currentTimeMillis();
+		final ChannelTracker first = channel("Kappa");
+		EmoteStore store = new EmoteStore(directory, List.of(first));
+		first.getEmotes().get(0).add(6, now);
+		store.close();
+
+		final ChannelTracker second = channel("Kappa");
+		store = new EmoteStore(directory, List.of(second));
+		second.getEmotes().get(0).restore(1000, 0); // ex. counts backfilled by a replay
+		second.getEmotes().get(0).add(1, now);
+		store.close();
+
+		final ChannelTracker third = channel("Kappa");
+		new EmoteStore(directory, List.of(third)).close();
+		assertCounts(third, 1007);
+		final EmoteTimeSeries history = EmoteTimeSeries.openForReading(EmoteStore.timeSeriesPath(directory, CHANNEL));
+		assertEquals(7, history.sum(0, now - RateHistory.HOUR_MILLIS, now + RateHistory.HOUR_MILLIS));
+		history.close();
+	}
+
+	@Test
+	public void addsBackfilledHistoryAtItsOwnTime() throws IOException {
+		final Path directory = mFolder.getRoot().toPath();
+		final long weekAgo = System.currentTimeMillis() - 7 * 24 * RateHistory.HOUR_MILLIS;
+		final ChannelTracker channel = channel("Kappa");
+		final EmoteStore store = new EmoteStore(directory, List.of(channel));
+		store.addHistory(channel, 0, weekAgo, 40);
+		channel.getEmotes().get(0).restore(40, 0);
+		store.close();
+
+		final EmoteTimeSeries history = EmoteTimeSeries.openForReading(EmoteStore.timeSeriesPath(directory, CHANNEL));
+		assertEquals(40, history.get(0, weekAgo));
+		assertEquals(40, history.sum(0, weekAgo - RateHistory.HOUR_MILLIS, System.currentTimeMillis() + RateHistory.HOUR_MILLIS));
+		history.close();
+		assertFalse(Files.exists(directory.resolve(CHANNEL).resolve("history.ts.tmp")));
+		assertTrue(Files.exists(directory.resolve(CHANNEL).resolve("snapshot.dat")));
+	}
+
+	private static ChannelTracker channel(String... emotes) {
+		final List<EmoteValue> values = new ArrayList<>();
+		for (String emote : emotes) {
+			values.add(new EmoteValue(emote));
+		}
+		return new ChannelTracker(CHANNEL, values, false);
+	}
+
+	private static void assertCounts(ChannelTracker channel, long... counts) {
+		for (int i = 0; i < counts.length; i++) {
+			assertEquals(channel.getEmotes().get(i).string(), counts[i], channel.getEmotes().get(i).getCount());
+		}
+	}
+
+	/**
+	 * @param changes Emote text, count change and queries change of each changed emote
+	 * @return A log frame: length, CRC32 of the payload, then the payload
+	 */
+	private static byte[] frame(Object[]... changes) throws IOException {
+		final ByteArrayOutputStream payload = new ByteArrayOutputStream();
+		final DataOutputStream output = new DataOutputStream(payload);
+		output.writeLong(System.currentTimeMillis());
+		for (Object[] change : changes) {
+			output.writeUTF((String) change[0]);
+			output.writeLong((Long) change[1]);
+			output.writeLong((Long) change[2]);
+		}
+		final byte[] bytes = payload.toByteArray();
+		final CRC32 crc = new CRC32();
+		crc.update(bytes);
+		return ByteBuffer.allocate(2 * Integer.BYTES + bytes.length).putInt(bytes.length).putInt((int) crc.getValue())
+				.put(bytes).array();
+	}
+
+	private static void writeLog(Path channelDirectory, long generation, byte[]... frames) throws IOException {
+		final ByteArrayOutputStream log = new ByteArrayOutputStream();
+		for (byte[] frame : frames) {
+			log.write(frame);
+		}
+		Files.write(channelDirectory.resolve("counts-" + generation + ".log"), log.toByteArray());
+	}
+
+	/**
+	 * @param totals Emote text, count and queries of each saved emote
+	 */
+	private static void writeSnapshot(Path channelDirectory, long firstGeneration, Object[]... totals) throws IOException {
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		final DataOutputStream output = new DataOutputStream(bytes);
+		output.writeInt(0x45534e50);
+		output.writeInt(1);
+		output.writeLong(firstGeneration);
+		output.writeInt(totals.length);
+		for (Object[] total : totals) {
+			output.writeUTF((String) total[0]);
+			output.writeLong((Long) total[1]);
+			output.writeLong((Long) total[2]);
+		}
+		final CRC32 crc = new CRC32();
+		crc.update(bytes.toByteArray());
+		output.writeLong(crc.getValue());
+		Files.write(channelDirectory.resolve("snapshot.dat"), bytes.toByteArray());
+	}
+
+}
@@ -0,0 +1,76 @@
+package com.github.channingko_madden.twitch_emote_tracker;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests that EmoteTimeSeries keeps counts per bucket across chunks and reopening, and grows backwards for older counts
+ *
+ * @author channing.ko-madden
+ *
+ */
+public class EmoteTimeSeriesTest {
+
+	private static final long MINUTE = RateHistory.MINUTE_MILLIS;
+
+	@Rule
+	public TemporaryFolder mFolder = new TemporaryFolder();
+
+	private final List<EmoteValue> mEmotes = List.of(new EmoteValue("Kappa"), new EmoteValue("LUL"));
+
+	@Test
+	public void keepsCountsPerBucketAndEmote() throws IOException {
+		final Path path = mFolder.getRoot().toPath().resolve("history.ts");
+		final long start = Math.floorDiv(System.currentTimeMillis(), MINUTE) * MINUTE;
+		final EmoteTimeSeries series = EmoteTimeSeries.openForWriting(path, mEmotes, MINUTE);
+		series.add(0, start, 2);
+		series.add(0, start + 30 * 1000, 3);
+		series.add(1, start + MINUTE, 4);
+		// past the first chunk
+		series.add(0, start + (EmoteTimeSeries.CHUNK_BUCKETS + 5) * MINUTE, 7);
+		series.close();
+
+		final EmoteTimeSeries reopened = EmoteTimeSeries.openForReading(path);
+		assertEquals(2, reopened.getEmoteCount());
+		assertEquals(1, reopened.indexOf("LUL"));
+		assertEquals(5, reopened.get(0, start));
+		assertEquals(0, reopened.get(1, start));
+		assertEquals(4, reopened.get(1, start + MINUTE));
+		assertEquals(7, reopened.get(0, start + (EmoteTimeSeries.CHUNK_BUCKETS + 5) * MINUTE));
+		assertEquals(12, reopened.sum(0, start, reopened.getEndMillis()));
+		assertArrayEquals(new long[] {5, 0}, reopened.range(0, start, start + 4 * MINUTE, 2 * MINUTE));
+		reopened.close();
+	}
+
+	@Test
+	public void growsBackwardsForOlderCounts() throws IOException {
+		final Path path = mFolder.getRoot().toPath().resolve("history.ts");
+		final long now = System.currentTimeMillis();
+		final long weekAgo = now - 7 * 24 * RateHistory.HOUR_MILLIS;
+		EmoteTimeSeries series = EmoteTimeSeries.openForWriting(path, mEmotes, MINUTE);
+		series.add(1, now, 3);
+		final long start = series.getStartMillis();
+		series.add(1, weekAgo, 9);
+		assertNotEquals(start, series.getStartMillis());
+		series.add(0, weekAgo, 1);
+		series.close();
+
+		// reopening for writing keeps the grown file, as the emotes did not change
+		series = EmoteTimeSeries.openForWriting(path, mEmotes, MINUTE);
+		assertEquals(3, series.get(1, now));
+		assertEquals(9, series.get(1, weekAgo));
+		assertEquals(1, series.get(0, weekAgo));
+		assertEquals(12, series.sum(1, series.getStartMillis(), series.getEndMillis()));
+		series.close();
+	}
+
+}
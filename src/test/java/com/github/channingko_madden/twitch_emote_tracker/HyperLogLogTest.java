@@ -0,0 +1,65 @@
+package com.github.channingko_madden.twitch_emote_tracker;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Tests the estimates of HyperLogLog, for small counts (linear counting) and large counts
+ *
+ * @author channing.ko-madden
+ *
+ */
+public class HyperLogLogTest {
+
+	@Test
+	public void countsSmallSetsExactly() {
+		final HyperLogLog sketch = new HyperLogLog();
+		for (int repeat = 0; repeat < 3; repeat++) {
+			for (int i = 0; i < 100; i++) {
+				sketch.offer(hash("user" + i));
+			}
+		}
+		assertEquals(100, sketch.estimate(), 2);
+	}
+
+	@Test
+	public void estimatesLargeSetsWithinTheStandardError() {
+		final HyperLogLog sketch = new HyperLogLog();
+		final int n = 200000;
+		for (int i = 0; i < n; i++) {
+			sketch.offer(hash("user" + i));
+		}
+		// standard error is 1.04 / sqrt(4096), about 1.6%
+		assertEquals(n, sketch.estimate(), n * 0.05);
+	}
+
+	@Test
+	public void mergeIsTheUnion() {
+		final HyperLogLog a = new HyperLogLog();
+		final HyperLogLog b = new HyperLogLog();
+		for (int i = 0; i < 30000; i++) {
+			a.offer(hash("user" + i));
+			b.offer(hash("user" + (i + 15000)));
+		}
+		final HyperLogLog union = a.copy();
+		union.merge(b);
+		assertEquals(45000, union.estimate(), 45000 * 0.05);
+		assertEquals(30000, a.estimate(), 30000 * 0.05);
+		union.clear();
+		assertEquals(0, union.estimate());
+	}
+
+	@Test
+	public void hashesOnlyTheGivenRange() {
+		final String line = ":nick!nick@nick.tmi.twitch.tv";
+		assertEquals(HyperLogLog.hash("nick", 0, 4), HyperLogLog.hash(line, 1, 5));
+		assertTrue(HyperLogLog.hash("nick", 0, 4) != HyperLogLog.hash("Nick", 0, 4));
+	}
+
+	private static long hash(String text) {
+		return HyperLogLog.hash(text, 0, text.length());
+	}
+
+}
@@ -0,0 +1,85 @@
+package com.github.channingko_madden.twitch_emote_tracker;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Tests that IrcMessage finds the tags, prefix, command and params of IRC lines
+ *
+ * @author channing.ko-madden
+ *
+ */
+public class IrcMessageTest {
+
+	private final IrcMessage mMessage = new IrcMessage();
+
+	@Test
+	public void parsesTaggedPrivmsg() {
+		final String line = "@badge-info=;emotes=25:0-4;tmi-sent-ts=1700000000000 :nick!nick@nick.tmi.twitch.tv "
+				+ "PRIVMSG #channel :Kappa hi";
+		assertTrue(mMessage.parse(line));
+		assertTrue(mMessage.isCommand("PRIVMSG"));
+		assertFalse(mMessage.isCommand("PRIV"));
+
+		assertTrue(mMessage.findTag("emotes"));
+		assertEquals("25:0-4", value(line));
+		assertTrue(mMessage.findTag("tmi-sent-ts"));
+		assertEquals("1700000000000", value(line));
+		assertTrue(mMessage.findTag("badge-info"));
+		assertEquals("", value(line));
+		assertFalse(mMessage.findTag("badge"));
+		assertEquals(-1, mMessage.getTagValueStart());
+
+		assertTrue(mMessage.hasPrefix());
+		assertEquals("nick", line.substring(mMessage.getNickStart(), mMessage.getNickEnd()));
+		assertEquals(1, mMessage.getParamCount());
+		assertEquals("#channel", line.substring(mMessage.getParamStart(0), mMessage.getParamEnd(0)));
+		assertEquals("Kappa hi", mMessage.getTrailing());
+		assertTrue(mMessage.trailingStartsWith("Kappa"));
+	}
+
+	@Test
+	public void parsesLineWithoutTagsOrPrefix() {
+		assertTrue(mMessage.parse("PING :tmi.twitch.tv"));
+		assertTrue(mMessage.isCommand("PING"));
+		assertFalse(mMessage.hasTags());
+		assertFalse(mMessage.findTag("emotes"));
+		assertFalse(mMessage.hasPrefix());
+		assertEquals(0, mMessage.getParamCount());
+		assertEquals("tmi.twitch.tv", mMessage.getTrailing());
+	}
+
+	@Test
+	public void parsesParamsWithoutTrailing() {
+		assertTrue(mMessage.parse(":tmi.twitch.tv CAP * ACK"));
+		assertTrue(mMessage.isCommand("CAP"));
+		assertEquals(2, mMessage.getParamCount());
+		assertFalse(mMessage.hasTrailing());
+		assertNull(mMessage.getTrailing());
+		assertFalse(mMessage.trailingStartsWith("ACK"));
+	}
+
+	@Test
+	public void forgetsThePreviousLine() {
+		assertTrue(mMessage.parse("@emotes=1:0-1 :a!a@a PRIVMSG #c :hi"));
+		assertTrue(mMessage.parse("PING"));
+		assertFalse(mMessage.hasTags());
+		assertFalse(mMessage.hasPrefix());
+		assertFalse(mMessage.hasTrailing());
+	}
+
+	@Test
+	public void rejectsLineWithoutCommand() {
+		assertFalse(mMessage.parse(""));
+		assertFalse(mMessage.parse("@emotes=1:0-1 :nick!nick@host"));
+	}
+
+	private String value(String line) {
+		return line.substring(mMessage.getTagValueStart(), mMessage.getTagValueEnd());
+	}
+
+}
@@ -0,0 +1,161 @@
+package com.github.channingko_madden.twitch_emote_tracker;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Tests the overflow policies of MessageRingBuffer, alone and with the producer and consumer on their own threads
+ *
+ * @author channing.ko-madden
+ *
+ */
+public class MessageRingBufferTest {
+
+	private static final int MESSAGES = 2000000;
+
+	@Test
+	public void roundsCapacityUpToAPowerOfTwo() {
+		assertEquals(8, new MessageRingBuffer<Integer>(5, MessageRingBuffer.OverflowPolicy.BLOCK).capacity());
+		assertEquals(8, new MessageRingBuffer<Integer>(8, MessageRingBuffer.OverflowPolicy.BLOCK).capacity());
+		assertEquals(1, new MessageRingBuffer<Integer>(1, MessageRingBuffer.OverflowPolicy.BLOCK).capacity());
+	}
+
+	@Test
+	public void dropsTheNewestWhenFull() throws InterruptedException {
+		final MessageRingBuffer<Integer> queue = new MessageRingBuffer<>(4, MessageRingBuffer.OverflowPolicy.DROP_NEWEST);
+		for (int i = 0; i < 6; i++) {
+			assertEquals(i < 4, queue.offer(i));
+		}
+		assertEquals(4, queue.size());
+		assertEquals(2, queue.getDroppedCount());
+		for (int i = 0; i < 4; i++) {
+			assertEquals(Integer.valueOf(i), queue.poll());
+		}
+		assertNull(queue.poll());
+		assertTrue(queue.isEmpty());
+	}
+
+	@Test
+	public void dropsTheOldestWhenFull() throws InterruptedException {
+		final MessageRingBuffer<Integer> queue = new MessageRingBuffer<>(4, MessageRingBuffer.OverflowPolicy.DROP_OLDEST);
+		for (int i = 0; i < 6; i++) {
+			assertTrue(queue.offer(i));
+		}
+		assertEquals(4, queue.size());
+		assertEquals(2, queue.getDroppedCount());
+		final Integer[] batch = new Integer[8];
+		assertEquals(3, queue.drainTo(batch, 3));
+		assertEquals(Integer.valueOf(2), batch[0]);
+		assertEquals(Integer.valueOf(4), batch[2]);
+		assertEquals(Integer.valueOf(5), queue.poll());
+		assertEquals(0, queue.drainTo(batch, 8));
+	}
+
+	@Test
+	public void blockingKeepsEveryMessageInOrder() throws InterruptedException {
+		final MessageRingBuffer<Integer> queue = new MessageRingBuffer<>(16, MessageRingBuffer.OverflowPolicy.BLOCK);
+		final Consumer consumer = new Consumer(queue, true);
+		consumer.start();
+		for (int i = 0; i < MESSAGES; i++) {
+			assertTrue(queue.offer(i));
+		}
+		queue.offer(-1);
+		consumer.join();
+		assertNull(consumer.mError, consumer.mError);
+		assertEquals(MESSAGES, consumer.mReceived);
+		assertEquals(0, queue.getDroppedCount());
+	}
+
+	@Test
+	public void droppingTheOldestRacesTheConsumerSafely() throws InterruptedException {
+		// the producer and consumer race for the head: nothing may be received twice, out of order, or lost uncounted
+		for (boolean batches : new boolean[] {false, true}) {
+			final MessageRingBuffer<Integer> queue = new MessageRingBuffer<>(8, MessageRingBuffer.OverflowPolicy.DROP_OLDEST);
+			final Consumer consumer = new Consumer(queue, batches);
+			consumer.start();
+			for (int i = 0; i < MESSAGES; i++) {
+				assertTrue(queue.offer(i));
+			}
+			consumer.interrupt(); // producer is done, take what is left
+			consumer.join();
+			assertNull(consumer.mError, consumer.mError);
+			assertEquals(MESSAGES, consumer.mReceived + queue.getDroppedCount());
+			assertEquals(MESSAGES - 1, consumer.mLast); // the newest message is never dropped
+		}
+	}
+
+	@Test(timeout = 10000)
+	public void takeWakesWhenAMessageArrives() throws InterruptedException {
+		final MessageRingBuffer<Integer> queue = new MessageRingBuffer<>(4, MessageRingBuffer.OverflowPolicy.BLOCK);
+		final Consumer consumer = new Consumer(queue, false);
+		consumer.start();
+		Thread.sleep(100); // let the consumer park on the empty queue
+		queue.offer(7);
+		queue.offer(-1);
+		consumer.join();
+		assertEquals(1, consumer.mReceived);
+		assertFalse(consumer.isAlive());
+	}
+
+	/**
+	 * Takes messages until -1, or until interrupted once the producer is done and the queue is empty, checking they
+	 * arrive in order
+	 */
+	private static class Consumer extends Thread {
+		private final MessageRingBuffer<Integer> mQueue;
+		private final boolean mBatches;
+		private final Integer[] mBatch = new Integer[5];
+		long mReceived = 0;
+		int mLast = -1;
+		String mError;
+
+		Consumer(MessageRingBuffer<Integer> queue, boolean batches) {
+			mQueue = queue;
+			mBatches = batches;
+		}
+
+		@Override
+		public void run() {
+			try {
+				while (receive(mBatches ? mQueue.takeBatch(mBatch, mBatch.length) : take())) {
+				}
+			} catch (InterruptedException exp) {
+				while (receive(mBatches ? mQueue.drainTo(mBatch, mBatch.length) : poll())) {
+				}
+			}
+		}
+
+		private int take() throws InterruptedException {
+			mBatch[0] = mQueue.take();
+			return 1;
+		}
+
+		private int poll() {
+			mBatch[0] = mQueue.poll();
+			return mBatch[0] == null ? 0 : 1;
+		}
+
+		/**
+		 * @return True to keep receiving
+		 */
+		private boolean receive(int count) {
+			for (int i = 0; i < count; i++) {
+				if (mBatch[i] == -1) {
+					return false;
+				}
+				if (mBatch[i] <= mLast) {
+					mError = "received " + mBatch[i] + " after " + mLast;
+					return false;
+				}
+				mLast = mBatch[i];
+				mReceived++;
+			}
+			return count > 0;
+		}
+	}
+
+}
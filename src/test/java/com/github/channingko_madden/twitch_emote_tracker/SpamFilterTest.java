@@ -0,0 +1,93 @@
+package com.github.channingko_madden.twitch_emote_tracker;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Tests that SpamFilter suppresses a chatter's repeats of a message within the window, and nothing else
+ *
+ * @author channing.ko-madden
+ *
+ */
+public class SpamFilterTest {
+
+	private static final long WINDOW = 30 * 1000;
+
+	@Test
+	public void suppressesRepeatsWithinTheWindow() {
+		final SpamFilter filter = new SpamFilter(WINDOW, 1, 1024);
+		assertTrue(allow(filter, "bot", "Kappa Kappa Kappa", 0));
+		assertFalse(allow(filter, "bot", "Kappa Kappa Kappa", 1000));
+		assertFalse(allow(filter, "bot", "Kappa Kappa Kappa", WINDOW - 1));
+		// the window starts again at the first post after it ends
+		assertTrue(allow(filter, "bot", "Kappa Kappa Kappa", WINDOW));
+		assertFalse(allow(filter, "bot", "Kappa Kappa Kappa", WINDOW + 1));
+		assertEquals(3, filter.getSuppressedCount());
+	}
+
+	@Test
+	public void allowsUpToTheRepeatLimit() {
+		final SpamFilter filter = new SpamFilter(WINDOW, 3, 1024);
+		for (int i = 0; i < 3; i++) {
+			assertTrue(allow(filter, "bot", "LUL", i));
+		}
+		assertFalse(allow(filter, "bot", "LUL", 3));
+		assertEquals(1, filter.getSuppressedCount());
+	}
+
+	@Test
+	public void keepsChattersAndMessagesApart() {
+		final SpamFilter filter = new SpamFilter(WINDOW, 1, 1024);
+		assertTrue(allow(filter, "alice", "Kappa", 0));
+		assertTrue(allow(filter, "bob", "Kappa", 0));
+		assertTrue(allow(filter, "alice", "LUL", 0));
+		// the same letters split into other words, or moved between the nick and the message, are other messages
+		assertTrue(allow(filter, "alice", "Kap pa", 0));
+		assertTrue(allow(filter, "alic", "e Kappa", 0));
+		assertTrue(allow(filter, "alice", "kappa", 0));
+		assertEquals(0, filter.getSuppressedCount());
+	}
+
+	@Test
+	public void ignoresWhitespaceAndTheDuplicateBypassCharacter() {
+		final SpamFilter filter = new SpamFilter(WINDOW, 1, 1024);
+		assertTrue(allow(filter, "bot", "Kappa LUL", 0));
+		assertFalse(allow(filter, "bot", "  Kappa\t LUL ", 1));
+		assertFalse(allow(filter, "bot", "Kappa LUL \uDB40\uDC00", 2));
+		assertFalse(allow(filter, "bot", "Kappa \uDB40\uDC00LUL", 3));
+		// other surrogate pairs are part of the message
+		assertTrue(allow(filter, "bot", "Kappa LUL \uD83D\uDE00", 4));
+		assertEquals(3, filter.getSuppressedCount());
+	}
+
+	@Test
+	public void neverSuppressesAMessageThatWasNotRepeated() {
+		// one bucket, so older fingerprints are pushed out all the time
+		final SpamFilter filter = new SpamFilter(WINDOW, 1, 4);
+		for (int i = 0; i < 10000; i++) {
+			assertTrue(allow(filter, "chatter" + (i % 97), "message " + i, i));
+		}
+		assertEquals(0, filter.getSuppressedCount());
+		// the newest fingerprints are still remembered
+		assertFalse(allow(filter, "chatter" + (9999 % 97), "message 9999", 10000));
+	}
+
+	@Test
+	public void checksOnlyTheGivenRanges() {
+		final SpamFilter filter = new SpamFilter(WINDOW, 1, 1024);
+		final String first = ":bot!bot@bot.tmi.twitch.tv PRIVMSG #channel :Kappa";
+		final String second = "@tmi-sent-ts=1700000000000 :bot!bot@bot.tmi.twitch.tv PRIVMSG #other :Kappa";
+		assertTrue(filter.allow(first, 1, 4, first.lastIndexOf(':') + 1, first.length(), 0));
+		final int nick = second.indexOf(':') + 1;
+		assertFalse(filter.allow(second, nick, nick + 3, second.lastIndexOf(':') + 1, second.length(), 1));
+	}
+
+	private static boolean allow(SpamFilter filter, String nick, String message, long time) {
+		final String line = nick + message;
+		return filter.allow(line, 0, nick.length(), nick.length(), line.length(), time);
+	}
+
+}
@@ -0,0 +1,135 @@
+package com.github.channingko_madden.twitch_emote_tracker;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Tests when SpikeDetector reports a spike: after its warm-up, once per spike, and after gaps in the occurrences
+ *
+ * @author channing.ko-madden
+ *
+ */
+public class SpikeDetectorTest {
+
+	private static final long SECOND = RateHistory.SECOND_MILLIS;
+	private static final long START = 1700000000000L;
+
+	@Test
+	public void staysQuietDuringTheWarmup() {
+		final SpikeDetector detector = new SpikeDetector();
+		for (int s = 0; s < SpikeDetector.WARMUP_SECONDS; s++) {
+			assertFalse(detector.add(START + s * SECOND, s == 10 ? 1000 : 1));
+		}
+		assertEquals(0, detector.getLastSpikeMillis());
+	}
+
+	@Test
+	public void steadyChatIsNotASpike() {
+		final SpikeDetector detector = new SpikeDetector();
+		for (int s = 0; s < 600; s++) {
+			// 8 to 12 per second, posted one at a time
+			for (int i = 0; i < 8 + s % 5; i++) {
+				assertFalse("second " + s, detector.add(START + s * SECOND + i, 1));
+			}
+		}
+		assertEquals(10, detector.getMean(), 0.5);
+	}
+
+	@Test
+	public void reportsASpikeOnceAsSoonAsItStarts() {
+		final SpikeDetector detector = warmedUp(10, 300);
+		final long burst = START + 300 * SECOND;
+		int reported = 0;
+		long reportedAt = 0;
+		for (int i = 0; i < 100; i++) {
+			if (detector.add(burst + i, 1)) {
+				reported++;
+				reportedAt = burst + i;
+			}
+		}
+		assertEquals(1, reported);
+		// reported mid-second, when the count crossed the threshold
+		assertTrue(reportedAt < burst + 30);
+		assertEquals(reportedAt, detector.getLastSpikeMillis());
+		assertTrue(detector.getLastScore() >= SpikeDetector.DEFAULT_THRESHOLD);
+
+		// still spiking through the next second, so not reported again
+		assertFalse(detector.add(burst + SECOND, 100));
+		// a quiet second ends the spike, and the next burst is a new one. The first burst raised the variance, so it
+		// must be larger
+		assertFalse(detector.add(burst + 2 * SECOND, 10));
+		assertFalse(detector.add(burst + 3 * SECOND, 100));
+		assertFalse(detector.add(burst + 4 * SECOND, 10));
+		assertTrue(detector.add(burst + 5 * SECOND, 300));
+	}
+
+	@Test
+	public void needsTheMinimumCount() {
+		// an emote posted once a minute has no variance, but a handful of posts is not hype
+		final SpikeDetector detector = new SpikeDetector();
+		for (int s = 0; s < 600; s += 60) {
+			detector.add(START + s * SECOND, 1);
+		}
+		final long now = START + 600 * SECOND;
+		for (int i = 1; i < SpikeDetector.DEFAULT_MIN_COUNT; i++) {
+			assertFalse(detector.add(now, 1));
+		}
+		assertTrue(detector.add(now, 1));
+	}
+
+	@Test
+	public void gapsDecayTheAverage() {
+		// a short pause in a busy chat is not followed by a spike
+		SpikeDetector detector = warmedUp(20, 300);
+		assertFalse(detector.add(START + 302 * SECOND, 20));
+
+		// after a long quiet period the same rate is a spike again
+		detector = warmedUp(20, 300);
+		assertTrue(detector.add(START + 1200 * SECOND, 20));
+
+		// gaps longer than the average can remember are capped, not folded second by second
+		detector = warmedUp(20, 300);
+		assertTrue(detector.add(START + 30L * 24 * 3600 * SECOND, 20));
+		assertEquals(0, detector.getMean(), 0.001);
+	}
+
+	@Test
+	public void gapsCountTowardTheWarmup() {
+		final SpikeDetector detector = new SpikeDetector();
+		assertFalse(detector.add(START, 1));
+		// the first occurrence after a gap longer than the warm-up can already be a spike
+		assertTrue(detector.add(START + 2 * SpikeDetector.WARMUP_SECONDS * SECOND, 50));
+	}
+
+	@Test
+	public void ignoresSecondsThatAlreadyEnded() {
+		final SpikeDetector detector = warmedUp(10, 300);
+		assertFalse(detector.add(START + 100 * SECOND, 1000));
+		assertEquals(0, detector.getLastSpikeMillis());
+	}
+
+	@Test
+	public void clearForgetsEverything() {
+		final SpikeDetector detector = warmedUp(10, 300);
+		detector.add(START + 300 * SECOND, 100);
+		detector.clear();
+		assertEquals(0, detector.getLastSpikeMillis());
+		assertEquals(0, detector.getMean(), 0);
+		assertFalse(detector.add(START + 301 * SECOND, 100)); // warming up again
+	}
+
+	/**
+	 * @return Detector fed a steady count per second, for the given number of seconds from START
+	 */
+	private static SpikeDetector warmedUp(long perSecond, int seconds) {
+		final SpikeDetector detector = new SpikeDetector();
+		for (int s = 0; s < seconds; s++) {
+			assertFalse(detector.add(START + s * SECOND, perSecond));
+		}
+		return detector;
+	}
+
+}
@@ -0,0 +1,75 @@
+package com.github.channingko_madden.twitch_emote_tracker;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Tests the Space-Saving counts of TrendingTokens, including taking over the counter of the least posted token
+ *
+ * @author channing.ko-madden
+ *
+ */
+public class TrendingTokensTest {
+
+	private static final long WINDOW_MILLIS = 60 * 1000;
+
+	@Test
+	public void ranksTokensByCount() {
+		final TrendingTokens trending = new TrendingTokens(8, WINDOW_MILLIS);
+		add(trending, "gg gg  gg wp", 0);
+		add(trending, "wp gg", 1);
+		final List<TrendingTokens.Entry> top = trending.getTop(5);
+		assertEquals(2, top.size());
+		assertEquals("gg", top.get(0).getText());
+		assertEquals(4, top.get(0).getCount());
+		assertEquals(0, top.get(0).getError());
+		assertEquals("wp", top.get(1).getText());
+		assertEquals(2, top.get(1).getCount());
+	}
+
+	@Test
+	public void replacesTheLeastPostedToken() {
+		final TrendingTokens trending = new TrendingTokens(2, WINDOW_MILLIS);
+		add(trending, "gg gg gg wp", 0);
+		// wp's counter is taken over, so wp is no longer counted and the new token inherits its count as error
+		add(trending, "pog", 1);
+		List<TrendingTokens.Entry> top = trending.getTop(5);
+		assertEquals(1, top.size());
+		assertEquals("gg", top.get(0).getText());
+
+		add(trending, "pog pog pog", 2);
+		top = trending.getTop(5);
+		assertEquals(2, top.size());
+		assertEquals("pog", top.get(0).getText());
+		assertEquals(5, top.get(0).getCount());
+		assertEquals(1, top.get(0).getError());
+
+		// wp must be found again as a new token, not as a stale index entry, and takes over gg as the least posted
+		add(trending, "wp wp wp wp wp wp wp", 3);
+		top = trending.getTop(5);
+		assertEquals(2, top.size());
+		assertEquals("wp", top.get(0).getText());
+		assertEquals(10, top.get(0).getCount());
+		assertEquals(3, top.get(0).getError());
+		assertEquals("pog", top.get(1).getText());
+	}
+
+	@Test
+	public void forgetsWindowsThatEnded() {
+		final TrendingTokens trending = new TrendingTokens(8, WINDOW_MILLIS);
+		add(trending, "gg", 0);
+		add(trending, "wp", WINDOW_MILLIS);
+		assertEquals(2, trending.getTop(5).size());
+		add(trending, "pog", 3 * WINDOW_MILLIS);
+		assertEquals(1, trending.getTop(5).size());
+		assertEquals("pog", trending.getTop(5).get(0).getText());
+	}
+
+	private static void add(TrendingTokens trending, String message, long time) {
+		trending.add(message, 0, message.length(), time);
+	}
+
+}